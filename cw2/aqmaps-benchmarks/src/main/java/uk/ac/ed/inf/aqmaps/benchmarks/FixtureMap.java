@@ -0,0 +1,184 @@
+package uk.ac.ed.inf.aqmaps.benchmarks;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.google.gson.JsonParser;
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import uk.ac.ed.inf.aqmaps.NoFlyZonesManager;
+import uk.ac.ed.inf.aqmaps.Sensor;
+
+/**
+ * The fixture maps the benchmarks run on, in increasing size.
+ * All maps share the 33 sensors of the coursework (from the submitted results),
+ * and the coursework starting point.
+ *
+ * CAMPUS is a bundled map with a handful of buildings between the sensors.
+ * The CITY maps are synthetic dense cities: a grid of regular polygons covering
+ * the whole confinement area, generated with a fixed seed so runs are comparable.
+ */
+public enum FixtureMap {
+    CAMPUS(0, 0, 0, 0),
+    CITY_MEDIUM(16, 7, 8, 0.00010),
+    CITY_LARGE(32, 14, 16, 0.00005);
+
+    /** The starting point of the drone in every map */
+    public static final Point2D STARTING_POINT = new Point2D.Double(-3.1878, 55.9444);
+
+    /** Bounds of the confinement area, the cities are generated inside it */
+    private static final double MIN_LNG = -3.192473;
+    private static final double MAX_LNG = -3.184319;
+    private static final double MIN_LAT = 55.942617;
+    private static final double MAX_LAT = 55.946233;
+    /** Minimum distance between a building and a sensor or the starting point */
+    private static final double CLEARANCE = 0.0003;
+    private static final long SEED = 42;
+
+    /** Generation parameters of the synthetic cities */
+    private final int columns;
+    private final int rows;
+    private final int vertices;
+    private final double radius;
+
+    /**
+     * Enum constructor
+     *
+     * @param columns The number of columns of the city grid, 0 for the bundled map
+     * @param rows The number of rows of the city grid
+     * @param vertices The number of vertices of every building
+     * @param radius The radius of every building
+     */
+    FixtureMap(int columns, int rows, int vertices, double radius) {
+        this.columns = columns;
+        this.rows = rows;
+        this.vertices = vertices;
+        this.radius = radius;
+    }
+
+
+    /**
+     * Get the sensors of the map. A new Set is generated on every call.
+     *
+     * @return <code>Set&lt;Sensor&gt;</code> The sensors
+     */
+    public static Set<Sensor> sensors() {
+        var sensors = new HashSet<Sensor>();
+        var json = JsonParser.parseString(readResource("fixtures/sensors.json")).getAsJsonArray();
+        for (var element : json) {
+            var sensor = element.getAsJsonObject();
+            var coordinates = new Point2D.Double(sensor.get("lng").getAsDouble(), sensor.get("lat").getAsDouble());
+            // Readings are irrelevant for planning, but exercise the marker generation
+            sensors.add(new Sensor(coordinates, sensor.get("location").getAsString(), 50, "100.0"));
+        }
+        return sensors;
+    }
+
+
+    /**
+     * Get the GeoJson of the NoFlyZones of the map
+     *
+     * @return String The GeoJson FeatureCollection of the buildings
+     */
+    public String noFlyZonesGeoJson() {
+        if (columns == 0) {
+            return readResource("fixtures/campus-no-fly-zones.geojson");
+        }
+        return generateCity();
+    }
+
+
+    /**
+     * Get the NoFlyZonesManager of the map
+     *
+     * @return NoFlyZonesManager The indexed NoFlyZones
+     */
+    public NoFlyZonesManager noFlyZonesManager() {
+        return new NoFlyZonesManager(noFlyZonesGeoJson());
+    }
+
+
+    /**
+     * Generates a synthetic city, with one building per grid cell.
+     * Buildings are jittered within their cell, and skipped where they would
+     * be too close to a sensor or to the starting point.
+     *
+     * @return String The GeoJson FeatureCollection of the buildings
+     */
+    private String generateCity() {
+        var random = new Random(SEED);
+        var avoid = new ArrayList<Point2D>();
+        for (var sensor : sensors()) {
+            avoid.add(sensor.getCoordinates());
+        }
+        avoid.add(STARTING_POINT);
+
+        var cellWidth = (MAX_LNG - MIN_LNG) / columns;
+        var cellHeight = (MAX_LAT - MIN_LAT) / rows;
+        // The building can move in its cell as long as it stays inside it
+        var jitterX = Math.max(0, cellWidth / 2 - radius) / 2;
+        var jitterY = Math.max(0, cellHeight / 2 - radius) / 2;
+        var features = new ArrayList<Feature>();
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                var centre = new Point2D.Double(
+                        MIN_LNG + (column + 0.5) * cellWidth + (random.nextDouble() * 2 - 1) * jitterX,
+                        MIN_LAT + (row + 0.5) * cellHeight + (random.nextDouble() * 2 - 1) * jitterY);
+                var rotation = random.nextDouble() * 2 * Math.PI;
+                if (avoid.stream().anyMatch(point -> point.distance(centre) < radius + CLEARANCE)) {
+                    continue;
+                }
+                features.add(Feature.fromGeometry(building(centre, rotation)));
+            }
+        }
+        return FeatureCollection.fromFeatures(features).toJson();
+    }
+
+
+    /**
+     * Generates a regular polygon
+     *
+     * @param centre The centre of the polygon
+     * @param rotation The angle of the first vertex, in radians
+     * @return Polygon The building
+     */
+    private Polygon building(Point2D centre, double rotation) {
+        var ring = new ArrayList<Point>();
+        for (int i = 0; i < vertices; i++) {
+            var angle = rotation + 2 * Math.PI * i / vertices;
+            ring.add(Point.fromLngLat(centre.getX() + radius * Math.cos(angle), centre.getY() + radius * Math.sin(angle)));
+        }
+        // GeoJson rings are closed
+        ring.add(ring.get(0));
+        return Polygon.fromLngLats(List.of(ring));
+    }
+
+
+    /**
+     * Reads a bundled resource
+     *
+     * @param name The name of the resource
+     * @return String The content of the resource
+     */
+    private static String readResource(String name) {
+        try (InputStream in = FixtureMap.class.getClassLoader().getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing fixture: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package uk.ac.ed.inf.aqmaps.benchmarks;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ed.inf.aqmaps.NoFlyZone;
+import uk.ac.ed.inf.aqmaps.NoFlyZonesManager;
+
+/**
+ * Benchmarks for the move legality checks, on every fixture map.
+ * Every invocation checks the same batch of random moves, so the numbers are per move.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LegalMoveBenchmark {
+    /** Number of moves checked per invocation */
+    private static final int MOVES = 1024;
+    private static final double STEP_LENGTH = 0.0003;
+    private static final long SEED = 7;
+
+    @Param
+    public FixtureMap map;
+
+    private NoFlyZonesManager noFlyZonesManager;
+    private NoFlyZone[] noFlyZones;
+    private Line2D[] moves;
+
+    /**
+     * Indexes the fixture map and generates random moves of the drone inside the confinement area
+     */
+    @Setup
+    public void setup() {
+        noFlyZonesManager = map.noFlyZonesManager();
+        var zones = new ArrayList<>(noFlyZonesManager.getNoFlyZones());
+        zones.add(NoFlyZonesManager.getConfinementArea());
+        noFlyZones = zones.toArray(NoFlyZone[]::new);
+
+        var random = new Random(SEED);
+        var confinement = NoFlyZonesManager.getConfinementArea().getCoordinates();
+        var minX = confinement.stream().mapToDouble(point -> point.getX()).min().getAsDouble();
+        var maxX = confinement.stream().mapToDouble(point -> point.getX()).max().getAsDouble();
+        var minY = confinement.stream().mapToDouble(point -> point.getY()).min().getAsDouble();
+        var maxY = confinement.stream().mapToDouble(point -> point.getY()).max().getAsDouble();
+        moves = new Line2D[MOVES];
+        for (int i = 0; i < MOVES; i++) {
+            var x = minX + random.nextDouble() * (maxX - minX);
+            var y = minY + random.nextDouble() * (maxY - minY);
+            var angle = Math.toRadians(10 * random.nextInt(36));
+            moves[i] = new Line2D.Double(x, y, x + STEP_LENGTH * Math.cos(angle), y + STEP_LENGTH * Math.sin(angle));
+        }
+    }
+
+
+    /**
+     * Checks every move against every zone, one NoFlyZone at a time
+     *
+     * @return int The number of legal moves
+     */
+    @Benchmark
+    @OperationsPerInvocation(MOVES)
+    public int noFlyZoneIsLegalMove() {
+        var legal = 0;
+        for (var move : moves) {
+            var isLegal = true;
+            for (var zone : noFlyZones) {
+                isLegal &= zone.isLegalMove(move);
+            }
+            legal += isLegal ? 1 : 0;
+        }
+        return legal;
+    }
+
+
+    /**
+     * Checks every move with the NoFlyZonesManager
+     *
+     * @return int The number of legal moves
+     */
+    @Benchmark
+    @OperationsPerInvocation(MOVES)
+    public int managerIsLegalMove() {
+        var legal = 0;
+        for (var move : moves) {
+            legal += noFlyZonesManager.isLegalMove(move) ? 1 : 0;
+        }
+        return legal;
+    }
+
+
+    /**
+     * Checks every move with the primitive entry point of the NoFlyZonesManager
+     *
+     * @return int The number of legal moves
+     */
+    @Benchmark
+    @OperationsPerInvocation(MOVES)
+    public int managerIsLegalMovePrimitive() {
+        var legal = 0;
+        for (var move : moves) {
+            legal += noFlyZonesManager.isLegalMove(move.getX1(), move.getY1(), move.getX2(), move.getY2()) ? 1 : 0;
+        }
+        return legal;
+    }
+}
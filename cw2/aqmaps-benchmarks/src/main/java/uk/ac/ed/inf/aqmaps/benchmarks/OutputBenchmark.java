@@ -0,0 +1,106 @@
+package uk.ac.ed.inf.aqmaps.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+
+import uk.ac.ed.inf.aqmaps.App;
+import uk.ac.ed.inf.aqmaps.Drone;
+import uk.ac.ed.inf.aqmaps.FlightPlan;
+import uk.ac.ed.inf.aqmaps.OutputWriter;
+import uk.ac.ed.inf.aqmaps.Sensor;
+
+/**
+ * Benchmarks for the generation of the output files, from a plan made once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+    @Param
+    public FixtureMap map;
+
+    private FlightPlan flightPlan;
+    private Set<Sensor> sensors;
+
+    /**
+     * Plans the flight on the fixture map
+     */
+    @Setup
+    public void setup() {
+        sensors = FixtureMap.sensors();
+        flightPlan = new Drone(FixtureMap.STARTING_POINT, map.noFlyZonesManager(), sensors).planFlight();
+    }
+
+
+    /**
+     * Generates the flightpath file
+     *
+     * @return String The flightpath
+     */
+    @Benchmark
+    public String fileFlightPlan() {
+        return flightPlan.fileFlightPlan();
+    }
+
+
+    /**
+     * Streams the flightpath file to a channel discarding the bytes
+     *
+     * @throws IOException Never, the channel discards the bytes
+     */
+    @Benchmark
+    public void writeFlightPlan() throws IOException {
+        try (var out = new OutputWriter(Channels.newChannel(OutputStream.nullOutputStream()))) {
+            flightPlan.writeFlightPlan(out);
+        }
+    }
+
+
+    /**
+     * Generates the readings GeoJson file
+     *
+     * @return String The readings GeoJson
+     */
+    @Benchmark
+    public String readingsGeoJson() {
+        return App.readingsGeoJson(flightPlan, sensors);
+    }
+
+
+    /**
+     * Generates the readings GeoJson file through the mapbox classes, as a reference
+     *
+     * @return String The readings GeoJson
+     */
+    @Benchmark
+    public String readingsGeoJsonMapbox() {
+        var features = new ArrayList<Feature>();
+        features.add(Feature.fromGeometry(flightPlan.toGeoJson()));
+        for (var sensor : sensors) {
+            features.add(sensor.toGeoJsonFeature(flightPlan.hasRead(sensor.getLocation())));
+        }
+        return FeatureCollection.fromFeatures(features).toJson();
+    }
+}
@@ -0,0 +1,84 @@
+package uk.ac.ed.inf.aqmaps.benchmarks;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.ac.ed.inf.aqmaps.Drone;
+import uk.ac.ed.inf.aqmaps.FlightPlan;
+import uk.ac.ed.inf.aqmaps.MultiStartPlanner;
+import uk.ac.ed.inf.aqmaps.NoFlyZonesManager;
+import uk.ac.ed.inf.aqmaps.Sensor;
+
+/**
+ * Benchmarks for planning a whole flight, on every fixture map.
+ * The NoFlyZones are indexed once per trial, as they would be shared between dates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlannerBenchmark {
+    @Param
+    public FixtureMap map;
+
+    private String noFlyZonesGeoJson;
+    private NoFlyZonesManager noFlyZonesManager;
+    private Set<Sensor> sensors;
+
+    /**
+     * Loads and indexes the fixture map
+     */
+    @Setup
+    public void setup() {
+        noFlyZonesGeoJson = map.noFlyZonesGeoJson();
+        noFlyZonesManager = new NoFlyZonesManager(noFlyZonesGeoJson);
+        sensors = FixtureMap.sensors();
+    }
+
+
+    /**
+     * Plans the flight with a single drone
+     *
+     * @return FlightPlan The plan
+     */
+    @Benchmark
+    public FlightPlan planFlight() {
+        return new Drone(FixtureMap.STARTING_POINT, noFlyZonesManager, sensors).planFlight();
+    }
+
+
+    /**
+     * Plans the flight with all the variants of the multi-start planner
+     *
+     * @return FlightPlan The best plan
+     */
+    @Benchmark
+    public FlightPlan planFlightMultiStart() {
+        return new MultiStartPlanner(FixtureMap.STARTING_POINT, noFlyZonesManager, sensors).planFlight();
+    }
+
+
+    /**
+     * Parses and indexes the NoFlyZones, i.e. the fixed cost paid once per map
+     *
+     * @return NoFlyZonesManager The indexed NoFlyZones
+     */
+    @Benchmark
+    public NoFlyZonesManager indexNoFlyZones() {
+        return new NoFlyZonesManager(noFlyZonesGeoJson);
+    }
+}
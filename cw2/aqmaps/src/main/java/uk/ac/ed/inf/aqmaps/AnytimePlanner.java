@@ -0,0 +1,238 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class plans a flight within a wall-clock deadline, trading quality for latency.
+ *
+ * A valid plan is available as soon as planning starts: the greedy {@link Drone} with the
+ * default tour is planned first, on the calling thread. The variants of the
+ * {@link MultiStartPlanner} are then planned in the background, those using the
+ * {@link LatticeSearch} first, as they usually save the most moves, then the other greedy
+ * ones, and the best plan so far is replaced whenever a better one is found.
+ * If enabled, the best plan is shortened by a {@link PathShortcutter} once every variant
+ * is planned, as a last improvement.
+ * At the deadline, the best plan is frozen: variants not started yet are skipped,
+ * and those still running stop at their next move.
+ *
+ * A planner is used for a single run, and can be read from any thread while it runs.
+ */
+public class AnytimePlanner {
+    /** Instance attributes */
+    private final Point2D startingPoint;
+    private final NoFlyZonesManager noFlyZonesManager;
+    private final Set<Sensor> sensors;
+    private final ForkJoinPool pool;
+    // Whether the best plan is shortened once every variant is planned
+    private final boolean shortcut;
+
+    /** State of the run */
+    private final AtomicReference<FlightPlan> best = new AtomicReference<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile long deadline;
+    private volatile boolean frozen;
+    private volatile CountDownLatch improvements;
+
+    /**
+     * Constructor for the planner, on the common pool.
+     *
+     * @param startingPoint The starting point for the Drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     */
+    public AnytimePlanner(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors) {
+        this(startingPoint, noFlyZonesManager, sensors, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Constructor for the planner.
+     *
+     * @param startingPoint The starting point for the Drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     * @param pool The ForkJoinPool to improve the plan on
+     */
+    public AnytimePlanner(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                          ForkJoinPool pool) {
+        this(startingPoint, noFlyZonesManager, sensors, false, pool);
+    }
+
+
+    /**
+     * Constructor for the planner, optionally shortening the best plan.
+     *
+     * @param startingPoint The starting point for the Drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     * @param shortcut Whether the best plan is shortened by a {@link PathShortcutter}
+     * @param pool The ForkJoinPool to improve the plan on
+     */
+    public AnytimePlanner(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                          boolean shortcut, ForkJoinPool pool) {
+        this.shortcut = shortcut;
+        this.startingPoint = Objects.requireNonNull(startingPoint);
+        this.noFlyZonesManager = Objects.requireNonNull(noFlyZonesManager);
+        this.sensors = Set.copyOf(Objects.requireNonNull(sensors));
+        this.pool = Objects.requireNonNull(pool);
+    }
+
+
+    /**
+     * Plans the flight within a time budget, blocking until the budget expires
+     * or every variant is planned, whichever comes first.
+     *
+     * @param budget The time budget, from now
+     * @return FlightPlan The best FlightPlan found within the budget
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public FlightPlan planFlight(Duration budget) throws InterruptedException {
+        start(budget);
+        return await();
+    }
+
+
+    /**
+     * Starts planning. The first plan is returned straight away, even if it takes longer
+     * than the budget, as there is no valid answer before it. The improvements run in the
+     * background until the deadline.
+     *
+     * @param budget The time budget, from now
+     * @return FlightPlan The first valid FlightPlan
+     */
+    public synchronized FlightPlan start(Duration budget) {
+        if (improvements != null) {
+            throw new IllegalStateException("The planner was already started");
+        }
+        if (Objects.requireNonNull(budget).isNegative()) {
+            throw new IllegalArgumentException("The budget cannot be negative");
+        }
+        deadline = System.nanoTime() + budget.toNanos();
+
+        var variants = variants();
+        best.set(variants.get(0).planFlight());
+        var rest = variants.subList(1, variants.size());
+        improvements = new CountDownLatch(rest.size());
+        pending.set(rest.size());
+        for (var drone : rest) {
+            pool.execute(() -> {
+                try {
+                    try {
+                        // A variant still running at the deadline stops at its next move
+                        offer(drone.planFlight(this::isExpired));
+                    } catch (CancellationException exception) {
+                        // The deadline has passed, the best plan is frozen
+                    }
+                    // The last variant to finish shortens the best plan, before the run is done
+                    if (pending.decrementAndGet() == 0 && shortcut && !isExpired()) {
+                        offer(new PathShortcutter(noFlyZonesManager, sensors).shorten(best.get()));
+                    }
+                } finally {
+                    improvements.countDown();
+                }
+            });
+        }
+        return best.get();
+    }
+
+
+    /**
+     * Waits until the deadline, or until every variant is planned.
+     * The best plan is then frozen.
+     *
+     * @return FlightPlan The best FlightPlan found
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public FlightPlan await() throws InterruptedException {
+        if (improvements == null) {
+            throw new IllegalStateException("The planner was not started");
+        }
+        improvements.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        synchronized (this) {
+            frozen = true;
+            return best.get();
+        }
+    }
+
+
+    /**
+     * Get the best plan found so far
+     *
+     * @return FlightPlan The best FlightPlan so far, null before the planner is started
+     */
+    public FlightPlan getBest() {
+        return best.get();
+    }
+
+
+    /**
+     * Checks if the plan can no longer change
+     *
+     * @return boolean Whether the deadline has passed, or every variant is planned
+     */
+    public boolean isDone() {
+        return frozen || isExpired() || (improvements != null && improvements.getCount() == 0);
+    }
+
+
+    /**
+     * Keeps a new plan if it is better than the best so far, and the best plan is not frozen
+     *
+     * @param plan The new FlightPlan
+     */
+    private synchronized void offer(FlightPlan plan) {
+        if (!frozen && !isExpired() && MultiStartPlanner.BEST_PLAN.compare(plan, best.get()) < 0) {
+            best.set(plan);
+        }
+    }
+
+
+    /**
+     * Checks if the deadline has passed
+     *
+     * @return boolean Whether the deadline has passed
+     */
+    private boolean isExpired() {
+        return System.nanoTime() - deadline >= 0;
+    }
+
+
+    /**
+     * Generates the variants, in the order they are planned: the greedy drone with the
+     * default tour, which is the cheapest, then the lattice search drones, then the other
+     * greedy ones.
+     *
+     * @return <code>List&lt;Drone&gt;</code> The variants, in the order they are planned
+     */
+    private List<Drone> variants() {
+        var greedy = variants(Drone.StepPlanner.GREEDY);
+        var variants = new ArrayList<Drone>();
+        variants.add(greedy.get(0));
+        variants.addAll(variants(Drone.StepPlanner.LATTICE_SEARCH));
+        variants.addAll(greedy.subList(1, greedy.size()));
+        return variants;
+    }
+
+
+    /**
+     * Generates the variants of the {@link MultiStartPlanner} with a step planner
+     *
+     * @param stepPlanner The step planner of the variants
+     * @return <code>List&lt;Drone&gt;</code> The variants, the default tour first
+     */
+    private List<Drone> variants(Drone.StepPlanner stepPlanner) {
+        return MultiStartPlanner.variants(startingPoint, noFlyZonesManager, sensors,
+                MultiStartPlanner.DEFAULT_FIRST_SENSORS, Drone.ALLOWED_NUMBER_OF_MOVES, stepPlanner);
+    }
+}
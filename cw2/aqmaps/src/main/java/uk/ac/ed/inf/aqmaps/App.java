@@ -1,25 +1,82 @@
 package uk.ac.ed.inf.aqmaps;
 
 import java.awt.geom.Point2D;
-import java.io.FileNotFoundException;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
-
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.reflect.TypeToken;
-import com.mapbox.geojson.Feature;
-import com.mapbox.geojson.FeatureCollection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
  * This class is the entry point of the application
  */
 public class App {
+    /** Whether the output files are compressed. {@link #setGzipOutput} */
+    private static boolean gzipOutput = Boolean.getBoolean("aqmaps.gzip");
+    /** How the drones decide their moves. {@link #setStepPlanner} */
+    private static Drone.StepPlanner stepPlanner = Drone.StepPlanner.valueOf(System.getProperty(
+            "aqmaps.stepPlanner", Drone.StepPlanner.GREEDY.name()).toUpperCase(Locale.ROOT));
+    /** Whether the planned flights are shortened. {@link #setShortcut} */
+    private static boolean shortcut = Boolean.getBoolean("aqmaps.shortcut");
+    /** The plans already computed, null if disabled. {@link #setPlanCache} */
+    private static PlanCache planCache = Boolean.getBoolean("aqmaps.planCache")
+            ? new PlanCache(PlanCache.DEFAULT_DIRECTORY, PlanCache.DEFAULT_MEMORY_ENTRIES) : null;
+
+    /**
+     * Sets whether the output files are compressed with gzip.
+     * Can also be enabled with <code>-Daqmaps.gzip=true</code>.
+     *
+     * @param gzipOutput Whether to compress the output files
+     */
+    public static void setGzipOutput(boolean gzipOutput) {
+        App.gzipOutput = gzipOutput;
+    }
+
+
+    /**
+     * Sets how the drones decide their moves, see {@link Drone.StepPlanner}.
+     * Can also be set with <code>-Daqmaps.stepPlanner=lattice_search</code>.
+     *
+     * @param stepPlanner The step planner of the drones
+     */
+    public static void setStepPlanner(Drone.StepPlanner stepPlanner) {
+        App.stepPlanner = Objects.requireNonNull(stepPlanner);
+    }
+
+
+    /**
+     * Sets whether the planned flights are shortened, see {@link PathShortcutter}.
+     * Can also be enabled with <code>-Daqmaps.shortcut=true</code>.
+     *
+     * @param shortcut Whether to shorten the planned flights
+     */
+    public static void setShortcut(boolean shortcut) {
+        App.shortcut = shortcut;
+    }
+
+
+    /**
+     * Sets the cache of the planned flights, see {@link PlanCache}.
+     * Can also be enabled with <code>-Daqmaps.planCache=true</code>.
+     *
+     * @param planCache The cache, or null to plan every flight
+     */
+    public static void setPlanCache(PlanCache planCache) {
+        App.planCache = planCache;
+    }
+
+
     /**
      * Generates an appropriate readings filename for a given date
      *
@@ -54,9 +111,33 @@ public class App {
      * If the year is "0000", then all output files required for the submission
      * are generated (12 dates x 2 files)
      *
+     * If the first argument is "batch", the second and third ones are the first
+     * and last dates (yyyy-MM-dd) of a range to run in parallel, see {@link BatchRunner}
+     *
+     * If the arguments are "serve", a port to listen on and the server port, the application
+     * keeps running as a planning service, see {@link PlanningServer}
+     *
+     * If the first argument is "fleet", the second one is a number of drones, and the third
+     * one a date (yyyy-MM-dd) whose sensors are shared among them, see {@link FleetPlanner}.
+     * The move budget of every drone is given by the <code>aqmaps.moveBudget</code> system property.
+     *
+     * The drones plan their moves greedily, or with a {@link LatticeSearch} if the <code>aqmaps.stepPlanner</code>
+     * system property is set to <code>lattice_search</code>. The planned flights are shortened
+     * by a {@link PathShortcutter} if the <code>aqmaps.shortcut</code> property is <code>true</code>.
+     * If the <code>aqmaps.planCache</code> property is <code>true</code>, planned flights are cached,
+     * so the same flight is never planned twice
+     *
+     * Timing and counters are collected when the <code>aqmaps.metrics</code> system
+     * property is set to the path of a summary file, see {@link Metrics}
+     *
      * @param args The command line arguments for the application
      */
     public static void main(String[] args) {
+        if (args.length == 3 && args[0].equals("serve")) {
+            serve(Integer.parseInt(args[1]), args[2]);
+            return;
+        }
+
         // Check that all arguments are provided
         if(args.length != 7) {
             System.err.println("Error: wrong arguments provided");
@@ -67,6 +148,8 @@ public class App {
         var day = Objects.requireNonNull(args[0]);
         var month = Objects.requireNonNull(args[1]);
         var year = Objects.requireNonNull(args[2]);
+        var isBatch = day.equals("batch");
+        var isFleet = day.equals("fleet");
 
         var initialLat = Double.parseDouble(Objects.requireNonNull(args[3]));
         var initialLng = Double.parseDouble(Objects.requireNonNull(args[4]));
@@ -81,7 +164,12 @@ public class App {
 
         // Try to run the drone -- catches network exceptions
         try {
-            if (year.equals("0000")) {
+            if (isBatch) {
+                var dates = BatchRunner.dateRange(LocalDate.parse(month), LocalDate.parse(year));
+                new BatchRunner(startingPoint).run(dates);
+            } else if (isFleet) {
+                runFleet(Integer.parseInt(month), LocalDate.parse(year), startingPoint);
+            } else if (year.equals("0000")) {
                 getSubmissionResults(startingPoint);
             } else {
                 runDrone(day, month,year, startingPoint);
@@ -96,23 +184,44 @@ public class App {
     }
 
     
+    /**
+     * Starts the planning service, which keeps running until the JVM is stopped.
+     * When it is, the service is stopped, so the distances computed while running are persisted.
+     *
+     * @param port The port to listen on
+     * @param serverPort The port of the server to load the data from
+     */
+    private static void serve(int port, String serverPort) {
+        Loader.setServer("http://localhost:" + serverPort + "/");
+        try {
+            var server = new PlanningServer(port);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+            System.err.println("Planning service listening on port " + server.getPort());
+        } catch (IOException | InterruptedException exception) {
+            System.err.println("Could not start the planning service.");
+            System.err.println(exception);
+            System.exit(1);
+        }
+    }
+
+
     /**
      * Generates the 12x2 files for the submission.
-     * Runs the drone with all 12 possible dates in 2020, where day==month
+     * Runs the drone with all 12 possible dates in 2020, where day==month.
+     * The dates are run in parallel by a {@link BatchRunner}.
      *
      * @param startingPoint The starting location for the drone.
      * @throws IOException If an IO error occurs when loading the data
      * @throws InterruptedException If the network operation is interrupted
      */
     private static void getSubmissionResults(Point2D startingPoint) throws IOException, InterruptedException {
-        // Sets the year to 2020
-        final String year = String.valueOf(2020);
-        // Loop through possible days
+        // Loop through possible days in 2020
+        var dates = new ArrayList<LocalDate>();
         for (int i = 1; i <= 12; i++) {
-            // Pad the day/month so it can be used as input
-            String dayMonth = i < 10 ? "0" + i : String.valueOf(i);
-            runDrone(dayMonth, dayMonth, year, startingPoint);
+            dates.add(LocalDate.of(2020, i, i));
         }
+        new BatchRunner(startingPoint).run(dates);
     }
 
     
@@ -130,24 +239,218 @@ public class App {
     private static void runDrone(String day, String month, String year, Point2D startingPoint) throws IOException, InterruptedException {
         // Load sensors and buildings data
         var sensors = loadSensorData(day, month, year);
-        var noFlyZonesManager = new NoFlyZonesManager(Loader.loadNoFlyZones());
+        var noFlyZonesManager = loadNoFlyZonesManager();
+        runDrone(day, month, year, startingPoint, noFlyZonesManager, sensors);
+        noFlyZonesManager.getDistanceTable().save(DistanceTable.DEFAULT_DIRECTORY);
+    }
 
-        // Start the drone and generate a FlightPlan
-        var drone = new Drone(startingPoint, noFlyZonesManager, sensors);
-        var droneFlightPlan = drone.planFlight();
 
-        // Generates the readings GeoJson
-        var readingsGeoJson = new ArrayList<Feature>();
-        readingsGeoJson.add(Feature.fromGeometry(droneFlightPlan.toGeoJson()));
-        for (var sensor : sensors) {
-            readingsGeoJson.add(sensor.toGeoJsonFeature());
+    /**
+     * Run a fleet of drones on a given date, starting at the given point.
+     * Writes one flightpath file per drone, numbered from 1, and a single readings file.
+     *
+     * @param drones The number of drones
+     * @param date The date
+     * @param startingPoint The starting point of every drone
+     * @throws IOException If an IO error occurs when loading the data
+     * @throws InterruptedException If the network operation is interrupted
+     */
+    private static void runFleet(int drones, LocalDate date, Point2D startingPoint) throws IOException, InterruptedException {
+        var day = String.format("%02d", date.getDayOfMonth());
+        var month = String.format("%02d", date.getMonthValue());
+        var year = String.format("%04d", date.getYear());
+        var sensors = loadSensorData(day, month, year);
+        var noFlyZonesManager = loadNoFlyZonesManager();
+        var moveBudget = Integer.getInteger("aqmaps.moveBudget", Drone.ALLOWED_NUMBER_OF_MOVES);
+
+        List<FlightPlan> flightPlans;
+        var planTimer = Metrics.time(Metrics.Phase.PLAN);
+        try {
+            flightPlans = new FleetPlanner(startingPoint, noFlyZonesManager, sensors, drones, moveBudget).planFlights();
+        } finally {
+            planTimer.close();
         }
+        var writeTimer = Metrics.time(Metrics.Phase.WRITE);
+        try {
+            for (int i = 0; i < flightPlans.size(); i++) {
+                var flightPlan = flightPlans.get(i);
+                Metrics.flight(year + "-" + month + "-" + day + "#" + (i + 1), flightPlan);
+                var fileName = "flightpath-" + day + "-" + month + "-" + year + "-" + (i + 1) + ".txt";
+                writeToOutput(fileName, flightPlan::writeFlightPlan);
+            }
+            writeToOutput(readingsFile(day, month, year), out -> writeReadings(out, flightPlans, sensors));
+        } finally {
+            writeTimer.close();
+        }
+        noFlyZonesManager.getDistanceTable().save(DistanceTable.DEFAULT_DIRECTORY);
+    }
 
-        // Writes output files
-        var flightPath = droneFlightPlan.fileFlightPlan();
-        writeToOutput(flightPathFile(day, month, year), flightPath);
-        var readings = FeatureCollection.fromFeatures(readingsGeoJson).toJson();
-        writeToOutput(readingsFile(day, month, year), readings);
+
+    /**
+     * Run the drone on a given date with already loaded data.
+     * Plans the flight, then generates the outputs and writes them to file.
+     *
+     * @param day The day (2 characters)
+     * @param month The month (2 characters)
+     * @param year The year (4 characters)
+     * @param startingPoint The starting point
+     * @param noFlyZonesManager The NoFlyZonesManager, can be shared between dates
+     * @param sensors The sensors to visit on that day
+     */
+    public static void runDrone(String day, String month, String year, Point2D startingPoint,
+                                NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors) {
+        var droneFlightPlan = planFlight(startingPoint, noFlyZonesManager, sensors);
+        Metrics.flight(year + "-" + month + "-" + day, droneFlightPlan);
+
+        // Writes output files, both are streamed without building them in memory
+        var timer = Metrics.time(Metrics.Phase.WRITE);
+        try {
+            writeToOutput(flightPathFile(day, month, year), droneFlightPlan::writeFlightPlan);
+            writeToOutput(readingsFile(day, month, year), out -> writeReadings(out, droneFlightPlan, sensors));
+        } finally {
+            timer.close();
+        }
+    }
+
+
+    /**
+     * Plans the flight for the given sensors.
+     * Runs several drone variants, and keeps the best FlightPlan.
+     * If the same flight was planned before, the cached FlightPlan is returned instead.
+     *
+     * @param startingPoint The starting point
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The sensors to visit
+     * @return FlightPlan The best FlightPlan
+     */
+    public static FlightPlan planFlight(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors) {
+        var cache = planCache;
+        var key = cache == null ? null : PlanCache.key(startingPoint, noFlyZonesManager, sensors,
+                stepPlanner, Drone.ALLOWED_NUMBER_OF_MOVES, MultiStartPlanner.DEFAULT_FIRST_SENSORS, shortcut);
+        if (cache != null) {
+            var cached = cache.get(key, startingPoint);
+            if (cached.isPresent()) {
+                Metrics.increment(Metrics.Counter.PLAN_CACHE_HITS);
+                return cached.get();
+            }
+        }
+
+        var timer = Metrics.time(Metrics.Phase.PLAN);
+        try {
+            // Fill the distances the variants share once, in parallel, before they start
+            var sites = new ArrayList<Point2D>();
+            sites.add(startingPoint);
+            for (var sensor : sensors) {
+                sites.add(sensor.getCoordinates());
+            }
+            noFlyZonesManager.getDistanceTable().precompute(sites);
+            var plan = new MultiStartPlanner(startingPoint, noFlyZonesManager, sensors, MultiStartPlanner.DEFAULT_FIRST_SENSORS,
+                    Drone.ALLOWED_NUMBER_OF_MOVES, stepPlanner, shortcut, ForkJoinPool.commonPool()).planFlight();
+            if (cache != null) {
+                cache.put(key, plan);
+            }
+            return plan;
+        } finally {
+            timer.close();
+        }
+    }
+
+
+    /**
+     * Plans the flight for the given sensors within a time budget, see {@link AnytimePlanner}.
+     * The plan depends on the time available, so it is not cached.
+     *
+     * @param startingPoint The starting point
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The sensors to visit
+     * @param budget The time budget, from now
+     * @return FlightPlan The best FlightPlan found within the budget
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public static FlightPlan planFlight(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                                        Duration budget) throws InterruptedException {
+        return new AnytimePlanner(startingPoint, noFlyZonesManager, sensors, shortcut, ForkJoinPool.commonPool())
+                .planFlight(budget);
+    }
+
+
+    /**
+     * Loads and indexes the NoFlyZones, with the distances persisted for them
+     *
+     * @return NoFlyZonesManager The NoFlyZonesManager
+     * @throws IOException If an IO error occurs when loading the data
+     * @throws InterruptedException If the network operation is interrupted
+     */
+    public static NoFlyZonesManager loadNoFlyZonesManager() throws IOException, InterruptedException {
+        var geoJson = Loader.loadNoFlyZones();
+        var timer = Metrics.time(Metrics.Phase.INDEX);
+        try {
+            var noFlyZonesManager = new NoFlyZonesManager(geoJson);
+            noFlyZonesManager.getDistanceTable().load(DistanceTable.DEFAULT_DIRECTORY);
+            return noFlyZonesManager;
+        } finally {
+            timer.close();
+        }
+    }
+
+
+    /**
+     * Generates the readings GeoJson for a FlightPlan.
+     * It contains the path of the drone, and a marker for every sensor.
+     *
+     * @param flightPlan The FlightPlan of the drone
+     * @param sensors The sensors to visit on that day
+     * @return String The readings GeoJson
+     * @see #writeReadings
+     */
+    public static String readingsGeoJson(FlightPlan flightPlan, Set<Sensor> sensors) {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new OutputWriter(Channels.newChannel(bytes))) {
+            writeReadings(out, flightPlan, sensors);
+        } catch (IOException exception) {
+            // Writing to memory never fails
+            throw new UncheckedIOException(exception);
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Streams the readings GeoJson for a FlightPlan.
+     * The output is the same as a mapbox FeatureCollection of {@link FlightPlan#toGeoJson}
+     * and {@link Sensor#toGeoJsonFeature}, in the iteration order of the sensors.
+     *
+     * @param out The writer to write the GeoJson to
+     * @param flightPlan The FlightPlan of the drone
+     * @param sensors The sensors to visit on that day
+     * @throws IOException If the output cannot be written
+     */
+    public static void writeReadings(OutputWriter out, FlightPlan flightPlan, Set<Sensor> sensors) throws IOException {
+        writeReadings(out, List.of(flightPlan), sensors);
+    }
+
+
+    /**
+     * Streams the merged readings GeoJson of a fleet.
+     * It contains the path of every drone, and a marker for every sensor,
+     * visited if any drone read it.
+     *
+     * @param out The writer to write the GeoJson to
+     * @param flightPlans The FlightPlans of the drones
+     * @param sensors The sensors to visit on that day
+     * @throws IOException If the output cannot be written
+     */
+    public static void writeReadings(OutputWriter out, List<FlightPlan> flightPlans, Set<Sensor> sensors) throws IOException {
+        var json = new GeoJsonWriter(out);
+        json.beginFeatureCollection();
+        for (var flightPlan : flightPlans) {
+            flightPlan.writeGeoJson(json);
+        }
+        for (var sensor : sensors) {
+            var visited = flightPlans.stream().anyMatch(flightPlan -> flightPlan.hasRead(sensor.getLocation()));
+            sensor.writeGeoJsonFeature(json, visited);
+        }
+        json.endFeatureCollection();
     }
 
     
@@ -163,19 +466,29 @@ public class App {
      * @throws InterruptedException If the network operation is interrupted
      */
     private static Set<Sensor> loadSensorData(String day, String month, String year) throws IOException, InterruptedException {
-        var sensorsData = Loader.loadDayData(day, month, year);
-        var targetClassType = new TypeToken<Set<Sensor>>() {}.getType();
-        Set<Sensor> sensors = new Gson().fromJson(sensorsData, targetClassType);
+        return Loader.await(loadSensorDataAsync(day, month, year));
+    }
 
-        for (var sensor : sensors) {
-            var json = Loader.loadSensorDetails(sensor.getLocation());
-            var detailsObj = (JsonObject) JsonParser.parseString(json);
 
-            var lng = detailsObj.getAsJsonObject("coordinates").get("lng").getAsDouble();
-            var lat = detailsObj.getAsJsonObject("coordinates").get("lat").getAsDouble();
-            sensor.setCoordinates(new Point2D.Double(lng, lat));
-        }
-        return sensors;
+    /**
+     * Get the sensors information for a given date, without blocking.
+     * The details of all sensors are requested at once, as soon as the day data is loaded.
+     *
+     * @param day The day (2 characters)
+     * @param month The month (2 characters)
+     * @param year The year (4 characters)
+     * @return <code>CompletableFuture&lt;Set&lt;Sensor&gt;&gt;</code> The Set of sensors to visit on that day
+     */
+    public static CompletableFuture<Set<Sensor>> loadSensorDataAsync(String day, String month, String year) {
+        return Loader.loadDayDataAsync(day, month, year, SensorAdapters::readSensors).thenCompose(sensors -> {
+            // Issue all the details requests at once, then set the coordinates as they arrive
+            var details = new ArrayList<CompletableFuture<Void>>();
+            for (var sensor : sensors) {
+                details.add(Loader.loadSensorDetailsAsync(sensor.getLocation(), SensorAdapters::readCoordinates)
+                        .thenAccept(sensor::setCoordinates));
+            }
+            return CompletableFuture.allOf(details.toArray(CompletableFuture[]::new)).thenApply(done -> sensors);
+        });
     }
 
     
@@ -186,12 +499,27 @@ public class App {
      * @param output The string to write
      */
     public static void writeToOutput(String fileName, String output) {
-        try (PrintWriter out = new PrintWriter(fileName)) {
-            out.println(output);
-        } catch(FileNotFoundException exception) {
+        writeToOutput(fileName, out -> out.append(output));
+    }
+
+
+    /**
+     * Streams content to an output file, followed by a line separator.
+     * If gzip output is enabled, the file is compressed and ".gz" is added to its name.
+     *
+     * @param fileName The filename of the file to be written
+     * @param content The content to write
+     * @see #setGzipOutput
+     */
+    public static void writeToOutput(String fileName, OutputWriter.Content content) {
+        var path = Path.of(gzipOutput ? fileName + ".gz" : fileName);
+        try (var out = OutputWriter.open(path, gzipOutput)) {
+            content.writeTo(out);
+            out.newLine();
+        } catch(IOException exception) {
             System.err.println("Error while writing to file.");
-            System.err.println("Filename: " + fileName);
-            System.err.println("Content: " + output);
+            System.err.println("Filename: " + path);
+            System.err.println(exception);
         }
     }
 }
@@ -0,0 +1,157 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * This class runs the drone on many dates at once.
+ * The NoFlyZones are loaded and indexed only once, and shared by all the dates.
+ *
+ * Loading and planning are pipelined: while some dates are being planned on a
+ * fixed pool of workers, the sensors of the next ones are already being loaded.
+ * At most {@link #LOOKAHEAD} dates per worker are loaded ahead of planning, so
+ * memory stays bounded on long ranges.
+ * A failing date does not stop the others, all failures are reported at the end.
+ * The {@link DistanceTable} of the map is shared by all the dates, and persisted at the end.
+ */
+public class BatchRunner {
+    /** Number of dates per worker loaded ahead of planning */
+    private static final int LOOKAHEAD = 2;
+
+    /** Instance attributes */
+    private final Point2D startingPoint;
+    private final int parallelism;
+
+    /**
+     * Constructor for the runner, with one worker per available processor.
+     *
+     * @param startingPoint The starting point for the drone on every date
+     */
+    public BatchRunner(Point2D startingPoint) {
+        this(startingPoint, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * Constructor for the runner.
+     *
+     * @param startingPoint The starting point for the drone on every date
+     * @param parallelism The number of dates planned at the same time
+     */
+    public BatchRunner(Point2D startingPoint, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("At least one worker is needed");
+        }
+        this.startingPoint = Objects.requireNonNull(startingPoint);
+        this.parallelism = parallelism;
+    }
+
+
+    /**
+     * Runs the drone on every date, writing the output files of each one.
+     *
+     * @param dates The dates to run the drone on
+     * @throws IOException If the NoFlyZones cannot be loaded, or any date failed
+     * @throws InterruptedException If the network operation is interrupted
+     */
+    public void run(List<LocalDate> dates) throws IOException, InterruptedException {
+        var noFlyZonesManager = App.loadNoFlyZonesManager();
+
+        var executor = Executors.newFixedThreadPool(parallelism);
+        var window = new Semaphore(parallelism * LOOKAHEAD);
+        var failures = Collections.synchronizedMap(new TreeMap<LocalDate, Throwable>());
+        var runs = new ArrayList<CompletableFuture<Void>>();
+        try {
+            for (var date : dates) {
+                // Wait for a slot in the window before loading the next date
+                window.acquire();
+                var run = runDate(date, noFlyZonesManager, executor)
+                        .whenComplete((done, exception) -> {
+                            window.release();
+                            if (exception != null) {
+                                // Report the actual cause, not the wrapper added by the pipeline
+                                var cause = exception instanceof CompletionException ? exception.getCause() : exception;
+                                failures.put(date, cause);
+                            }
+                        });
+                runs.add(run);
+            }
+            // The failures are collected above, ignore them here
+            CompletableFuture.allOf(runs.toArray(CompletableFuture[]::new))
+                    .exceptionally(exception -> null)
+                    .join();
+        } finally {
+            executor.shutdown();
+        }
+
+        // Keep the distances computed for these dates for the next runs
+        noFlyZonesManager.getDistanceTable().save(DistanceTable.DEFAULT_DIRECTORY);
+        reportFailures(failures);
+    }
+
+
+    /**
+     * Loads the sensors of a date, then plans its flight on the executor.
+     *
+     * @param date The date
+     * @param noFlyZonesManager The NoFlyZonesManager shared by all the dates
+     * @param executor The executor to plan on
+     * @return <code>CompletableFuture&lt;Void&gt;</code> Completes when the output files are written
+     */
+    private CompletableFuture<Void> runDate(LocalDate date, NoFlyZonesManager noFlyZonesManager, ExecutorService executor) {
+        var day = String.format("%02d", date.getDayOfMonth());
+        var month = String.format("%02d", date.getMonthValue());
+        var year = String.format("%04d", date.getYear());
+        return App.loadSensorDataAsync(day, month, year)
+                .thenAcceptAsync(sensors -> App.runDrone(day, month, year, startingPoint, noFlyZonesManager, sensors),
+                        executor);
+    }
+
+
+    /**
+     * Prints the failed dates to stderr.
+     *
+     * @param failures The exception of every failed date
+     * @throws IOException If any date failed
+     */
+    private static void reportFailures(Map<LocalDate, Throwable> failures) throws IOException {
+        if (failures.isEmpty()) {
+            return;
+        }
+        for (var failure : failures.entrySet()) {
+            System.err.println("Failed to run the drone on " + failure.getKey() + ": " + failure.getValue());
+        }
+        throw new IOException(failures.size() + " date(s) failed");
+    }
+
+
+    /**
+     * Generates all the dates between two dates, both included.
+     *
+     * @param from The first date
+     * @param to The last date
+     * @return <code>List&lt;LocalDate&gt;</code> The dates, in order
+     */
+    public static List<LocalDate> dateRange(LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("The last date is before the first one");
+        }
+        var dates = new ArrayList<LocalDate>();
+        for (var date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            dates.add(date);
+        }
+        return dates;
+    }
+}
@@ -0,0 +1,372 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * This class is a raster of the clearance around the boundaries of the {@link NoFlyZone}s:
+ * a signed distance field, positive in the legal area of the map and negative inside the
+ * NoFlyZones or outside the confinement area.
+ *
+ * The value of a cell is a lower bound on the distance from any point of the cell to the
+ * closest boundary, so a move shorter than the clearance of one of its end-points cannot
+ * cross any boundary, and is legal without any segment test. Cells too close to a boundary
+ * have a clearance of 0, and their moves are tested exactly.
+ *
+ * Only the clearances up to {@link #MAX_CLEARANCE} matter, as moves are much shorter. So every
+ * segment is only rasterized over the cells within that distance of it, and the cells further
+ * from every segment keep the maximum. The sign is decided once per connected region of cells
+ * clear of the boundaries, as no point of a region can be on a different side than the others.
+ * After a change to the zones, only the cells close to the changed zones are computed again.
+ */
+public class ClearanceField {
+    /** Side of a cell, in degrees */
+    private static final double CELL_SIZE = 0.00005;
+    /** Maximum number of cells along each axis */
+    private static final int MAX_CELLS_PER_AXIS = 1024;
+    /** Margin taken off every clearance, for the rounding of the distances */
+    private static final double ROUNDING_MARGIN = 1e-9;
+    /** Largest clearance computed, well above the length of a move */
+    static final double MAX_CLEARANCE = 4 * Drone.STEP_LENGTH;
+
+    /** Grid geometry */
+    private final double minX;
+    private final double minY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+    // The furthest any point of a cell is from its centre
+    private final double halfDiagonal;
+    // The clearance of each cell, cells are stored row by row.
+    // Floats keep the raster in cache, the clearances are rounded towards 0
+    private final float[] clearances;
+
+    /**
+     * Class constructor.
+     * Computes the clearance of every cell over the bounding box of the zones.
+     *
+     * @param zones The zones of the map, including the confinement area
+     * @param confinementArea The confinement area, the drone must stay inside it
+     */
+    public ClearanceField(Collection<NoFlyZone> zones, NoFlyZone confinementArea) {
+        this(zones, confinementArea, null, null);
+    }
+
+
+    /**
+     * Class constructor, for a changed map.
+     * If the grid does not change, the clearances of the previous field are copied,
+     * and only the cells close to the changed zones are computed again.
+     *
+     * @param zones The zones of the map, including the confinement area
+     * @param confinementArea The confinement area, the drone must stay inside it
+     * @param previous The field before the changes, or null to compute every cell
+     * @param changed The zones added or removed since the previous field
+     */
+    private ClearanceField(Collection<NoFlyZone> zones, NoFlyZone confinementArea, ClearanceField previous,
+                           Collection<NoFlyZone> changed) {
+        // Compute the bounding box of all the boundaries
+        var minX = Double.POSITIVE_INFINITY;
+        var minY = Double.POSITIVE_INFINITY;
+        var maxX = Double.NEGATIVE_INFINITY;
+        var maxY = Double.NEGATIVE_INFINITY;
+        for (var zone : zones) {
+            for (var x : zone.getPackedXs()) {
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+            }
+            for (var y : zone.getPackedYs()) {
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+            }
+        }
+        if (minX > maxX) {
+            minX = minY = maxX = maxY = 0;
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.columns = Math.max(1, Math.min(MAX_CELLS_PER_AXIS, (int) Math.ceil((maxX - minX) / CELL_SIZE)));
+        this.rows = Math.max(1, Math.min(MAX_CELLS_PER_AXIS, (int) Math.ceil((maxY - minY) / CELL_SIZE)));
+        this.cellWidth = Math.max(maxX - minX, Double.MIN_NORMAL) / columns;
+        this.cellHeight = Math.max(maxY - minY, Double.MIN_NORMAL) / rows;
+        this.halfDiagonal = Math.hypot(cellWidth, cellHeight) / 2;
+
+        if (previous != null && previous.hasSameGrid(this)) {
+            clearances = previous.clearances.clone();
+            for (var zone : changed) {
+                // The cells whose clearance or side the zone can change
+                var reach = MAX_CLEARANCE + halfDiagonal;
+                var xs = zone.getPackedXs();
+                var ys = zone.getPackedYs();
+                fill(zones, confinementArea,
+                        column(min(xs) - reach), column(max(xs) + reach), row(min(ys) - reach), row(max(ys) + reach));
+            }
+        } else {
+            clearances = new float[columns * rows];
+            fill(zones, confinementArea, 0, columns - 1, 0, rows - 1);
+        }
+    }
+
+
+    /**
+     * Generates the field of the map after some zones are added or removed
+     *
+     * @param zones The zones of the changed map, including the confinement area
+     * @param confinementArea The confinement area
+     * @param changed The zones added or removed
+     * @return ClearanceField The field of the changed map
+     */
+    public ClearanceField withChanges(Collection<NoFlyZone> zones, NoFlyZone confinementArea,
+                                      Collection<NoFlyZone> changed) {
+        return new ClearanceField(zones, confinementArea, this, changed);
+    }
+
+
+    /**
+     * Computes the clearance of the cells in a rectangle of the grid
+     *
+     * @param zones The zones
+     * @param confinementArea The confinement area
+     * @param firstColumn The first column of the rectangle
+     * @param lastColumn The last column of the rectangle, included
+     * @param firstRow The first row of the rectangle
+     * @param lastRow The last row of the rectangle, included
+     */
+    private void fill(Collection<NoFlyZone> zones, NoFlyZone confinementArea,
+                      int firstColumn, int lastColumn, int firstRow, int lastRow) {
+        var width = lastColumn - firstColumn + 1;
+        var height = lastRow - firstRow + 1;
+        var distances = new double[width * height];
+        Arrays.fill(distances, MAX_CLEARANCE);
+
+        // Rasterize every segment over the cells within the maximum clearance of it.
+        // The cells further from it are further than the maximum
+        var reach = MAX_CLEARANCE + halfDiagonal;
+        for (var zone : zones) {
+            var xs = zone.getPackedXs();
+            var ys = zone.getPackedYs();
+            for (int vertex = 0; vertex < xs.length - 1; vertex++) {
+                var ax = xs[vertex];
+                var ay = ys[vertex];
+                var bx = xs[vertex + 1];
+                var by = ys[vertex + 1];
+                var fromColumn = Math.max(firstColumn, column(Math.min(ax, bx) - reach));
+                var toColumn = Math.min(lastColumn, column(Math.max(ax, bx) + reach));
+                var fromRow = Math.max(firstRow, row(Math.min(ay, by) - reach));
+                var toRow = Math.min(lastRow, row(Math.max(ay, by) + reach));
+                for (int row = fromRow; row <= toRow; row++) {
+                    var y = minY + (row + 0.5) * cellHeight;
+                    for (int column = fromColumn; column <= toColumn; column++) {
+                        var x = minX + (column + 0.5) * cellWidth;
+                        var cell = (row - firstRow) * width + column - firstColumn;
+                        distances[cell] = Math.min(distances[cell], Geometry.pointSegmentDistance(x, y, ax, ay, bx, by));
+                    }
+                }
+            }
+        }
+
+        // The clearance of the centre of a cell, minus the furthest any point of the cell is from it
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                var clearance = distances[(row - firstRow) * width + column - firstColumn] - halfDiagonal - ROUNDING_MARGIN;
+                // A boundary may cross a cell without clearance, the side of its points is unknown
+                clearances[row * columns + column] = clearance > 0 ? Math.nextDown((float) clearance) : 0;
+            }
+        }
+
+        // Flood the regions of cells with a clearance, and test the side of one point per region.
+        // No boundary crosses a region, so all its points are on the same side
+        var flooded = new boolean[width * height];
+        // The cells flooded whose neighbours are not yet, every cell is added once at most
+        var pending = new int[width * height];
+        var size = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                var seed = (row - firstRow) * width + column - firstColumn;
+                if (flooded[seed] || clearances[row * columns + column] == 0) {
+                    continue;
+                }
+                var legal = isLegalArea(zones, confinementArea,
+                        minX + (column + 0.5) * cellWidth, minY + (row + 0.5) * cellHeight);
+                flooded[seed] = true;
+                pending[size++] = seed;
+                while (size > 0) {
+                    var cell = pending[--size];
+                    var cellRow = firstRow + cell / width;
+                    var cellColumn = firstColumn + cell % width;
+                    var index = cellRow * columns + cellColumn;
+                    if (!legal) {
+                        clearances[index] = -clearances[index];
+                    }
+                    // The cells sharing a side with this one, in the rectangle
+                    if (cellColumn > firstColumn) {
+                        size = flood(cell - 1, index - 1, flooded, pending, size);
+                    }
+                    if (cellColumn < lastColumn) {
+                        size = flood(cell + 1, index + 1, flooded, pending, size);
+                    }
+                    if (cellRow > firstRow) {
+                        size = flood(cell - width, index - columns, flooded, pending, size);
+                    }
+                    if (cellRow < lastRow) {
+                        size = flood(cell + width, index + columns, flooded, pending, size);
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Adds a cell to the region being flooded, if it has a clearance and is not flooded yet
+     *
+     * @param cell The index of the cell in the rectangle being filled
+     * @param index The index of the cell in the grid
+     * @param flooded Whether every cell of the rectangle is flooded
+     * @param pending The cells flooded, whose neighbours are not yet
+     * @param size The number of pending cells
+     * @return int The number of pending cells, with this one if it was added
+     */
+    private int flood(int cell, int index, boolean[] flooded, int[] pending, int size) {
+        if (!flooded[cell] && clearances[index] != 0) {
+            flooded[cell] = true;
+            pending[size++] = cell;
+        }
+        return size;
+    }
+
+
+    /**
+     * Get the clearance at a point
+     *
+     * @param x X of the point
+     * @param y Y of the point
+     * @return double The distance to the closest boundary at least, negative if the point is not in
+     *                the legal area, 0 if unknown
+     */
+    public double clearance(double x, double y) {
+        // Negative offsets are outside the grid, and must not be truncated into it
+        var offsetX = (x - minX) / cellWidth;
+        var offsetY = (y - minY) / cellHeight;
+        if (!(offsetX >= 0 && offsetY >= 0 && offsetX < columns && offsetY < rows)) {
+            return 0;
+        }
+        return clearances[(int) offsetY * columns + (int) offsetX];
+    }
+
+
+    /**
+     * Checks if a move from (x1, y1) to (x2, y2) is far enough from every boundary
+     * to be legal without testing them
+     *
+     * @param x1 X of the start of the move
+     * @param y1 Y of the start of the move
+     * @param x2 X of the end of the move
+     * @param y2 Y of the end of the move
+     * @return boolean Whether the move certainly crosses no boundary. False if unknown
+     */
+    public boolean isClear(double x1, double y1, double x2, double y2) {
+        // The move is inside the circle of clearance of an end-point, or in the union of both.
+        // Squared distances are compared, so no square root is needed. Squaring drops the sign,
+        // so the moves inside a NoFlyZone, away from its boundaries, are clear too: as with the
+        // segment tests, a move is only illegal if it crosses a boundary
+        var lengthSquared = Point2D.distanceSq(x1, y1, x2, y2);
+        var clearance1 = clearance(x1, y1);
+        clearance1 *= clearance1;
+        if (clearance1 > lengthSquared) {
+            return true;
+        }
+        var clearance2 = clearance(x2, y2);
+        clearance2 *= clearance2;
+        return clearance2 > lengthSquared || (clearance1 > lengthSquared / 4 && clearance2 > lengthSquared / 4);
+    }
+
+
+    /**
+     * Checks if another field is laid over the same grid
+     *
+     * @param other The other field
+     * @return boolean Whether the cells of both fields are the same
+     */
+    private boolean hasSameGrid(ClearanceField other) {
+        return minX == other.minX && minY == other.minY && columns == other.columns && rows == other.rows
+                && cellWidth == other.cellWidth && cellHeight == other.cellHeight;
+    }
+
+
+    /**
+     * Get the column of the grid of an X, clamped to the grid
+     *
+     * @param x The X
+     * @return int The column
+     */
+    private int column(double x) {
+        return (int) Math.max(0, Math.min(columns - 1, Math.floor((x - minX) / cellWidth)));
+    }
+
+
+    /**
+     * Get the row of the grid of a Y, clamped to the grid
+     *
+     * @param y The Y
+     * @return int The row
+     */
+    private int row(double y) {
+        return (int) Math.max(0, Math.min(rows - 1, Math.floor((y - minY) / cellHeight)));
+    }
+
+
+    /**
+     * Get the smallest of some values
+     *
+     * @param values The values
+     * @return double The smallest value
+     */
+    private static double min(double[] values) {
+        var min = Double.POSITIVE_INFINITY;
+        for (var value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+
+    /**
+     * Get the largest of some values
+     *
+     * @param values The values
+     * @return double The largest value
+     */
+    private static double max(double[] values) {
+        var max = Double.NEGATIVE_INFINITY;
+        for (var value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+
+    /**
+     * Checks if a point is in the legal area: inside the confinement area, outside any other zone
+     *
+     * @param zones The zones
+     * @param confinementArea The confinement area
+     * @param x X of the point
+     * @param y Y of the point
+     * @return boolean Whether the point is in the legal area
+     */
+    private static boolean isLegalArea(Collection<NoFlyZone> zones, NoFlyZone confinementArea, double x, double y) {
+        var point = new Point2D.Double(x, y);
+        if (!confinementArea.contains(point)) {
+            return false;
+        }
+        for (var zone : zones) {
+            if (zone != confinementArea && zone.contains(point)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,394 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * This class is a table of obstacle-aware flight distances between sites of a map,
+ * e.g. sensor locations and starting points, measured in lengths of a move of the drone.
+ * The distance of a pair is the length of the shortest path around the NoFlyZones,
+ * given by the {@link VisibilityGraph}, divided by the length of a move. It is not a
+ * count of moves: it is fractional, and a lower bound of the moves needed, as the drone
+ * only flies in the directions of its lattice.
+ *
+ * Sites recur across dates, so every pair is computed once, and then looked up.
+ * Missing pairs are computed in parallel. The table can be persisted to disk,
+ * under the hash of the NoFlyZones it was computed for, so it is only reused on the
+ * same map. As for the {@link ResourceCache}, disk errors are ignored.
+ */
+public class DistanceTable {
+    /** Default location of the persisted tables */
+    public static final Path DEFAULT_DIRECTORY = ResourceCache.DEFAULT_DIRECTORY;
+    /** First bytes of a persisted table, and version of its format */
+    private static final int MAGIC = 0x41514454;
+    private static final int VERSION = 1;
+
+    /** Instance attributes */
+    private final NoFlyZonesManager noFlyZonesManager;
+    private final String zonesHash;
+    // The sites, and their index in the table
+    private final List<Point2D> sites = new ArrayList<>();
+    private final Map<Point2D, Integer> siteIndices = new ConcurrentHashMap<>();
+    // The distance of every known pair, keyed by the indices of its sites
+    private final Map<Long, Double> distances = new ConcurrentHashMap<>();
+
+    /**
+     * Class constructor, for an empty table
+     *
+     * @param noFlyZonesManager The map the distances are computed on
+     */
+    public DistanceTable(NoFlyZonesManager noFlyZonesManager) {
+        this.noFlyZonesManager = noFlyZonesManager;
+        this.zonesHash = hashZones(noFlyZonesManager.getNoFlyZones());
+    }
+
+
+    /**
+     * Class constructor, for the table of a changed map.
+     * The pairs of the previous table the changes cannot affect are copied.
+     *
+     * A shortest path of length L between a and b lies within the ellipse of the points p
+     * with |pa| + |pb| &lt;= L. If no changed zone reaches into the ellipse, the path is still
+     * legal after an addition, and a shorter path avoiding a removed zone was legal before,
+     * so the distance is the same. The bounding boxes of the zones are tested, which is safe.
+     *
+     * @param noFlyZonesManager The changed map the distances are computed on
+     * @param previous The table of the map before the changes
+     * @param changed The zones added to or removed from the map
+     */
+    DistanceTable(NoFlyZonesManager noFlyZonesManager, DistanceTable previous, Collection<NoFlyZone> changed) {
+        this(noFlyZonesManager);
+        var bounds = new ArrayList<Rectangle2D>();
+        for (var zone : changed) {
+            var box = new Rectangle2D.Double();
+            box.setFrameFromDiagonal(zone.getCoordinates().get(0), zone.getCoordinates().get(0));
+            for (var corner : zone.getCoordinates()) {
+                box.add(corner);
+            }
+            bounds.add(box);
+        }
+        List<Point2D> previousSites;
+        synchronized (previous.sites) {
+            previousSites = List.copyOf(previous.sites);
+        }
+        for (var entry : previous.distances.entrySet()) {
+            var i = (int) (entry.getKey() >>> 32);
+            if (i >= previousSites.size()) {
+                continue;
+            }
+            var a = previousSites.get(i);
+            var b = previousSites.get(entry.getKey().intValue());
+            var length = entry.getValue() * Drone.STEP_LENGTH;
+            var affected = false;
+            for (var box : bounds) {
+                if (distance(a, box) + distance(b, box) <= length) {
+                    affected = true;
+                    break;
+                }
+            }
+            if (!affected) {
+                distances.putIfAbsent(key(indexOf(a), indexOf(b)), entry.getValue());
+            }
+        }
+    }
+
+
+    /**
+     * Get the distance between two sites, computing it if it is not in the table
+     *
+     * @param from The first site
+     * @param to The second site
+     * @return double The path length, in lengths of a move
+     */
+    public double distance(Point2D from, Point2D to) {
+        var i = indexOf(from);
+        var j = indexOf(to);
+        if (i == j) {
+            return 0;
+        }
+        var known = distances.get(key(i, j));
+        if (known != null) {
+            return known;
+        }
+        // The path is searched outside the map, so parallel searches never block one another.
+        // Two threads may search the same pair, the first distance stored is kept
+        var computed = compute(from, to);
+        var previous = distances.putIfAbsent(key(i, j), computed);
+        return previous == null ? computed : previous;
+    }
+
+
+    /**
+     * Get the distance between every pair of sites.
+     * The pairs not in the table are computed in parallel first.
+     *
+     * @param points The sites
+     * @return double[][] The symmetric distance matrix, in lengths of a move
+     */
+    public double[][] matrix(Point2D[] points) {
+        precompute(List.of(points));
+        var n = points.length;
+        var matrix = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                matrix[i][j] = matrix[j][i] = distance(points[i], points[j]);
+            }
+        }
+        return matrix;
+    }
+
+
+    /**
+     * Computes the distances between every pair of sites not in the table, in parallel
+     *
+     * @param points The sites
+     */
+    public void precompute(Collection<? extends Point2D> points) {
+        var list = new ArrayList<Point2D>(points);
+        var indices = list.stream().mapToInt(this::indexOf).toArray();
+        var missing = new ArrayList<int[]>();
+        for (int i = 0; i < indices.length; i++) {
+            for (int j = i + 1; j < indices.length; j++) {
+                if (indices[i] != indices[j] && !distances.containsKey(key(indices[i], indices[j]))) {
+                    missing.add(new int[] { i, j });
+                }
+            }
+        }
+        IntStream.range(0, missing.size()).parallel().forEach(k -> {
+            var pair = missing.get(k);
+            distance(list.get(pair[0]), list.get(pair[1]));
+        });
+    }
+
+
+    /**
+     * Get the number of pairs in the table
+     *
+     * @return int The number of pairs
+     */
+    public int size() {
+        return distances.size();
+    }
+
+
+    /**
+     * Get the hash of the NoFlyZones the table is computed for
+     *
+     * @return String The hex SHA-256 of the zones
+     */
+    public String getZonesHash() {
+        return zonesHash;
+    }
+
+
+    /**
+     * Adds the pairs persisted for the same NoFlyZones to the table.
+     * A missing, corrupted or outdated file is ignored.
+     *
+     * @param directory The directory the tables are persisted in
+     */
+    public void load(Path directory) {
+        var file = directory.resolve(fileName());
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(zonesHash)) {
+                return;
+            }
+            // The indices in the file are mapped to those of this table
+            var fileIndices = new int[in.readInt()];
+            for (int i = 0; i < fileIndices.length; i++) {
+                fileIndices[i] = indexOf(new Point2D.Double(in.readDouble(), in.readDouble()));
+            }
+            var pairs = in.readInt();
+            for (int k = 0; k < pairs; k++) {
+                var i = fileIndices[in.readInt()];
+                var j = fileIndices[in.readInt()];
+                distances.putIfAbsent(key(i, j), in.readDouble());
+            }
+        } catch (IOException | RuntimeException exception) {
+            // The table is best-effort, the missing pairs will be computed again
+        }
+    }
+
+
+    /**
+     * Persists the table. The file is written to a temporary file first,
+     * then moved in place, so concurrent readers never see a partial table.
+     *
+     * @param directory The directory the tables are persisted in
+     */
+    public void save(Path directory) {
+        Path file = null;
+        try {
+            Files.createDirectories(directory);
+            file = Files.createTempFile(directory, "distances", ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(zonesHash);
+                List<Point2D> snapshot;
+                synchronized (sites) {
+                    snapshot = List.copyOf(sites);
+                }
+                out.writeInt(snapshot.size());
+                for (var site : snapshot) {
+                    out.writeDouble(site.getX());
+                    out.writeDouble(site.getY());
+                }
+                // Only the pairs between sites in the snapshot are written
+                var pairs = new ArrayList<Map.Entry<Long, Double>>();
+                for (var entry : distances.entrySet()) {
+                    if ((entry.getKey() >>> 32) < snapshot.size()) {
+                        pairs.add(entry);
+                    }
+                }
+                out.writeInt(pairs.size());
+                for (var pair : pairs) {
+                    out.writeInt((int) (pair.getKey() >>> 32));
+                    out.writeInt(pair.getKey().intValue());
+                    out.writeDouble(pair.getValue());
+                }
+            }
+            Files.move(file, directory.resolve(fileName()), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            // The table is best-effort, it is still kept in memory.
+            // A partial table is never left behind
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException deleteException) {
+                    // Nothing else can be done
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Computes the obstacle-aware distance between two sites
+     *
+     * @param from The first site
+     * @param to The second site
+     * @return double The path length, in lengths of a move
+     */
+    private double compute(Point2D from, Point2D to) {
+        var path = noFlyZonesManager.getVisibilityGraph().shortestPath(from, to);
+        if (path.isEmpty()) {
+            // A site inside a NoFlyZone has no path, fall back to the straight line
+            return from.distance(to) / Drone.STEP_LENGTH;
+        }
+        var length = 0.0;
+        var previous = from;
+        for (var waypoint : path.get()) {
+            length += previous.distance(waypoint);
+            previous = waypoint;
+        }
+        return length / Drone.STEP_LENGTH;
+    }
+
+
+    /**
+     * Get the index of a site, adding it to the table if it is new
+     *
+     * @param site The site
+     * @return int The index of the site
+     */
+    private int indexOf(Point2D site) {
+        // Sites are copied, so later changes to the given points do not corrupt the table
+        return siteIndices.computeIfAbsent(new Point2D.Double(site.getX(), site.getY()), copy -> {
+            synchronized (sites) {
+                sites.add(copy);
+                return sites.size() - 1;
+            }
+        });
+    }
+
+
+    /**
+     * Get the distance from a point to a rectangle
+     *
+     * @param point The point
+     * @param box The rectangle
+     * @return double The distance, 0 if the point is inside the rectangle
+     */
+    private static double distance(Point2D point, Rectangle2D box) {
+        var dx = Math.max(Math.max(box.getMinX() - point.getX(), point.getX() - box.getMaxX()), 0);
+        var dy = Math.max(Math.max(box.getMinY() - point.getY(), point.getY() - box.getMaxY()), 0);
+        return Math.hypot(dx, dy);
+    }
+
+
+    /**
+     * Generates the key of a pair of sites, the same in both directions
+     *
+     * @param i The index of the first site
+     * @param j The index of the second site
+     * @return long The key, with the larger index in the high bits
+     */
+    private static long key(int i, int j) {
+        return (long) Math.max(i, j) << 32 | Math.min(i, j);
+    }
+
+
+    /**
+     * Get the name of the file the table is persisted in
+     *
+     * @return String The file name, unique to the NoFlyZones
+     */
+    private String fileName() {
+        return "distances-" + zonesHash + ".bin";
+    }
+
+
+    /**
+     * Generates a hash of a set of NoFlyZones, independent of their order
+     *
+     * @param zones The NoFlyZones
+     * @return String The hex SHA-256 of the coordinates of the zones
+     */
+    private static String hashZones(Collection<NoFlyZone> zones) {
+        var descriptions = new ArrayList<String>();
+        for (var zone : zones) {
+            var description = new StringBuilder();
+            for (var corner : zone.getCoordinates()) {
+                description.append(corner.getX()).append(',').append(corner.getY()).append(';');
+            }
+            descriptions.add(description.toString());
+        }
+        descriptions.sort(null);
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            for (var description : descriptions) {
+                digest.update(description.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            var hex = new StringBuilder();
+            for (var b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException exception) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+}
@@ -1,50 +1,155 @@
 package uk.ac.ed.inf.aqmaps;
 
-import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalDouble;
 import java.util.Set;
-import java.util.function.Predicate;
-import java.util.stream.DoubleStream;
-import java.util.stream.Stream;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 
 /**
  * This class represents the Drone.
  * It is a stateful drone, aiming to visit all sensors provided, with the
  * restrictions imposed by the {@link NoFlyZonesManager}.
+ * Every move is decided by its {@link StepPlanner}.
  */
 public class Drone {
     /** Given parameters for the drone */
-    private static final int ALLOWED_NUMBER_OF_MOVES = 150;
-    private static final double STEP_LENGTH = 0.0003;
-    private static final double STEP_ANGLE = 10;
-    private static final double SENSOR_RANGE = 0.0002;
+    static final int ALLOWED_NUMBER_OF_MOVES = 150;
+    static final double STEP_LENGTH = 0.0003;
+    static final double SENSOR_RANGE = 0.0002;
 
     /** Instance attributes */
     private final Point2D startingPoint;
     private final NoFlyZonesManager noFlyZonesManager;
-    private final HashSet<Sensor> sensors;
-
+    private final Set<Sensor> sensors;
+    private final TourOptimizer tourOptimizer;
+    private final FlyAroundDirection flyAroundDirection;
+    private final int moveBudget;
+    private final StepPlanner stepPlanner;
+    // The search for the lattice step planner, and for the way back of both
+    private final LatticeSearch latticeSearch;
+
+    /** State of the current planning run, reset by {@link #continueFlight} */
     private int movesLeft;
     private Point2D droneLocation;
+    // The positions planned by the lattice search, and their target
+    private final Deque<Point2D> plannedMoves = new ArrayDeque<>();
+    private Point2D plannedTarget;
+    // The target the lattice search failed to reach, flown to greedily instead
+    private Point2D failedTarget;
+    // The waypoints flown to greedily, the next one, and their target
+    private List<Point2D> waypoints = List.of();
+    private int nextWaypoint;
+    private Point2D waypointsTarget;
+
+    /**
+     * The preferred direction to fly around a NoFlyZone.
+     * CLOSEST always takes the legal angle closest to the straight line,
+     * the others prefer angles on their side of the straight line when possible.
+     */
+    public enum FlyAroundDirection { CLOSEST, CLOCKWISE, COUNTER_CLOCKWISE }
+
+    /**
+     * How the drone decides its moves.
+     * GREEDY aims every move at the next waypoint of the shortest path, flying around
+     * the NoFlyZones in its way. LATTICE_SEARCH plans the moves to the next target
+     * with a {@link LatticeSearch}, and falls back to GREEDY if no move is found. Both plan the way
+     * back to the starting point with {@link LatticeSearch#shortestPath}.
+     */
+    public enum StepPlanner { GREEDY, LATTICE_SEARCH }
 
     /**
      * Constructor for the Drone.
+     * Sensors are visited in the order given by a {@link LocalSearchTourOptimizer},
+     * over the obstacle-aware distances of the map.
      *
      * @param startingPoint The starting point for the Drone
      * @param noFlyZonesManager The NoFlyZonesManager
      * @param sensors The Set of sensors to be visited
      */
     public Drone(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors) {
+        this(startingPoint, noFlyZonesManager, sensors,
+                new LocalSearchTourOptimizer(0, noFlyZonesManager.getDistanceTable()));
+    }
+
+
+    /**
+     * Constructor for the Drone, with a custom tour-ordering stage.
+     *
+     * @param startingPoint The starting point for the Drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     * @param tourOptimizer The TourOptimizer deciding the order to visit the sensors
+     */
+    public Drone(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors, TourOptimizer tourOptimizer) {
+        this(startingPoint, noFlyZonesManager, sensors, tourOptimizer, FlyAroundDirection.CLOSEST);
+    }
+
+
+    /**
+     * Constructor for the Drone, with a custom tour-ordering stage and fly-around direction.
+     *
+     * @param startingPoint The starting point for the Drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     * @param tourOptimizer The TourOptimizer deciding the order to visit the sensors
+     * @param flyAroundDirection The preferred direction to fly around NoFlyZones
+     */
+    public Drone(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                 TourOptimizer tourOptimizer, FlyAroundDirection flyAroundDirection) {
+        this(startingPoint, noFlyZonesManager, sensors, tourOptimizer, flyAroundDirection, ALLOWED_NUMBER_OF_MOVES);
+    }
+
+
+    /**
+     * Constructor for the Drone, with a custom tour-ordering stage, fly-around direction and move budget.
+     *
+     * @param startingPoint The starting point for the Drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     * @param tourOptimizer The TourOptimizer deciding the order to visit the sensors
+     * @param flyAroundDirection The preferred direction to fly around NoFlyZones
+     * @param moveBudget The maximum number of moves of a flight
+     */
+    public Drone(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                 TourOptimizer tourOptimizer, FlyAroundDirection flyAroundDirection, int moveBudget) {
+        this(startingPoint, noFlyZonesManager, sensors, tourOptimizer, flyAroundDirection, moveBudget, StepPlanner.GREEDY);
+    }
+
+
+    /**
+     * Constructor for the Drone, with a custom tour-ordering stage, fly-around direction,
+     * move budget and step planner.
+     *
+     * @param startingPoint The starting point for the Drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     * @param tourOptimizer The TourOptimizer deciding the order to visit the sensors
+     * @param flyAroundDirection The preferred direction to fly around NoFlyZones
+     * @param moveBudget The maximum number of moves of a flight
+     * @param stepPlanner How the drone decides its moves
+     */
+    public Drone(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                 TourOptimizer tourOptimizer, FlyAroundDirection flyAroundDirection, int moveBudget,
+                 StepPlanner stepPlanner) {
+        if (moveBudget < 1) {
+            throw new IllegalArgumentException("The move budget must be positive");
+        }
         // Validate input and initialise attributes
         this.startingPoint = Objects.requireNonNull(startingPoint);
         this.noFlyZonesManager = Objects.requireNonNull(noFlyZonesManager);
-        this.sensors = new HashSet<>(Objects.requireNonNull(sensors));
-        this.movesLeft = ALLOWED_NUMBER_OF_MOVES;
+        this.sensors = Set.copyOf(Objects.requireNonNull(sensors));
+        this.tourOptimizer = Objects.requireNonNull(tourOptimizer);
+        this.flyAroundDirection = Objects.requireNonNull(flyAroundDirection);
+        this.moveBudget = moveBudget;
+        this.stepPlanner = Objects.requireNonNull(stepPlanner);
+        this.latticeSearch = new LatticeSearch(noFlyZonesManager);
+        this.movesLeft = moveBudget;
         this.droneLocation = startingPoint;
         for (var sensor : sensors) {
             Objects.requireNonNull(sensor);
@@ -54,69 +159,265 @@ public class Drone {
     /**
      * Generates a valid {@link FlightPlan} for the Drone, with requirements
      * and restrictions given in the constructor.
+     * Every call is an independent run: the drone state is reset, and the
+     * sensors are never modified.
      *
      * @return FlightPlan The valid FlightPlan visiting all sensors
      */
     public FlightPlan planFlight() {
-        // Initialise an empty FlightPlan at <code>startingPoint</code>
+        return planFlight(() -> false);
+    }
+
+
+    /**
+     * Generates a valid {@link FlightPlan} for the Drone, unless the planning is cancelled.
+     * The cancellation is checked before every move, so the planning stops soon after it.
+     *
+     * @param cancelled Whether the planning is cancelled, e.g. when its deadline has passed
+     * @return FlightPlan The valid FlightPlan visiting all sensors
+     * @throws CancellationException If the planning is cancelled before the flight is planned
+     */
+    FlightPlan planFlight(BooleanSupplier cancelled) {
+        // Initialise an empty FlightPlan at <code>startingPoint</code>,
+        // and decide the visiting order before flying
         var flightPlan = new FlightPlan(startingPoint);
+        checkCancelled(cancelled);
+        continueFlight(flightPlan, tourOptimizer.optimise(startingPoint, sensors), cancelled);
+        return flightPlan;
+    }
+
+
+    /**
+     * Recalls the drone mid-flight: the moves already flown are kept, then the drone flies
+     * back to the starting point along the shortest path of the move lattice, without
+     * reading any more sensors.
+     *
+     * @param flightPlan The FlightPlan being flown, starting at <code>startingPoint</code>
+     * @param movesFlown The number of moves of the FlightPlan already flown
+     * @return FlightPlan The moves already flown, then the way back
+     */
+    public FlightPlan recall(FlightPlan flightPlan, int movesFlown) {
+        if (!flightPlan.getPosition(0).equals(startingPoint)) {
+            throw new IllegalArgumentException("The FlightPlan does not start at the starting point");
+        }
+        if (movesFlown < 0 || movesFlown > flightPlan.getMovesCount()) {
+            throw new IllegalArgumentException("Invalid number of moves flown: " + movesFlown);
+        }
+        var recalled = flightPlan.prefix(movesFlown);
+        // A drone that has not left is already back
+        if (movesFlown > 0) {
+            continueFlight(recalled, List.of());
+        }
+        return recalled;
+    }
+
+
+    /**
+     * Continues a FlightPlan from its last position: visits the sensors in the given
+     * order, then flies back to the starting point, within the moves left.
+     * The drone state is reset from the FlightPlan, which is extended in place.
+     *
+     * @param flightPlan The FlightPlan to continue, starting at <code>startingPoint</code>
+     * @param order The sensors left to visit, in visiting order
+     */
+    void continueFlight(FlightPlan flightPlan, List<Sensor> order) {
+        continueFlight(flightPlan, order, () -> false);
+    }
+
+
+    /**
+     * Continues a FlightPlan from its last position, unless the planning is cancelled.
+     *
+     * @param flightPlan The FlightPlan to continue, starting at <code>startingPoint</code>
+     * @param order The sensors left to visit, in visiting order
+     * @param cancelled Whether the planning is cancelled, checked before every move
+     * @throws CancellationException If the planning is cancelled before the flight is over
+     */
+    private void continueFlight(FlightPlan flightPlan, List<Sensor> order, BooleanSupplier cancelled) {
+        // Reset the state from where the FlightPlan ends
+        movesLeft = moveBudget - flightPlan.getMovesCount();
+        droneLocation = flightPlan.getPosition(flightPlan.getMovesCount());
+        plannedMoves.clear();
+        plannedTarget = null;
+        failedTarget = null;
+        waypoints = List.of();
+        waypointsTarget = null;
+        Deque<Sensor> tour = new ArrayDeque<>(order);
+
+        // A resumed flight may already be over
+        if (tour.isEmpty() && flightPlan.getMovesCount() > 0 && droneLocation.distance(startingPoint) < STEP_LENGTH) {
+            return;
+        }
 
         // While there are moves left, iterate
-        while (movesLeft != 0) {
-            var closestSensor = closestSensor();
+        while (movesLeft > 0) {
+            checkCancelled(cancelled);
+            var nextSensor = Optional.ofNullable(tour.peekFirst());
             Point2D targetDestination;
+            double targetRadius;
+            // The target after this one, the lattice search ends the move on its side
+            var afterTarget = startingPoint;
+            if (tour.size() > 1) {
+                var it = tour.iterator();
+                it.next();
+                afterTarget = it.next().getCoordinates();
+            }
 
             // If there's a sensor to visit, try to go there.
             // Else go back to starting point
-            if (closestSensor.isPresent()) {
-                targetDestination = closestSensor.get().getCoordinates();
+            if (nextSensor.isPresent()) {
+                targetDestination = nextSensor.get().getCoordinates();
+                targetRadius = SENSOR_RANGE;
             } else {
                 targetDestination = startingPoint;
+                targetRadius = STEP_LENGTH;
             }
 
             // Make a valid move towards the target destination, and add it to the flight plan.
-            droneLocation = moveTowards(targetDestination);
+            // If no move is legal, the drone is boxed in and the flight ends where it is.
+            var move = nextMove(targetDestination, targetRadius, afterTarget, nextSensor.isEmpty());
+            if (move.isEmpty()) {
+                break;
+            }
+            droneLocation = move.get();
             flightPlan.add(droneLocation);
 
             // Read sensor if possible, and add to flight plan.
-            if (closestSensor.isPresent() && takeReading(closestSensor.get())) {
-                sensors.remove(closestSensor.get());
-                flightPlan.read(closestSensor.get().getLocation());
+            if (nextSensor.isPresent() && takeReading(nextSensor.get())) {
+                tour.removeFirst();
+                flightPlan.read(nextSensor.get().getLocation());
             }
 
             // If no sensor is left to read, and we're close to the starting point, break.
-            if (sensors.size() == 0 && droneLocation.distance(startingPoint) < STEP_LENGTH) {
+            if (tour.isEmpty() && droneLocation.distance(startingPoint) < STEP_LENGTH) {
                 break;
             }
             movesLeft -= 1;
         }
-        return flightPlan;
     }
 
 
     /**
-     * Make a move towards the target destination
+     * Stops the planning if it is cancelled
+     *
+     * @param cancelled Whether the planning is cancelled
+     * @throws CancellationException If the planning is cancelled
+     */
+    private static void checkCancelled(BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("The flight planning was cancelled");
+        }
+    }
+
+
+    /**
+     * Decides the next move with the step planner of the drone.
+     * The lattice search plans all the moves to the target at once, if it can reach it
+     * within its lookahead. Otherwise, only the first move towards the most promising
+     * position is taken, and the search starts again from there.
+     * The way back to the starting point is planned at once with the shortest path search,
+     * whatever the step planner.
+     * If a search finds no move, or no way back, the drone flies greedily for the rest of the leg,
+     * so the search is not repeated at every move.
+     *
+     * @param targetDestination The target destination
+     * @param targetRadius The distance from the target to reach
+     * @param afterTarget The target after this one
+     * @param isHoming Whether the target is the starting point, at the end of the flight
+     * @return <code>Optional&lt;Point2D&gt;</code> The drone location after the move, empty if no move is legal
+     */
+    private Optional<Point2D> nextMove(Point2D targetDestination, double targetRadius, Point2D afterTarget, boolean isHoming) {
+        if ((stepPlanner == StepPlanner.GREEDY && !isHoming) || targetDestination.equals(failedTarget)) {
+            return moveTowards(targetDestination);
+        }
+        if (plannedMoves.isEmpty() || !targetDestination.equals(plannedTarget)) {
+            plannedMoves.clear();
+            plannedTarget = targetDestination;
+            var result = isHoming
+                    ? latticeSearch.shortestPath(droneLocation, targetDestination, targetRadius, movesLeft)
+                    : latticeSearch.search(droneLocation, targetDestination, targetRadius, afterTarget, movesLeft);
+            if (result.isComplete()) {
+                plannedMoves.addAll(result.getPositions());
+            } else if (isHoming || result.getPositions().isEmpty()) {
+                failedTarget = targetDestination;
+            } else {
+                plannedMoves.add(result.getPositions().get(0));
+            }
+        }
+        return plannedMoves.isEmpty() ? moveTowards(targetDestination) : Optional.of(plannedMoves.removeFirst());
+    }
+
+
+    /**
+     * Make a move towards the target destination.
+     * The move follows the shortest path around the NoFlyZones given by the
+     * {@link VisibilityGraph}, aiming at its first waypoint.
+     *
+     * @param targetDestination The target destination
+     * @return <code>Optional&lt;Point2D&gt;</code> The drone location after the move, empty if no move is legal
+     */
+    private Optional<Point2D> moveTowards(Point2D targetDestination) {
+        var bestAngle = getBestAngleTo(nextWaypoint(targetDestination));
+        if (bestAngle.isEmpty()) {
+            return Optional.empty();
+        }
+        var angle = (int) bestAngle.getAsDouble();
+        return Optional.of(new Point2D.Double(
+                Geometry.stepX(droneLocation.getX(), angle, STEP_LENGTH),
+                Geometry.stepY(droneLocation.getY(), angle, STEP_LENGTH)));
+    }
+
+    /**
+     * Get the waypoint to aim the next move at, along the shortest path to the target.
+     * The path is kept for the whole leg, and only searched for again when its waypoint
+     * can no longer be seen. While the waypoint after it can be seen, the drone aims at
+     * that one instead, as a new search from here would.
      *
      * @param targetDestination The target destination
-     * @return Point2D The drone location after the move
+     * @return Point2D The waypoint, the target itself if it can be seen or cannot be reached
      */
-    private Point2D moveTowards(Point2D targetDestination) {
-        var angle = getBestAngleTo(targetDestination);
-        var radians = Math.toRadians(angle);
-        return step(radians);
+    private Point2D nextWaypoint(Point2D targetDestination) {
+        if (targetDestination.equals(waypointsTarget)) {
+            // Skip the waypoints reached, or seen past
+            while (nextWaypoint < waypoints.size() - 1
+                    && (droneLocation.distance(waypoints.get(nextWaypoint)) < STEP_LENGTH
+                    || isVisible(waypoints.get(nextWaypoint + 1)))) {
+                nextWaypoint++;
+            }
+            if (isVisible(waypoints.get(nextWaypoint))) {
+                return waypoints.get(nextWaypoint);
+            }
+        }
+        waypoints = noFlyZonesManager.getVisibilityGraph()
+                .shortestPath(droneLocation, targetDestination)
+                .orElse(List.of(targetDestination));
+        nextWaypoint = 0;
+        waypointsTarget = targetDestination;
+        return waypoints.get(0);
     }
 
+
+    /**
+     * Checks if a point can be seen from the drone location, i.e. the straight line is a legal move
+     *
+     * @param point The point
+     * @return boolean Whether the straight line is legal
+     */
+    private boolean isVisible(Point2D point) {
+        return noFlyZonesManager.isLegalMove(droneLocation.getX(), droneLocation.getY(), point.getX(), point.getY());
+    }
+
+
     /**
      * Get the best angle to go to the target location.
      * Note this is not always the straight-line angle if there is a
      * NoFlyZone in the path, or if the angle is not legal for the drone to fly.
      *
      * @param targetDestination The target destination
-     * @return double The optimal <b>legal</b> angle to fly to the destination.
-     * @see #legalAngles
+     * @return OptionalDouble The optimal <b>legal</b> angle to fly to the destination, empty if no angle is legal.
      * @see #getBestFlyAroundAngle
      */
-    private double getBestAngleTo(Point2D targetDestination) {
+    private OptionalDouble getBestAngleTo(Point2D targetDestination) {
         // This is the straight-line angle to the target destination
         var directAngle = Utils.radiansBetween(droneLocation, targetDestination);
 
@@ -127,11 +428,18 @@ public class Drone {
         }
 
         // Generate a naive move (possibly illegal angle), then validate it.
-        var move = new Line2D.Double(droneLocation, targetDestination);
-        var validAngle = Math.toRadians(Utils.round10(Math.toDegrees(directAngle)));
-        var validMove = new Line2D.Double(droneLocation, step(validAngle));
+        var x = droneLocation.getX();
+        var y = droneLocation.getY();
+        var targetX = targetDestination.getX();
+        var targetY = targetDestination.getY();
+        var validAngle = Utils.round10(Math.toDegrees(directAngle));
+        var validX = Geometry.stepX(x, validAngle, STEP_LENGTH);
+        var validY = Geometry.stepY(y, validAngle, STEP_LENGTH);
+        if (noFlyZonesManager.isLegalMove(x, y, targetX, targetY) && noFlyZonesManager.isLegalMove(x, y, validX, validY)) {
+            return OptionalDouble.of(validAngle);
+        }
         for (var zone : noFlyZonesManager.getNoFlyZones()) {
-            if (!zone.isLegalMove(move) || !zone.isLegalMove(validMove)) {
+            if (!zone.isLegalMove(x, y, targetX, targetY) || !zone.isLegalMove(x, y, validX, validY)) {
                 // If the move hits a NoFlyZone, then get a fly-around angle.
                 var opt = getBestFlyAroundAngle(droneLocation, targetDestination, zone);
                 return opt;
@@ -139,7 +447,7 @@ public class Drone {
         }
 
         // Legalise the move by rounding to 10
-        return Utils.round10(Math.toDegrees(directAngle));
+        return OptionalDouble.of(Utils.round10(Math.toDegrees(directAngle)));
     }
 
 
@@ -147,80 +455,97 @@ public class Drone {
      * Get the best <b>legal</b> angle to <b>fully</b> fly around a given no fly zone.
      * It returns the closest angle to a straight-line path, that never intersects the no-fly zone.
      * This assures the least number of steps are needed to fly around it.
+     * All the directions are checked at once, see {@link NoFlyZonesManager#legalDirections}.
+     * If no direction flies around the zone in one pass, the closest legal step is taken instead.
      *
      * @param start The starting point
      * @param targetDestination The target destination
      * @param noFlyZone The NoFlyZone to circumvent
-     * @return double
+     * @return OptionalDouble The angle, empty if no step is legal
      */
-    private double getBestFlyAroundAngle(Point2D start, Point2D targetDestination, NoFlyZone noFlyZone) {
+    private OptionalDouble getBestFlyAroundAngle(Point2D start, Point2D targetDestination, NoFlyZone noFlyZone) {
+        Metrics.increment(Metrics.Counter.FLY_AROUNDS);
         // Get the straight-line angle as optimal value
         var directAngle = Utils.radiansBetween(start, targetDestination);
         var directAngleDegrees = Math.toDegrees(directAngle);
 
         // Get the corners of the zone, and find the furthest one
-        var zoneCoordinates = noFlyZone.getCoordinates();
-        var distanceToFurtherCorner = zoneCoordinates.stream().map(start::distance).max(Double::compare).orElse(0.0);
-
-        // Define predicates to avoid the noFlyZone
-        // Compare angles based on how close they are to the straight-line
-        Comparator<Double> deltaFromDirectAngle = Comparator.comparingDouble(angle -> Utils.angleDifference(angle, directAngleDegrees));
-
-        // Verify it circumnavigates the noFlyZone, and that it does not hit any other while doing it
-        Predicate<Double> avoidsNoFlyZone = (angle) ->
-                noFlyZone == NoFlyZonesManager.getConfinementArea()
-                        || noFlyZone.isLegalMove(Utils.getLine(start, angle, distanceToFurtherCorner));
-        Predicate<Double> avoidsOtherZones = (angle) -> (noFlyZonesManager.isLegalMove(Utils.getLine(start, angle, STEP_LENGTH)));
+        var x = start.getX();
+        var y = start.getY();
+        var distanceToFurtherCorner = noFlyZone.furthestVertexDistance(x, y);
+
+        // Get the directions that do not hit any zone in one step, and, unless it's the
+        // confinement area, those which circumnavigate the noFlyZone in one pass.
+        var legalSteps = noFlyZonesManager.legalDirections(x, y, STEP_LENGTH);
+        var legal = legalSteps;
+        if (noFlyZone != NoFlyZonesManager.getConfinementArea()) {
+            legal &= noFlyZone.legalDirections(x, y, distanceToFurtherCorner);
+        }
 
-        // Out of all the legal angles, keep those which do not intersect with the NFZ,
-        // then get the closest one to the straight-line angle.
-        //noinspection OptionalGetWithoutIsPresent
-        return legalAngles()
-                .filter(avoidsNoFlyZone).filter(avoidsOtherZones)
-                .min(deltaFromDirectAngle).get();
+        var bestAngle = getClosestAngle(legal, directAngleDegrees);
+        if (bestAngle.isEmpty()) {
+            // Next to other zones, no direction may fly around this one in one pass
+            bestAngle = getClosestAngle(legalSteps, directAngleDegrees);
+        }
+        return bestAngle;
     }
 
 
     /**
-     * Generate a stream of all legal angles for the drone to fly
-     * This is generalised on the STEP_ANGLE, in this case it returns all multiples of 10 up to 360
+     * Get the closest angle to the straight-line angle, out of a set of directions,
+     * preferring those on the side given by the fly-around direction.
+     * On ties, the lowest angle is kept.
      *
-     * @return <code>Stream&lt;Double&gt;</code> The stream of legal angles
+     * @param directions The bit set of the directions, see {@link Geometry#DIRECTIONS}
+     * @param directAngleDegrees The straight-line angle in degrees
+     * @return OptionalDouble The angle, empty if there are no directions
      */
-    private static Stream<Double> legalAngles() {
-        return DoubleStream.iterate(0, angle -> angle < 360, x -> x + STEP_ANGLE).boxed();
+    private OptionalDouble getClosestAngle(long directions, double directAngleDegrees) {
+        var bestAngle = -1;
+        var bestOnPreferredSide = false;
+        var bestDelta = Double.POSITIVE_INFINITY;
+        for (var remaining = directions; remaining != 0; remaining &= remaining - 1) {
+            var angle = Long.numberOfTrailingZeros(remaining) * Geometry.STEP_ANGLE;
+            var onPreferredSide = isOnPreferredSide(angle, directAngleDegrees);
+            var delta = Utils.angleDifference(angle, directAngleDegrees);
+            if (bestAngle == -1 || (onPreferredSide && !bestOnPreferredSide)
+                    || (onPreferredSide == bestOnPreferredSide && delta < bestDelta)) {
+                bestAngle = angle;
+                bestOnPreferredSide = onPreferredSide;
+                bestDelta = delta;
+            }
+        }
+        return bestAngle == -1 ? OptionalDouble.empty() : OptionalDouble.of(bestAngle);
     }
 
 
     /**
-     * Tries to take a reading of a sensor. Returns whether the sensor was in range
-     * and the reading was performed correctly.
+     * Checks if an angle is on the side of the straight line given by the fly-around direction
      *
-     * @param sensor The sensor to read
-     * @return boolean Whether the sensor was read appropriately (i.e: within range)
+     * @param angle The angle in degrees
+     * @param directAngleDegrees The straight-line angle in degrees
+     * @return boolean Whether the angle is on the preferred side
      */
-    private boolean takeReading(Sensor sensor) {
-        if (distanceToSensor(sensor) < SENSOR_RANGE) {
-            sensor.visit();
-            return true;
+    private boolean isOnPreferredSide(double angle, double directAngleDegrees) {
+        var turn = Utils.normaliseAngle(angle - directAngleDegrees);
+        switch (flyAroundDirection) {
+            case CLOCKWISE: return turn == 0 || turn > 180;
+            case COUNTER_CLOCKWISE: return turn < 180;
+            default: return true;
         }
-        return false;
     }
 
 
     /**
-     * Get the closest sensor to the drone.
+     * Tries to take a reading of a sensor. Returns whether the sensor was in range
+     * and the reading was performed correctly.
+     * The reading is recorded in the {@link FlightPlan}, the sensor itself is not modified.
      *
-     * @return <code>Optional&lt;Sensor&gt;</code> The closest sensor. Empty if no sensor is present
+     * @param sensor The sensor to read
+     * @return boolean Whether the sensor was read appropriately (i.e: within range)
      */
-    private Optional<Sensor> closestSensor() {
-        // If no sensor is present, return an empty container
-        if (sensors.size() == 0) {
-            return Optional.empty();
-        }
-        // Else find the closest one by comparing the distance and taking the minimum.
-        var comparingOnDistanceFromDrone = Comparator.comparingDouble(this::distanceToSensor);
-        return Optional.of(Collections.min(sensors, comparingOnDistanceFromDrone));
+    private boolean takeReading(Sensor sensor) {
+        return distanceToSensor(sensor) < SENSOR_RANGE;
     }
 
 
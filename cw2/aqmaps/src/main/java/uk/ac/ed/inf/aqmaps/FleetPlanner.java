@@ -0,0 +1,298 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This class plans the flights of a fleet of drones, all starting from the same point.
+ *
+ * The sensors are partitioned with a sweep heuristic for capacitated routing: sorted
+ * by angle around the starting point, they are cut into consecutive sectors, each one
+ * small enough for its estimated tour to fit the move budget of a drone. The largest
+ * sector is made as small as possible, so the work is balanced over the fleet.
+ * Every sector is then planned concurrently by a {@link MultiStartPlanner}.
+ *
+ * If the sensors cannot all fit in the budget of the fleet, the sectors left over
+ * are merged into the drones with the shortest tours, which visit what they can.
+ */
+public class FleetPlanner {
+    /** Share of the move budget a tour is estimated to need at most, the drone needs
+     *  more moves than the path length, as its angles are multiples of 10 degrees */
+    static final double BUDGET_FILL = 0.9;
+    /** Iterations of the search for the smallest sector size */
+    private static final int SEARCH_ITERATIONS = 32;
+
+    /** Instance attributes */
+    private final Point2D startingPoint;
+    private final NoFlyZonesManager noFlyZonesManager;
+    private final List<Sensor> sensors;
+    private final int drones;
+    private final int moveBudget;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor for the planner, on the common pool.
+     *
+     * @param startingPoint The starting point of every drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     * @param drones The number of drones in the fleet
+     * @param moveBudget The maximum number of moves of every drone
+     */
+    public FleetPlanner(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                        int drones, int moveBudget) {
+        this(startingPoint, noFlyZonesManager, sensors, drones, moveBudget, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Constructor for the planner.
+     *
+     * @param startingPoint The starting point of every drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     * @param drones The number of drones in the fleet
+     * @param moveBudget The maximum number of moves of every drone
+     * @param pool The ForkJoinPool to plan the drones on
+     */
+    public FleetPlanner(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                        int drones, int moveBudget, ForkJoinPool pool) {
+        if (drones < 1) {
+            throw new IllegalArgumentException("The fleet needs at least one drone");
+        }
+        if (moveBudget < 1) {
+            throw new IllegalArgumentException("The move budget must be positive");
+        }
+        this.startingPoint = Objects.requireNonNull(startingPoint);
+        this.noFlyZonesManager = Objects.requireNonNull(noFlyZonesManager);
+        this.sensors = new ArrayList<>(Objects.requireNonNull(sensors));
+        this.drones = drones;
+        this.moveBudget = moveBudget;
+        this.pool = Objects.requireNonNull(pool);
+    }
+
+
+    /**
+     * Partitions the sensors, then plans the flight of every drone concurrently.
+     * A drone without sensors gets an empty FlightPlan.
+     *
+     * @return <code>List&lt;FlightPlan&gt;</code> One FlightPlan per drone
+     */
+    public List<FlightPlan> planFlights() {
+        // Fork one task per drone, then join them all
+        var tasks = new ArrayList<ForkJoinTask<FlightPlan>>();
+        for (var sector : partition()) {
+            if (sector.isEmpty()) {
+                tasks.add(pool.submit(() -> new FlightPlan(startingPoint)));
+                continue;
+            }
+            var planner = new MultiStartPlanner(startingPoint, noFlyZonesManager, Set.copyOf(sector),
+                    MultiStartPlanner.DEFAULT_FIRST_SENSORS, moveBudget, pool);
+            tasks.add(pool.submit(planner::planFlight));
+        }
+        var plans = new ArrayList<FlightPlan>(drones);
+        for (var task : tasks) {
+            plans.add(task.join());
+        }
+        return plans;
+    }
+
+
+    /**
+     * Partitions the sensors into one sector per drone.
+     * Searches for the smallest estimated tour that still lets the sweep fit in the fleet.
+     *
+     * @return <code>List&lt;List&lt;Sensor&gt;&gt;</code> The sensors of every drone, some may be empty
+     */
+    List<List<Sensor>> partition() {
+        var ordered = sweepOrder();
+        var maxCost = moveBudget * BUDGET_FILL;
+        var sectors = sweep(ordered, maxCost);
+        if (sectors.size() <= drones) {
+            // Binary search for the smallest sector cost, the sweep stays within the fleet above it
+            var low = 0.0;
+            var high = maxCost;
+            for (int i = 0; i < SEARCH_ITERATIONS; i++) {
+                var middle = (low + high) / 2;
+                var candidate = sweep(ordered, middle);
+                if (candidate.size() <= drones) {
+                    sectors = candidate;
+                    high = middle;
+                } else {
+                    low = middle;
+                }
+            }
+        } else {
+            // Not everything fits: the sectors left over go to the shortest tours
+            var extra = new ArrayList<>(sectors.subList(drones, sectors.size()));
+            sectors = new ArrayList<>(sectors.subList(0, drones));
+            for (var sector : extra) {
+                var shortest = sectors.stream().min(Comparator.comparingDouble(SubTour::getCost)).orElseThrow();
+                for (var sensor : sector.sensors) {
+                    shortest.add(sensor);
+                }
+            }
+        }
+
+        var result = new ArrayList<List<Sensor>>(drones);
+        for (var sector : sectors) {
+            result.add(sector.sensors);
+        }
+        while (result.size() < drones) {
+            result.add(List.of());
+        }
+        return result;
+    }
+
+
+    /**
+     * Estimates the cost of the tour of a sector, as the partition does
+     *
+     * @param sector The sensors of the sector, in the order they were added to it
+     * @return double The estimated number of moves
+     */
+    double estimatedCost(List<Sensor> sector) {
+        var subTour = new SubTour();
+        for (var sensor : sector) {
+            subTour.add(sensor);
+        }
+        return subTour.getCost();
+    }
+
+
+    /**
+     * Sorts the sensors by angle around the starting point.
+     * The sweep starts after the largest gap between two consecutive sensors,
+     * so that no sector straddles it.
+     *
+     * @return <code>List&lt;Sensor&gt;</code> The sensors, in sweep order
+     */
+    private List<Sensor> sweepOrder() {
+        var ordered = new ArrayList<>(sensors);
+        ordered.sort(Comparator.comparingDouble(this::angleOf).thenComparing(Sensor::getLocation));
+        if (ordered.size() < 2) {
+            return ordered;
+        }
+        var firstAfterGap = 0;
+        var largestGap = angleOf(ordered.get(0)) + 2 * Math.PI - angleOf(ordered.get(ordered.size() - 1));
+        for (int i = 1; i < ordered.size(); i++) {
+            var gap = angleOf(ordered.get(i)) - angleOf(ordered.get(i - 1));
+            if (gap > largestGap) {
+                largestGap = gap;
+                firstAfterGap = i;
+            }
+        }
+        var rotated = new ArrayList<>(ordered.subList(firstAfterGap, ordered.size()));
+        rotated.addAll(ordered.subList(0, firstAfterGap));
+        return rotated;
+    }
+
+
+    /**
+     * Cuts the sensors into consecutive sectors, starting a new one whenever
+     * the next sensor would make the estimated tour exceed the maximum cost.
+     *
+     * @param ordered The sensors, in sweep order
+     * @param maxCost The maximum estimated cost of a tour, in moves
+     * @return <code>List&lt;SubTour&gt;</code> The sectors
+     */
+    private List<SubTour> sweep(List<Sensor> ordered, double maxCost) {
+        var sectors = new ArrayList<SubTour>();
+        var current = new SubTour();
+        for (var sensor : ordered) {
+            if (!current.sensors.isEmpty() && current.getCost() + current.insertionCost(sensor) > maxCost) {
+                sectors.add(current);
+                current = new SubTour();
+            }
+            current.add(sensor);
+        }
+        if (!current.sensors.isEmpty()) {
+            sectors.add(current);
+        }
+        return sectors;
+    }
+
+
+    /**
+     * Get the angle of a sensor around the starting point
+     *
+     * @param sensor The sensor
+     * @return double The angle in radians, between -PI and PI
+     */
+    private double angleOf(Sensor sensor) {
+        var coordinates = sensor.getCoordinates();
+        return Math.atan2(coordinates.getY() - startingPoint.getY(), coordinates.getX() - startingPoint.getX());
+    }
+
+
+    /**
+     * This class is the estimated tour of a sector, built by cheapest insertion
+     * over the obstacle-aware distances of the {@link DistanceTable}.
+     * Every leg is counted one move longer, as the drone rounds its moves up.
+     */
+    private class SubTour {
+        /** Instance attributes */
+        private final List<Sensor> sensors = new ArrayList<>();
+        // The tour, from the starting point back to it
+        private final List<Point2D> tour = new ArrayList<>(List.of(startingPoint, startingPoint));
+        private double length = 0;
+
+        /**
+         * Get the estimated cost of the tour
+         *
+         * @return double The estimated number of moves
+         */
+        public double getCost() {
+            return length + sensors.size() + 1;
+        }
+
+        /**
+         * Get the cost of adding a sensor to the tour
+         *
+         * @param sensor The sensor
+         * @return double The estimated number of moves added
+         */
+        public double insertionCost(Sensor sensor) {
+            return bestInsertion(sensor.getCoordinates())[1] + 1;
+        }
+
+        /**
+         * Adds a sensor to the tour, where it is cheapest
+         *
+         * @param sensor The sensor
+         */
+        public void add(Sensor sensor) {
+            var insertion = bestInsertion(sensor.getCoordinates());
+            tour.add((int) insertion[0], sensor.getCoordinates());
+            length += insertion[1];
+            sensors.add(sensor);
+        }
+
+        /**
+         * Finds the cheapest place to insert a point in the tour
+         *
+         * @param point The point
+         * @return double[] The index to insert the point at, and the added length
+         */
+        private double[] bestInsertion(Point2D point) {
+            var table = noFlyZonesManager.getDistanceTable();
+            var best = new double[] { 1, Double.POSITIVE_INFINITY };
+            for (int i = 1; i < tour.size(); i++) {
+                var before = tour.get(i - 1);
+                var after = tour.get(i);
+                var added = table.distance(before, point) + table.distance(point, after) - table.distance(before, after);
+                if (added < best[1]) {
+                    best[0] = i;
+                    best[1] = added;
+                }
+            }
+            return best;
+        }
+    }
+}
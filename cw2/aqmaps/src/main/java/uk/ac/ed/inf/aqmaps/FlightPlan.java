@@ -1,23 +1,48 @@
 package uk.ac.ed.inf.aqmaps;
 
 import com.mapbox.geojson.LineString;
+import com.mapbox.geojson.Point;
 
 import java.awt.geom.Point2D;
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * This class represents a full Flight Plan.
- * It makes use of an inner class to represent a single component (i.e. step) in the plan.
+ * It is stored in columns of primitives: the positions of the drone after every move
+ * (the first one being the starting point), the angle of every move in tens of degrees,
+ * and the sensor read after every move, as an index in the list of readings.
+ * Each move shares its start with the end of the previous one, so nothing is duplicated.
  * Provides methods to generate maps as a result.
  */
 public class FlightPlan {
+    /** Initial number of moves the columns have room for, they double when full */
+    private static final int INITIAL_CAPACITY = 32;
+    /** Sensor index of a move without a reading */
+    private static final int NO_READING = -1;
+    /** Most moves a compact plan may have, far above any move budget, so a corrupted count is not allocated */
+    static final int MAX_COMPACT_MOVES = 1 << 20;
+
     /** Instance attributes */
     private final Point2D startingPoint;
-    // This is a Deque, as it is an efficient data structure when operating on the ends only
-    private final Deque<FlightPlanComponent> flightPlan = new ArrayDeque<>();
+    private int moves = 0;
+    // Position after every move, index 0 is the starting point
+    private double[] xs = new double[INITIAL_CAPACITY + 1];
+    private double[] ys = new double[INITIAL_CAPACITY + 1];
+    // Angle of every move, divided by 10
+    private byte[] angles = new byte[INITIAL_CAPACITY];
+    // Index in <code>readings</code> of the sensor read after every move
+    private int[] sensors = new int[INITIAL_CAPACITY];
+    // The locations of the sensors read in this plan, in reading order
+    private final List<String> readings = new ArrayList<>();
 
     /**
      * Constructor for the class
@@ -26,6 +51,8 @@ public class FlightPlan {
      */
     public FlightPlan(Point2D startingPoint) {
         this.startingPoint = startingPoint;
+        xs[0] = startingPoint.getX();
+        ys[0] = startingPoint.getY();
     }
 
 
@@ -36,34 +63,128 @@ public class FlightPlan {
      * @param point The point to add
      */
     public void add(Point2D point) {
-        // Create a new Component
-        var inProgress = new FlightPlanComponent();
-        inProgress.index = flightPlan.size();
-
-        // Generate start based on last destination
-        if (flightPlan.peekLast() == null) {
-            inProgress.start = startingPoint;
-        } else {
-            inProgress.start = flightPlan.peekLast().end;
+        if (moves == angles.length) {
+            grow();
         }
 
         // Calculate angle and assert it's valid as a sanity check
-        inProgress.end = point;
-        inProgress.angle = (int) Math.round(Utils.degreesBetween(inProgress.start, inProgress.end));
-        assert inProgress.angle % 10 == 0;
-        flightPlan.add(inProgress);
+        var angle = (int) Math.round(Utils.degreesBetween(getPosition(moves), point));
+        assert angle % 10 == 0;
+        angles[moves] = (byte) (angle / 10);
+        sensors[moves] = NO_READING;
+        moves += 1;
+        xs[moves] = point.getX();
+        ys[moves] = point.getY();
     }
 
 
     /**
-     * Add the reading of a sensor to a FlightPlanComponent
+     * Doubles the room of the columns
+     */
+    private void grow() {
+        var capacity = angles.length * 2;
+        xs = Arrays.copyOf(xs, capacity + 1);
+        ys = Arrays.copyOf(ys, capacity + 1);
+        angles = Arrays.copyOf(angles, capacity);
+        sensors = Arrays.copyOf(sensors, capacity);
+    }
+
+
+    /**
+     * Add the reading of a sensor to the last move
      *
      * @param sensorLocation The sensor to be read.
      */
     public void read(String sensorLocation) {
         // Sanity check: assert we moved before reading a sensor
-        assert flightPlan.size() > 0;
-        flightPlan.peekLast().sensor = sensorLocation;
+        assert moves > 0;
+        var index = readings.indexOf(sensorLocation);
+        if (index == NO_READING) {
+            index = readings.size();
+            readings.add(sensorLocation);
+        }
+        sensors[moves - 1] = index;
+    }
+
+
+    /**
+     * Checks whether a sensor was read during the FlightPlan
+     *
+     * @param sensorLocation The What3Words location of the sensor
+     * @return boolean Whether the sensor was read
+     */
+    public boolean hasRead(String sensorLocation) {
+        return readings.contains(sensorLocation);
+    }
+
+
+    /**
+     * Get the number of sensors read during the FlightPlan
+     *
+     * @return int The number of readings
+     */
+    public int getReadingsCount() {
+        return readings.size();
+    }
+
+
+    /**
+     * Get the number of moves in the FlightPlan
+     *
+     * @return int The number of moves
+     */
+    public int getMovesCount() {
+        return moves;
+    }
+
+
+    /**
+     * Get the position of the drone after a number of moves
+     *
+     * @param moves The number of moves, 0 for the starting point
+     * @return Point2D The position of the drone
+     */
+    public Point2D getPosition(int moves) {
+        if (moves < 0 || moves > this.moves) {
+            throw new IndexOutOfBoundsException("No position after " + moves + " moves");
+        }
+        return moves == 0 ? startingPoint : new Point2D.Double(xs[moves], ys[moves]);
+    }
+
+
+    /**
+     * Get the sensor read at the end of a move
+     *
+     * @param move The index of the move, starting from 0
+     * @return String The What3Words location of the sensor, or null if no sensor was read
+     */
+    public String getReading(int move) {
+        if (move < 0 || move >= moves) {
+            throw new IndexOutOfBoundsException("No move " + move);
+        }
+        return sensors[move] == NO_READING ? null : readings.get(sensors[move]);
+    }
+
+
+    /**
+     * Generates a new FlightPlan with the first moves of this one, and their readings
+     *
+     * @param moves The number of moves to keep
+     * @return FlightPlan The truncated FlightPlan
+     */
+    public FlightPlan prefix(int moves) {
+        if (moves < 0 || moves > this.moves) {
+            throw new IndexOutOfBoundsException("Cannot keep " + moves + " moves out of " + this.moves);
+        }
+        var prefix = new FlightPlan(startingPoint);
+        for (int i = 0; i < moves; i++) {
+            prefix.add(new Point2D.Double(xs[i + 1], ys[i + 1]));
+            var reading = getReading(i);
+            if (reading != null) {
+                prefix.read(reading);
+            }
+        }
+        return prefix;
     }
 
 
@@ -73,66 +194,155 @@ public class FlightPlan {
      * @return LineString The generated drone path
      */
     public LineString toGeoJson() {
-        // Get all end-points, add the starting point, and generate a LineString
-        var points = flightPlan.stream()
-                .map(FlightPlanComponent::getEnd)
-                .map(Utils::point2dToPoint);
-        // Add the starting point, and generate a LineString
-        var line = Stream.concat(Stream.of(Utils.point2dToPoint(startingPoint)), points)
-                .collect(Collectors.toList());
+        // Get the starting point and all end-points, and generate a LineString
+        var line = new ArrayList<Point>(moves + 1);
+        for (int i = 0; i <= moves; i++) {
+            line.add(Point.fromLngLat(xs[i], ys[i]));
+        }
         return LineString.fromLngLats(line);
     }
 
 
+    /**
+     * Method to stream the GeoJson LineString feature for the FlightPlan.
+     * Writes the same path as {@link #toGeoJson}, without building it in memory.
+     *
+     * @param json The GeoJson encoder to write to
+     * @throws IOException If the output cannot be written
+     */
+    public void writeGeoJson(GeoJsonWriter json) throws IOException {
+        json.beginLineString();
+        for (int i = 0; i <= moves; i++) {
+            json.point(xs[i], ys[i]);
+        }
+        json.endLineString();
+    }
+
+
     /**
      * Method to generate a String representation of a FlightPlan.
-     * This is a format according to {@link FlightPlanComponent#toString}
+     * This is a format according to {@link #writeFlightPlan}
      *
      * @return String The resulting FlightPlan
      */
     public String fileFlightPlan() {
-        // Map all components to toString(), then join with a line-break
-        return flightPlan
-                .stream()
-                .map(FlightPlanComponent::toString)
-                .collect(Collectors.joining("\n"));
-    }
-
-
-    /**
-     * This is a inner class for the FlightPlanComponent.
-     * It represents one single entry of a FlightPlan. It has all the information
-     * needed to fill a flightpath file as required by coursework specification.
-     */
-    private static class FlightPlanComponent {
-        // Private instance attribute
-        private int index;
-        private Point2D start;
-        private int angle;
-        private Point2D end;
-        private String sensor;
-
-        /**
-         * Method to get the End point of a flight step. Used to generate the LineString
-         *
-         * @return Point2D The end point
-         */
-        public Point2D getEnd() {
-            return end;
-        }
-
-        /**
-         * Generates a String representation of the Component.
-         * This is in the formats from the given coursework specification
-         *
-         * @return String The formatted string representation
-         */
-        @Override
-        public String toString() {
-            // Get all the needed elements, make them strings and concatenate with commas
-            return Stream.of(index, start.getX(), start.getY(), angle, end.getX(), end.getY(), sensor)
-                    .map(String::valueOf)
-                    .collect(Collectors.joining(","));
+        // Write the plan to memory, with the same formatting as the files
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new OutputWriter(Channels.newChannel(bytes))) {
+            writeFlightPlan(out);
+        } catch (IOException exception) {
+            // Writing to memory never fails
+            throw new UncheckedIOException(exception);
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * Method to write the FlightPlan one move at a time.
+     * Moves are separated by a line-break, in the format from the given coursework specification:
+     * index, start longitude and latitude, angle, end longitude and latitude, sensor read or null
+     *
+     * @param out The writer to write the FlightPlan to
+     * @throws IOException If the output cannot be written
+     */
+    public void writeFlightPlan(OutputWriter out) throws IOException {
+        for (int i = 0; i < moves; i++) {
+            if (i > 0) {
+                out.append('\n');
+            }
+            out.append(i).append(',')
+                    .append(xs[i]).append(',').append(ys[i]).append(',')
+                    .append(angles[i] * 10).append(',')
+                    .append(xs[i + 1]).append(',').append(ys[i + 1]).append(',')
+                    .append(String.valueOf(getReading(i)));
+        }
+    }
+
+
+    /**
+     * Writes the FlightPlan in a compact binary form, read back by {@link #readCompact}.
+     * The positions are not written, as they follow from the starting point and the
+     * angle of every move: a move takes a single byte, plus the readings.
+     * The last position is written as a checksum of the whole path.
+     *
+     * @param out The output to write the FlightPlan to
+     * @throws IOException If the output cannot be written, or the FlightPlan has more than MAX_COMPACT_MOVES moves
+     */
+    void writeCompact(DataOutput out) throws IOException {
+        if (moves > MAX_COMPACT_MOVES) {
+            throw new IOException("Too many moves to write: " + moves);
+        }
+        out.writeDouble(xs[0]);
+        out.writeDouble(ys[0]);
+        out.writeInt(moves);
+        out.write(angles, 0, moves);
+        out.writeInt(readings.size());
+        for (var location : readings) {
+            out.writeUTF(location);
+        }
+        // The readings of every move, as a move index and a reading index
+        var readMoves = 0;
+        for (int i = 0; i < moves; i++) {
+            readMoves += sensors[i] == NO_READING ? 0 : 1;
+        }
+        out.writeInt(readMoves);
+        for (int i = 0; i < moves; i++) {
+            if (sensors[i] != NO_READING) {
+                out.writeInt(i);
+                out.writeInt(sensors[i]);
+            }
+        }
+        out.writeDouble(xs[moves]);
+        out.writeDouble(ys[moves]);
+    }
+
+
+    /**
+     * Reads a FlightPlan written by {@link #writeCompact}.
+     * The positions are replayed from the angles, the same way the drone moves.
+     *
+     * @param in The input to read the FlightPlan from
+     * @return FlightPlan The FlightPlan
+     * @throws IOException If the input cannot be read, has an invalid number of moves,
+     *                     or the replayed path does not match the checksum
+     */
+    static FlightPlan readCompact(DataInput in) throws IOException {
+        var plan = new FlightPlan(new Point2D.Double(in.readDouble(), in.readDouble()));
+        var moves = in.readInt();
+        // The count is checked before the angles are allocated
+        if (moves < 0 || moves > MAX_COMPACT_MOVES) {
+            throw new IOException("Invalid number of moves: " + moves);
+        }
+        var angles = new byte[moves];
+        in.readFully(angles);
+        var x = plan.xs[0];
+        var y = plan.ys[0];
+        for (var angle : angles) {
+            if (angle < 0 || angle * Geometry.STEP_ANGLE > 360) {
+                throw new IOException("Invalid angle: " + angle * Geometry.STEP_ANGLE);
+            }
+            x = Geometry.stepX(x, angle * Geometry.STEP_ANGLE, Drone.STEP_LENGTH);
+            y = Geometry.stepY(y, angle * Geometry.STEP_ANGLE, Drone.STEP_LENGTH);
+            plan.add(new Point2D.Double(x, y));
+        }
+
+        var locations = in.readInt();
+        for (int i = 0; i < locations; i++) {
+            plan.readings.add(in.readUTF());
+        }
+        var readMoves = in.readInt();
+        for (int k = 0; k < readMoves; k++) {
+            var move = in.readInt();
+            var index = in.readInt();
+            if (move < 0 || move >= moves || index < 0 || index >= locations) {
+                throw new IOException("Invalid reading at move " + move);
+            }
+            plan.sensors[move] = index;
+        }
+        if (in.readDouble() != x || in.readDouble() != y) {
+            throw new IOException("The replayed path does not match the plan");
         }
+        return plan;
     }
 }
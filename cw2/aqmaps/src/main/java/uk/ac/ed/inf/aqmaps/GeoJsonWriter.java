@@ -0,0 +1,226 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+
+import com.mapbox.geojson.utils.GeoJsonUtils;
+
+/**
+ * This class is a streaming encoder for the GeoJson output of the application:
+ * a FeatureCollection with the LineString path of the drone, and a Point feature
+ * with string properties for every sensor.
+ *
+ * The output is the same, byte for byte, as the one generated by the mapbox
+ * classes through Gson: coordinates are trimmed to 7 decimal places, numbers are
+ * formatted with {@link Double#toString(double)}, and strings are escaped the same
+ * HTML-safe way. Nothing is written through reflection, and no feature is kept in memory.
+ */
+public class GeoJsonWriter {
+    /** Escapes for the characters Gson does not write as-is, by char value */
+    private static final String[] REPLACEMENTS = new String[128];
+
+    static {
+        for (int i = 0; i < 0x20; i++) {
+            REPLACEMENTS[i] = String.format("\\u%04x", i);
+        }
+        REPLACEMENTS['"'] = "\\\"";
+        REPLACEMENTS['\\'] = "\\\\";
+        REPLACEMENTS['\t'] = "\\t";
+        REPLACEMENTS['\b'] = "\\b";
+        REPLACEMENTS['\n'] = "\\n";
+        REPLACEMENTS['\r'] = "\\r";
+        REPLACEMENTS['\f'] = "\\f";
+        // HTML-safe escapes, as in the default Gson configuration
+        REPLACEMENTS['<'] = "\\u003c";
+        REPLACEMENTS['>'] = "\\u003e";
+        REPLACEMENTS['&'] = "\\u0026";
+        REPLACEMENTS['='] = "\\u003d";
+        REPLACEMENTS['\''] = "\\u0027";
+    }
+
+    /** Instance attributes */
+    private final OutputWriter out;
+    // Whether the next feature, coordinate or property is the first of its list
+    private boolean firstFeature;
+    private boolean firstCoordinate;
+    private boolean firstProperty;
+
+    /**
+     * Class constructor
+     *
+     * @param out The writer to write the GeoJson to
+     */
+    public GeoJsonWriter(OutputWriter out) {
+        this.out = out;
+    }
+
+
+    /**
+     * Starts the FeatureCollection
+     *
+     * @throws IOException If the output cannot be written
+     */
+    public void beginFeatureCollection() throws IOException {
+        out.append("{\"type\":\"FeatureCollection\",\"features\":[");
+        firstFeature = true;
+    }
+
+
+    /**
+     * Ends the FeatureCollection
+     *
+     * @throws IOException If the output cannot be written
+     */
+    public void endFeatureCollection() throws IOException {
+        out.append("]}");
+    }
+
+
+    /**
+     * Starts a LineString feature. Its points are added with {@link #point}
+     *
+     * @throws IOException If the output cannot be written
+     */
+    public void beginLineString() throws IOException {
+        beginFeature();
+        out.append("{\"type\":\"LineString\",\"coordinates\":[");
+        firstCoordinate = true;
+    }
+
+
+    /**
+     * Adds a point to the current LineString
+     *
+     * @param x The longitude of the point
+     * @param y The latitude of the point
+     * @throws IOException If the output cannot be written
+     */
+    public void point(double x, double y) throws IOException {
+        if (!firstCoordinate) {
+            out.append(',');
+        }
+        writeCoordinates(x, y);
+        firstCoordinate = false;
+    }
+
+
+    /**
+     * Ends the current LineString feature, which has no properties
+     *
+     * @throws IOException If the output cannot be written
+     */
+    public void endLineString() throws IOException {
+        out.append("]},\"properties\":{}}");
+    }
+
+
+    /**
+     * Starts a Point feature. Its properties are added with {@link #property}
+     *
+     * @param x The longitude of the point
+     * @param y The latitude of the point
+     * @throws IOException If the output cannot be written
+     */
+    public void beginPoint(double x, double y) throws IOException {
+        beginFeature();
+        out.append("{\"type\":\"Point\",\"coordinates\":");
+        writeCoordinates(x, y);
+        out.append("},\"properties\":{");
+        firstProperty = true;
+    }
+
+
+    /**
+     * Adds a string property to the current Point feature
+     *
+     * @param name The name of the property
+     * @param value The value of the property
+     * @throws IOException If the output cannot be written
+     */
+    public void property(String name, String value) throws IOException {
+        if (!firstProperty) {
+            out.append(',');
+        }
+        writeString(name);
+        out.append(':');
+        writeString(value);
+        firstProperty = false;
+    }
+
+
+    /**
+     * Ends the current Point feature
+     *
+     * @throws IOException If the output cannot be written
+     */
+    public void endPoint() throws IOException {
+        out.append("}}");
+    }
+
+
+    /**
+     * Writes the start of a feature, up to its geometry
+     *
+     * @throws IOException If the output cannot be written
+     */
+    private void beginFeature() throws IOException {
+        if (!firstFeature) {
+            out.append(',');
+        }
+        out.append("{\"type\":\"Feature\",\"geometry\":");
+        firstFeature = false;
+    }
+
+
+    /**
+     * Writes a coordinates pair, trimmed as mapbox does
+     *
+     * @param x The longitude
+     * @param y The latitude
+     * @throws IOException If the output cannot be written
+     */
+    private void writeCoordinates(double x, double y) throws IOException {
+        out.append('[');
+        writeNumber(GeoJsonUtils.trim(x));
+        out.append(',');
+        writeNumber(GeoJsonUtils.trim(y));
+        out.append(']');
+    }
+
+
+    /**
+     * Writes a number. As in Gson, JSON has no representation for NaN and infinities
+     *
+     * @param value The number
+     * @throws IOException If the output cannot be written
+     */
+    private void writeNumber(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        out.append(value);
+    }
+
+
+    /**
+     * Writes a quoted and escaped string
+     *
+     * @param value The string
+     * @throws IOException If the output cannot be written
+     */
+    private void writeString(String value) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c < REPLACEMENTS.length && REPLACEMENTS[c] != null) {
+                out.append(REPLACEMENTS[c]);
+            } else if (c == '\u2028') {
+                out.append("\\u2028");
+            } else if (c == '\u2029') {
+                out.append("\\u2029");
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+}
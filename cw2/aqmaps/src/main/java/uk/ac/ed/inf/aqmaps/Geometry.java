@@ -0,0 +1,175 @@
+package uk.ac.ed.inf.aqmaps;
+
+/**
+ * This class contains the primitive geometry kernel used on the planning hot paths.
+ * All functions work on raw <code>double</code> coordinates, so that no object is
+ * allocated per check. Points and lines are only used at the API boundaries.
+ */
+public final class Geometry {
+    /** The angle between two consecutive directions of the drone, in degrees */
+    public static final int STEP_ANGLE = 10;
+    /** The number of directions the drone can fly, direction i is at i * STEP_ANGLE degrees */
+    public static final int DIRECTIONS = 360 / STEP_ANGLE;
+    /** Mask with the bits of all directions set */
+    public static final long ALL_DIRECTIONS = (1L << DIRECTIONS) - 1;
+
+    /** Precomputed cosine and sine of every multiple of STEP_ANGLE in [0, 360] */
+    private static final double[] COS = new double[360 / STEP_ANGLE + 1];
+    private static final double[] SIN = new double[360 / STEP_ANGLE + 1];
+
+    static {
+        for (int i = 0; i < COS.length; i++) {
+            COS[i] = Math.cos(Math.toRadians(i * STEP_ANGLE));
+            SIN[i] = Math.sin(Math.toRadians(i * STEP_ANGLE));
+        }
+    }
+
+    /**
+     * Private constructor, this class only has static methods
+     */
+    private Geometry() {
+    }
+
+
+    /**
+     * Calculates the X coordinate after moving along a multiple of STEP_ANGLE
+     *
+     * @param x The starting X coordinate
+     * @param degrees The angle in degrees, a multiple of STEP_ANGLE in [0, 360]
+     * @param length The length of the move
+     * @return double The resulting X coordinate
+     */
+    public static double stepX(double x, int degrees, double length) {
+        return x + length * COS[degrees / STEP_ANGLE];
+    }
+
+
+    /**
+     * Calculates the Y coordinate after moving along a multiple of STEP_ANGLE
+     *
+     * @param y The starting Y coordinate
+     * @param degrees The angle in degrees, a multiple of STEP_ANGLE in [0, 360]
+     * @param length The length of the move
+     * @return double The resulting Y coordinate
+     */
+    public static double stepY(double y, int degrees, double length) {
+        return y + length * SIN[degrees / STEP_ANGLE];
+    }
+
+
+    /**
+     * Finds which of the candidate moves from (x, y) are blocked by a segment.
+     * A move in direction i is represented by bit i of the masks.
+     *
+     * @param x X of the start of the moves
+     * @param y Y of the start of the moves
+     * @param length The length of the moves
+     * @param candidates The mask of directions to test
+     * @param x1 X of the first end-point of the segment
+     * @param y1 Y of the first end-point of the segment
+     * @param x2 X of the second end-point of the segment
+     * @param y2 Y of the second end-point of the segment
+     * @return long The mask of the candidate directions that intersect the segment
+     */
+    public static long blockedDirections(double x, double y, double length, long candidates,
+                                         double x1, double y1, double x2, double y2) {
+        var blocked = 0L;
+        for (var remaining = candidates; remaining != 0; remaining &= remaining - 1) {
+            var direction = Long.numberOfTrailingZeros(remaining);
+            var endX = x + length * COS[direction];
+            var endY = y + length * SIN[direction];
+            if (segmentsIntersect(x1, y1, x2, y2, x, y, endX, endY)) {
+                blocked |= 1L << direction;
+            }
+        }
+        return blocked;
+    }
+
+
+    /**
+     * Checks if the segment (x1, y1)-(x2, y2) intersects the segment (x3, y3)-(x4, y4).
+     * Touching end-points and collinear overlaps count as intersections.
+     *
+     * @param x1 X of the first end-point of the first segment
+     * @param y1 Y of the first end-point of the first segment
+     * @param x2 X of the second end-point of the first segment
+     * @param y2 Y of the second end-point of the first segment
+     * @param x3 X of the first end-point of the second segment
+     * @param y3 Y of the first end-point of the second segment
+     * @param x4 X of the second end-point of the second segment
+     * @param y4 Y of the second end-point of the second segment
+     * @return boolean Whether the segments intersect
+     */
+    public static boolean segmentsIntersect(double x1, double y1, double x2, double y2,
+                                            double x3, double y3, double x4, double y4) {
+        // Each segment must have the end-points of the other on opposite sides (or on it)
+        var d1 = orientation(x3, y3, x4, y4, x1, y1);
+        var d2 = orientation(x3, y3, x4, y4, x2, y2);
+        var d3 = orientation(x1, y1, x2, y2, x3, y3);
+        var d4 = orientation(x1, y1, x2, y2, x4, y4);
+        if (d1 * d2 < 0 && d3 * d4 < 0) {
+            return true;
+        }
+
+        // Collinear cases: an end-point lying on the other segment
+        return (d1 == 0 && onSegment(x3, y3, x4, y4, x1, y1))
+                || (d2 == 0 && onSegment(x3, y3, x4, y4, x2, y2))
+                || (d3 == 0 && onSegment(x1, y1, x2, y2, x3, y3))
+                || (d4 == 0 && onSegment(x1, y1, x2, y2, x4, y4));
+    }
+
+
+    /**
+     * Calculates the distance from a point to a segment
+     *
+     * @param px X of the point
+     * @param py Y of the point
+     * @param x1 X of the first end-point of the segment
+     * @param y1 Y of the first end-point of the segment
+     * @param x2 X of the second end-point of the segment
+     * @param y2 Y of the second end-point of the segment
+     * @return double The distance to the closest point of the segment
+     */
+    public static double pointSegmentDistance(double px, double py, double x1, double y1, double x2, double y2) {
+        var dx = x2 - x1;
+        var dy = y2 - y1;
+        var lengthSquared = dx * dx + dy * dy;
+        // Project the point on the segment, clamped to its end-points
+        var t = lengthSquared == 0 ? 0 : ((px - x1) * dx + (py - y1) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(px - (x1 + t * dx), py - (y1 + t * dy));
+    }
+
+
+    /**
+     * Gets the side of the line (x1, y1)-(x2, y2) the point (px, py) is on
+     *
+     * @param x1 X of the first point of the line
+     * @param y1 Y of the first point of the line
+     * @param x2 X of the second point of the line
+     * @param y2 Y of the second point of the line
+     * @param px X of the point
+     * @param py Y of the point
+     * @return int 1 if counter-clockwise, -1 if clockwise, 0 if collinear
+     */
+    private static int orientation(double x1, double y1, double x2, double y2, double px, double py) {
+        return (int) Math.signum((x2 - x1) * (py - y1) - (y2 - y1) * (px - x1));
+    }
+
+
+    /**
+     * Checks if a point collinear with a segment lies within its bounding box, i.e. on the segment
+     *
+     * @param x1 X of the first end-point
+     * @param y1 Y of the first end-point
+     * @param x2 X of the second end-point
+     * @param y2 Y of the second end-point
+     * @param px X of the point
+     * @param py Y of the point
+     * @return boolean Whether the point is on the segment
+     */
+    private static boolean onSegment(double x1, double y1, double x2, double y2, double px, double py) {
+        return px >= Math.min(x1, x2) && px <= Math.max(x1, x2)
+                && py >= Math.min(y1, y2) && py <= Math.max(y1, y2);
+    }
+}
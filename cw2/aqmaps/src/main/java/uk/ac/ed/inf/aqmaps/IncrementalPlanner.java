@@ -0,0 +1,304 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * This class re-plans a flight in progress when the map or the sensors change,
+ * instead of planning it again from scratch.
+ *
+ * The moves already flown are kept as they are. The sensors left keep their previous
+ * visiting order, and new ones are inserted where they are cheapest, before a local
+ * search over the rest of the tour. Then, the legs of the previous plan are replayed
+ * for as long as they still visit the sensors in the new order and stay legal, and
+ * only the rest of the flight is planned again.
+ * Distances are looked up in the {@link DistanceTable} of the map.
+ * The map is updated with {@link NoFlyZonesManager#withChanges}, which reuses the
+ * visibility computed for the previous map.
+ *
+ * Changes accumulate: every re-planning starts from the map and sensors left by the
+ * previous one. A change is only kept once its plan is built, so a rejected change is
+ * not applied. This class is not thread-safe.
+ */
+public class IncrementalPlanner {
+    /** Instance attributes */
+    private final Point2D startingPoint;
+    private final Drone.StepPlanner stepPlanner;
+    private final int moveBudget;
+    private NoFlyZonesManager noFlyZonesManager;
+    // The sensors to visit, by What3Words location
+    private final Map<String, Sensor> sensors = new LinkedHashMap<>();
+
+    /**
+     * Class constructor, for flights planned by greedy drones with the default move budget
+     *
+     * @param startingPoint The starting point of the flights
+     * @param noFlyZonesManager The NoFlyZonesManager before any change
+     * @param sensors The sensors to visit before any change
+     */
+    public IncrementalPlanner(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors) {
+        this(startingPoint, noFlyZonesManager, sensors, Drone.StepPlanner.GREEDY, Drone.ALLOWED_NUMBER_OF_MOVES);
+    }
+
+
+    /**
+     * Class constructor.
+     * The rest of a flight is planned as the flight itself was, so the step planner and
+     * move budget must be those of the original plan.
+     *
+     * @param startingPoint The starting point of the flights
+     * @param noFlyZonesManager The NoFlyZonesManager before any change
+     * @param sensors The sensors to visit before any change
+     * @param stepPlanner How the drones decide their moves
+     * @param moveBudget The maximum number of moves of a flight, including those already flown
+     */
+    public IncrementalPlanner(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                              Drone.StepPlanner stepPlanner, int moveBudget) {
+        if (moveBudget < 1) {
+            throw new IllegalArgumentException("The move budget must be positive");
+        }
+        this.stepPlanner = Objects.requireNonNull(stepPlanner);
+        this.moveBudget = moveBudget;
+        this.startingPoint = Objects.requireNonNull(startingPoint);
+        this.noFlyZonesManager = Objects.requireNonNull(noFlyZonesManager);
+        for (var sensor : Objects.requireNonNull(sensors)) {
+            this.sensors.put(sensor.getLocation(), sensor);
+        }
+    }
+
+
+    /**
+     * Re-plans a flight in progress after a change.
+     *
+     * @param previous The FlightPlan being flown
+     * @param movesFlown The number of moves of the FlightPlan already flown
+     * @param delta The change to the map and sensors
+     * @return FlightPlan The new FlightPlan, starting with the moves already flown
+     */
+    public FlightPlan replan(FlightPlan previous, int movesFlown, PlanDelta delta) {
+        Objects.requireNonNull(previous);
+        Objects.requireNonNull(delta);
+        if (!previous.getPosition(0).equals(startingPoint)) {
+            throw new IllegalArgumentException("The FlightPlan does not start at the starting point");
+        }
+        if (movesFlown < 0 || movesFlown > previous.getMovesCount()) {
+            throw new IllegalArgumentException("Invalid number of moves flown: " + movesFlown);
+        }
+
+        // Apply the change to copies of the map and the sensors, kept only once the plan is built,
+        // so a change that cannot be planned for leaves the planner as it was
+        var map = delta.changesZones()
+                ? noFlyZonesManager.withChanges(delta.getZonesAdded(), delta.getZonesRemoved())
+                : noFlyZonesManager;
+        var changedSensors = new LinkedHashMap<>(sensors);
+        changedSensors.keySet().removeAll(delta.getSensorsRemoved());
+        for (var sensor : delta.getSensorsAdded()) {
+            changedSensors.put(sensor.getLocation(), sensor);
+        }
+        var position = previous.getPosition(movesFlown);
+        if (!map.isLegalPosition(position)) {
+            throw new IllegalArgumentException("The drone is inside a NoFlyZone");
+        }
+
+        // The moves already flown cannot change
+        var flightPlan = previous.prefix(movesFlown);
+
+        // Keep the previous order of the sensors left, then add those it was missing
+        var planned = new HashSet<String>();
+        var kept = new ArrayList<Sensor>();
+        for (int move = 0; move < previous.getMovesCount(); move++) {
+            var reading = previous.getReading(move);
+            if (reading != null && planned.add(reading) && move >= movesFlown && changedSensors.containsKey(reading)) {
+                kept.add(changedSensors.get(reading));
+            }
+        }
+        var missing = new ArrayList<Sensor>();
+        for (var sensor : changedSensors.values()) {
+            if (!planned.contains(sensor.getLocation())) {
+                missing.add(sensor);
+            }
+        }
+        var order = missing.isEmpty() ? kept : repairOrder(map, position, kept, missing);
+
+        // Reuse what is still valid of the previous plan, then fly the rest
+        var visited = replay(map, previous, movesFlown, flightPlan, order);
+        // The drone flies within what is left of the budget, see {@link Drone#continueFlight}
+        var drone = new Drone(startingPoint, map, Set.copyOf(changedSensors.values()),
+                new LocalSearchTourOptimizer(0, map.getDistanceTable()), Drone.FlyAroundDirection.CLOSEST, moveBudget, stepPlanner);
+        drone.continueFlight(flightPlan, order.subList(visited, order.size()));
+
+        // The change is only kept once the flight is planned
+        noFlyZonesManager = map;
+        sensors.clear();
+        sensors.putAll(changedSensors);
+        return flightPlan;
+    }
+
+
+    /**
+     * Inserts the missing sensors in the visiting order, each where it adds the least
+     * distance, then improves the order with a local search.
+     * The order is an open path from the position of the drone to the starting point:
+     * it is closed into a tour by an edge of negative length, which no move can remove.
+     *
+     * @param map The changed map
+     * @param position The current position of the drone
+     * @param kept The sensors left, in their previous order
+     * @param missing The sensors not in the previous order
+     * @return <code>List&lt;Sensor&gt;</code> The new visiting order
+     */
+    private List<Sensor> repairOrder(NoFlyZonesManager map, Point2D position, List<Sensor> kept, List<Sensor> missing) {
+        // Node 0 is the drone, node i is candidate i-1, the last node is home
+        var candidates = new ArrayList<>(kept);
+        missing.sort(Comparator.comparing(Sensor::getLocation));
+        candidates.addAll(missing);
+        var m = candidates.size();
+        var home = m + 1;
+        var points = new Point2D[m + 2];
+        points[0] = position;
+        for (int i = 0; i < m; i++) {
+            points[i + 1] = candidates.get(i).getCoordinates();
+        }
+        points[home] = startingPoint;
+        var distances = map.getDistanceTable().matrix(points);
+
+        // Cheapest insertion of the missing sensors into the previous order
+        var path = new ArrayList<Integer>();
+        for (int node = 0; node <= kept.size(); node++) {
+            path.add(node);
+        }
+        path.add(home);
+        for (int node = kept.size() + 1; node <= m; node++) {
+            var bestIndex = 1;
+            var bestCost = Double.POSITIVE_INFINITY;
+            for (int i = 1; i < path.size(); i++) {
+                var before = path.get(i - 1);
+                var after = path.get(i);
+                var cost = distances[before][node] + distances[node][after] - distances[before][after];
+                if (cost < bestCost) {
+                    bestIndex = i;
+                    bestCost = cost;
+                }
+            }
+            path.add(bestIndex, node);
+        }
+
+        // Improve the path as a closed tour, which may end up reversed.
+        // The closing edge outweighs any path, so removing it is never an improvement
+        var total = 0.0;
+        for (var row : distances) {
+            for (var distance : row) {
+                total += distance;
+            }
+        }
+        distances[0][home] = distances[home][0] = -1 - total;
+        var tour = path.stream().mapToInt(Integer::intValue).toArray();
+        LocalSearchTourOptimizer.improve(tour, distances);
+        var order = new ArrayList<Sensor>(m);
+        for (var node : tour) {
+            if (node != 0 && node != home) {
+                order.add(candidates.get(node - 1));
+            }
+        }
+        if (tour[1] == home) {
+            Collections.reverse(order);
+        }
+        return order;
+    }
+
+
+    /**
+     * Copies the legs of the previous plan that are still valid: each leg must read
+     * the next sensor of the new order, with only legal moves. The final leg back
+     * home is copied too, if every sensor was visited.
+     *
+     * @param map The changed map
+     * @param previous The previous FlightPlan
+     * @param movesFlown The number of moves already flown
+     * @param flightPlan The new FlightPlan, extended in place
+     * @param order The new visiting order
+     * @return int The number of sensors of the order visited by the copied legs
+     */
+    private int replay(NoFlyZonesManager map, FlightPlan previous, int movesFlown, FlightPlan flightPlan, List<Sensor> order) {
+        // Every copied move must be legal on the new map
+        var movesCount = previous.getMovesCount();
+        var legalMoves = movesFlown;
+        while (legalMoves < movesCount) {
+            var from = previous.getPosition(legalMoves);
+            var to = previous.getPosition(legalMoves + 1);
+            if (!map.isLegalMove(from.getX(), from.getY(), to.getX(), to.getY())) {
+                break;
+            }
+            legalMoves++;
+        }
+
+        var visited = 0;
+        var legStart = movesFlown;
+        for (int move = movesFlown; move < legalMoves; move++) {
+            var reading = previous.getReading(move);
+            if (reading == null) {
+                continue;
+            }
+            if (visited == order.size() || !order.get(visited).getLocation().equals(reading)) {
+                break;
+            }
+            copy(previous, legStart, move + 1, flightPlan);
+            visited++;
+            legStart = move + 1;
+        }
+
+        // The leg back home
+        var endsHome = previous.getPosition(movesCount).distance(startingPoint) < Drone.STEP_LENGTH;
+        if (visited == order.size() && legalMoves == movesCount && legStart < movesCount && endsHome) {
+            copy(previous, legStart, movesCount, flightPlan);
+        }
+        return visited;
+    }
+
+
+    /**
+     * Copies moves, and their readings, from a FlightPlan to another
+     *
+     * @param from The FlightPlan to copy from
+     * @param first The index of the first move to copy
+     * @param end The index after the last move to copy
+     * @param to The FlightPlan to copy to
+     */
+    private static void copy(FlightPlan from, int first, int end, FlightPlan to) {
+        for (int move = first; move < end; move++) {
+            to.add(from.getPosition(move + 1));
+            var reading = from.getReading(move);
+            if (reading != null) {
+                to.read(reading);
+            }
+        }
+    }
+
+
+    /**
+     * Get the map after the changes applied so far
+     *
+     * @return NoFlyZonesManager The current NoFlyZonesManager
+     */
+    public NoFlyZonesManager getNoFlyZonesManager() {
+        return noFlyZonesManager;
+    }
+
+
+    /**
+     * Get the sensors after the changes applied so far
+     *
+     * @return <code>Set&lt;Sensor&gt;</code> The current sensors
+     */
+    public Set<Sensor> getSensors() {
+        return Set.copyOf(sensors.values());
+    }
+}
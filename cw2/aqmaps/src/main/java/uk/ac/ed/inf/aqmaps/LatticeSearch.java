@@ -0,0 +1,527 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class searches for short sequences of drone moves over the move lattice:
+ * from any position, the drone can move {@link Drone#STEP_LENGTH} in one of the
+ * {@link Geometry#DIRECTIONS} directions.
+ *
+ * The search is a beam search by number of moves: every layer keeps the positions
+ * with the best estimated total, the moves so far plus the distance left along the
+ * shortest path around the NoFlyZones. Positions are quantized, and a transposition
+ * table drops those already reached in as many moves or fewer. The legal directions
+ * of a position are memoized, and every returned sequence is checked move by move,
+ * so it is always legal.
+ *
+ * The search stops at the first layer reaching the target, or after a maximum number
+ * of layers. In the latter case, the moves to the most promising position are returned
+ * instead, so it can be used with a bounded lookahead. The work of a search is bounded by
+ * its beam width times its depth expanded positions, so its result only depends on its
+ * inputs. A wall-clock budget can be set on top, at the cost of that determinism.
+ * A LatticeSearch is not thread-safe, as the memo is not shared.
+ *
+ * The shortest paths to a target can also be searched for exactly, see {@link #shortestPath}.
+ */
+public class LatticeSearch {
+    /** No wall-clock budget: searches are only bounded by the number of positions they expand */
+    public static final long NO_TIME_BUDGET = Long.MAX_VALUE;
+    /** Default search parameters. There is no time budget by default, one can be set in
+     *  milliseconds with the <code>aqmaps.searchBudgetMillis</code> system property */
+    public static final int DEFAULT_BEAM_WIDTH = 128;
+    public static final int DEFAULT_MAX_DEPTH = 24;
+    private static final long DEFAULT_TIME_BUDGET_MILLIS = Long.getLong("aqmaps.searchBudgetMillis", 0);
+    public static final long DEFAULT_TIME_BUDGET_NANOS = DEFAULT_TIME_BUDGET_MILLIS > 0
+            ? TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIME_BUDGET_MILLIS) : NO_TIME_BUDGET;
+
+    /** Size of the grid positions are quantized to, in degrees */
+    private static final double QUANTUM = 1e-9;
+    /** Maximum number of memoized positions, the memo is cleared beyond it */
+    private static final int MAX_MEMO_SIZE = 1 << 18;
+    /** Maximum number of positions reached by a shortest path search, its only cutoff */
+    private static final int MAX_SHORTEST_PATH_NODES = 1 << 18;
+    /** Tolerance of the lower bounds on the moves left, for the rounding of the distances */
+    private static final double BOUND_TOLERANCE = 1e-9;
+
+    /** The best node has the lowest estimate: its estimated total, or its distance to the next
+     *  target for the goals. Ties keep the expansion order */
+    private static final Comparator<Node> BEST_NODE = Comparator.comparingDouble(node -> node.estimate);
+
+    /** Instance attributes */
+    private final NoFlyZonesManager noFlyZonesManager;
+    private final int beamWidth;
+    private final int maxDepth;
+    private final long timeBudgetNanos;
+    // The legal directions from every position expanded so far, by quantized position
+    private final Map<Long, Long> legalDirections = new HashMap<>();
+
+    /**
+     * Constructor for the search, with the default parameters
+     *
+     * @param noFlyZonesManager The NoFlyZonesManager
+     */
+    public LatticeSearch(NoFlyZonesManager noFlyZonesManager) {
+        this(noFlyZonesManager, DEFAULT_BEAM_WIDTH, DEFAULT_MAX_DEPTH, DEFAULT_TIME_BUDGET_NANOS);
+    }
+
+
+    /**
+     * Constructor for the search
+     *
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param beamWidth The number of positions kept in every layer
+     * @param maxDepth The maximum number of moves looked ahead
+     * @param timeBudgetNanos The maximum time of a search, in nanoseconds, or {@link #NO_TIME_BUDGET}
+     */
+    public LatticeSearch(NoFlyZonesManager noFlyZonesManager, int beamWidth, int maxDepth, long timeBudgetNanos) {
+        if (beamWidth < 1 || maxDepth < 1) {
+            throw new IllegalArgumentException("The beam width and depth must be positive");
+        }
+        if (timeBudgetNanos <= 0) {
+            throw new IllegalArgumentException("The time budget must be positive");
+        }
+        this.noFlyZonesManager = Objects.requireNonNull(noFlyZonesManager);
+        this.beamWidth = beamWidth;
+        this.maxDepth = maxDepth;
+        this.timeBudgetNanos = timeBudgetNanos;
+    }
+
+
+    /**
+     * Searches for the fewest moves bringing the drone within a radius of a target.
+     * The moves are looked ahead up to the maximum depth, within the time budget if there is one.
+     *
+     * @param start The starting position
+     * @param target The target
+     * @param radius The distance from the target to end within
+     * @param maxMoves The maximum number of moves
+     * @return Result The moves reaching the target, or those towards the most promising position
+     */
+    public Result search(Point2D start, Point2D target, double radius, int maxMoves) {
+        return search(start, target, radius, target, maxMoves);
+    }
+
+
+    /**
+     * Searches for the fewest moves bringing the drone within a radius of a target.
+     * Of the positions reaching the target in as few moves, the one closest to the
+     * next target is kept, so the following search starts from the best side.
+     *
+     * @param start The starting position
+     * @param target The target
+     * @param radius The distance from the target to end within
+     * @param next The target after this one
+     * @param maxMoves The maximum number of moves
+     * @return Result The moves reaching the target, or those towards the most promising position
+     */
+    public Result search(Point2D start, Point2D target, double radius, Point2D next, int maxMoves) {
+        var goals = new ArrayList<Result>(1);
+        var best = search(start, target, radius, next, maxMoves, 1, goals);
+        return goals.isEmpty() ? best : goals.get(0);
+    }
+
+
+    /**
+     * Searches for all the ways of bringing the drone within a radius of a target in the
+     * fewest moves, ending at different positions. They are ordered by distance to the next
+     * target, so the best ones to continue from come first.
+     *
+     * @param start The starting position
+     * @param target The target
+     * @param radius The distance from the target to end within
+     * @param next The target after this one
+     * @param maxMoves The maximum number of moves
+     * @param limit The maximum number of results
+     * @return <code>List&lt;Result&gt;</code> The complete results, empty if the target is not reached
+     */
+    public List<Result> searchAll(Point2D start, Point2D target, double radius, Point2D next, int maxMoves, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("The limit must be positive");
+        }
+        var goals = new ArrayList<Result>(limit);
+        search(start, target, radius, next, maxMoves, limit, goals);
+        return goals;
+    }
+
+
+    /**
+     * Runs the search. At the first layer reaching the target, the legal paths to the
+     * goal positions closest to the next target are added to the goals.
+     *
+     * @param start The starting position
+     * @param target The target
+     * @param radius The distance from the target to end within
+     * @param next The target after this one
+     * @param maxMoves The maximum number of moves
+     * @param limit The maximum number of goals
+     * @param goals The list to add the complete results to
+     * @return Result The moves towards the most promising position, if no goal is found
+     */
+    private Result search(Point2D start, Point2D target, double radius, Point2D next, int maxMoves, int limit,
+                          List<Result> goals) {
+        var deadline = deadline();
+        var heuristic = new Heuristic(start, target, radius);
+        var root = new Node(null, start.getX(), start.getY(), 0);
+        var reached = new HashMap<Long, Integer>();
+        reached.put(key(root.x, root.y), 0);
+
+        List<Node> layer = List.of(root);
+        var best = root;
+        var depthLimit = Math.min(maxDepth, maxMoves);
+        for (int depth = 1; depth <= depthLimit; depth++) {
+            var children = new ArrayList<Node>();
+            var layerGoals = new ArrayList<Node>();
+            for (var node : layer) {
+                for (var legal = legalDirections(node.x, node.y); legal != 0; legal &= legal - 1) {
+                    var angle = Long.numberOfTrailingZeros(legal) * Geometry.STEP_ANGLE;
+                    var x = Geometry.stepX(node.x, angle, Drone.STEP_LENGTH);
+                    var y = Geometry.stepY(node.y, angle, Drone.STEP_LENGTH);
+                    if (Point2D.distance(x, y, target.getX(), target.getY()) < radius) {
+                        // Of the positions reaching the target, the closest to the next one come first
+                        var goal = new Node(node, x, y, depth);
+                        goal.estimate = Point2D.distance(x, y, next.getX(), next.getY());
+                        layerGoals.add(goal);
+                        continue;
+                    }
+                    // Transposition: skip the positions already reached in as many moves or fewer
+                    if (reached.putIfAbsent(key(x, y), depth) != null) {
+                        continue;
+                    }
+                    var child = new Node(node, x, y, depth);
+                    child.estimate = depth + heuristic.movesLeft(x, y);
+                    children.add(child);
+                }
+            }
+            layerGoals.sort(BEST_NODE);
+            var positions = new HashSet<Long>();
+            for (var goal : layerGoals) {
+                if (goals.size() == limit) {
+                    break;
+                }
+                var path = toPath(goal);
+                if (positions.add(key(goal.x, goal.y)) && isLegal(start, path)) {
+                    goals.add(new Result(path, true));
+                }
+            }
+            if (!goals.isEmpty()) {
+                return null;
+            }
+            if (children.isEmpty()) {
+                break;
+            }
+            children.sort(BEST_NODE);
+            layer = children.size() > beamWidth ? children.subList(0, beamWidth) : children;
+            best = layer.get(0);
+            if (System.nanoTime() > deadline) {
+                break;
+            }
+        }
+
+        var path = toPath(best);
+        return new Result(isLegal(start, path) ? path : List.of(), false);
+    }
+
+
+    /**
+     * Get the deadline of a search starting now
+     *
+     * @return long The value of {@link System#nanoTime} the search stops at, the largest one if there is no budget
+     */
+    private long deadline() {
+        return timeBudgetNanos == NO_TIME_BUDGET ? Long.MAX_VALUE : System.nanoTime() + timeBudgetNanos;
+    }
+
+
+    /**
+     * Searches for the fewest moves bringing the drone within a radius of a target.
+     * The beam search gives a first path, then an A* search over the move lattice looks for
+     * a shorter one. Its estimate of the moves left is the straight-line distance to the
+     * target less the radius, in moves, rounded up: no move gets closer than the step
+     * length, so it never overestimates, and the first path found is the shortest.
+     * A position is dropped when its estimated total cannot beat the best path so far,
+     * or when it was already reached in as many moves or fewer.
+     *
+     * Every path found is checked move by move, as positions closer than the quantum share
+     * their memoized directions. A path failing its check is skipped, and the search goes on.
+     * So the result is the shortest path of the lattice, unless the search reaches
+     * <code>MAX_SHORTEST_PATH_NODES</code> positions: this is its only cutoff, then the best path
+     * found so far is returned. The time budget only applies to the beam search.
+     * It works from any position, e.g. to recall the drone mid-flight.
+     *
+     * @param start The starting position
+     * @param target The target
+     * @param radius The distance from the target to end within
+     * @param maxMoves The maximum number of moves
+     * @return Result The fewest moves reaching the target, or those towards the most promising position
+     */
+    public Result shortestPath(Point2D start, Point2D target, double radius, int maxMoves) {
+        if (start.distance(target) < radius) {
+            return new Result(List.of(), true);
+        }
+        // Only paths shorter than the one of the beam search are searched for
+        var bound = search(start, target, radius, maxMoves);
+        var best = bound.isComplete() ? bound.getPositions() : null;
+        var limit = best == null ? maxMoves + 1 : best.size();
+
+        // The lowest estimated total first, and the most moves among equal ones, as it is closer to the target
+        var open = new PriorityQueue<Node>(Comparator.comparingDouble((Node node) -> node.estimate)
+                .thenComparing(node -> -node.depth));
+        var reached = new HashMap<Long, Integer>();
+        var root = new Node(null, start.getX(), start.getY(), 0);
+        root.estimate = movesTo(target, radius, root.x, root.y);
+        open.add(root);
+        reached.put(key(root.x, root.y), 0);
+        while (!open.isEmpty() && reached.size() < MAX_SHORTEST_PATH_NODES) {
+            var node = open.poll();
+            if (node.estimate >= limit) {
+                // No shorter path is left
+                break;
+            }
+            if (reached.get(key(node.x, node.y)) < node.depth) {
+                // Reached in fewer moves since it was queued
+                continue;
+            }
+            var depth = node.depth + 1;
+            for (var legal = legalDirections(node.x, node.y); legal != 0; legal &= legal - 1) {
+                var direction = Long.numberOfTrailingZeros(legal);
+                var x = Geometry.stepX(node.x, direction * Geometry.STEP_ANGLE, Drone.STEP_LENGTH);
+                var y = Geometry.stepY(node.y, direction * Geometry.STEP_ANGLE, Drone.STEP_LENGTH);
+                var estimate = depth + movesTo(target, radius, x, y);
+                var key = key(x, y);
+                var previous = reached.get(key);
+                if (estimate >= limit || (previous != null && previous <= depth)) {
+                    continue;
+                }
+                reached.put(key, depth);
+                var child = new Node(node, x, y, depth);
+                child.estimate = estimate;
+                if (target.distance(x, y) >= radius) {
+                    open.add(child);
+                    continue;
+                }
+                var path = toPath(child);
+                if (isLegal(start, path)) {
+                    best = path;
+                    limit = depth;
+                }
+            }
+        }
+        return best == null ? bound : new Result(best, true);
+    }
+
+
+    /**
+     * Lower bound on the moves left from a position to a target: the straight-line distance
+     * in moves, less the radius, rounded up. It drops by one move at most with every move.
+     *
+     * @param target The target
+     * @param radius The distance from the target to end within
+     * @param x X of the position
+     * @param y Y of the position
+     * @return int The minimum number of moves
+     */
+    private static int movesTo(Point2D target, double radius, double x, double y) {
+        var moves = (target.distance(x, y) - radius) / Drone.STEP_LENGTH;
+        return Math.max(0, (int) Math.ceil(moves - BOUND_TOLERANCE));
+    }
+
+
+    /**
+     * Get the legal directions from a position, memoized
+     *
+     * @param x X of the position
+     * @param y Y of the position
+     * @return long The mask of legal directions, see {@link NoFlyZonesManager#legalDirections}
+     */
+    private long legalDirections(double x, double y) {
+        var key = key(x, y);
+        var legal = legalDirections.get(key);
+        if (legal == null) {
+            if (legalDirections.size() >= MAX_MEMO_SIZE) {
+                legalDirections.clear();
+            }
+            legal = noFlyZonesManager.legalDirections(x, y, Drone.STEP_LENGTH);
+            legalDirections.put(key, legal);
+        }
+        return legal;
+    }
+
+
+    /**
+     * Checks every move of a path, as positions close enough share their memoized directions
+     *
+     * @param start The starting position
+     * @param path The positions after every move
+     * @return boolean Whether every move is legal
+     */
+    private boolean isLegal(Point2D start, List<Point2D> path) {
+        var previous = start;
+        for (var position : path) {
+            if (!noFlyZonesManager.isLegalMove(previous.getX(), previous.getY(), position.getX(), position.getY())) {
+                return false;
+            }
+            previous = position;
+        }
+        return true;
+    }
+
+
+    /**
+     * Walks back the parents of a node to generate its path
+     *
+     * @param node The last node
+     * @return <code>List&lt;Point2D&gt;</code> The positions after every move, excluding the start
+     */
+    private static List<Point2D> toPath(Node node) {
+        var path = new ArrayList<Point2D>(node.depth);
+        for (var current = node; current.parent != null; current = current.parent) {
+            path.add(new Point2D.Double(current.x, current.y));
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+
+    /**
+     * Generates the key of a quantized position
+     *
+     * @param x X of the position
+     * @param y Y of the position
+     * @return long The key, with the quantized X in the high bits
+     */
+    static long key(double x, double y) {
+        return Math.round(x / QUANTUM) << 32 ^ (Math.round(y / QUANTUM) & 0xffffffffL);
+    }
+
+
+    /**
+     * This class is the result of a search
+     */
+    public static final class Result {
+        /** Instance attributes */
+        private final List<Point2D> positions;
+        private final boolean complete;
+
+        /**
+         * Class constructor
+         *
+         * @param positions The positions after every move
+         * @param complete Whether the last position is within the radius of the target
+         */
+        private Result(List<Point2D> positions, boolean complete) {
+            this.positions = Collections.unmodifiableList(positions);
+            this.complete = complete;
+        }
+
+        /**
+         * Get the positions of the drone after every move
+         *
+         * @return <code>List&lt;Point2D&gt;</code> The positions, excluding the start. Empty if no move is legal
+         */
+        public List<Point2D> getPositions() {
+            return positions;
+        }
+
+        /**
+         * Checks if the moves reach the target
+         *
+         * @return boolean Whether the last position is within the radius of the target
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+
+    /**
+     * This class is a position reached by the search
+     */
+    private static final class Node {
+        /** Instance attributes */
+        private final Node parent;
+        private final double x;
+        private final double y;
+        private final int depth;
+        private double estimate;
+
+        /**
+         * Class constructor
+         *
+         * @param parent The position before the move, null for the start
+         * @param x X of the position
+         * @param y Y of the position
+         * @param depth The number of moves from the start
+         */
+        private Node(Node parent, double x, double y, int depth) {
+            this.parent = parent;
+            this.x = x;
+            this.y = y;
+            this.depth = depth;
+        }
+    }
+
+
+    /**
+     * This class estimates the moves left from a position to the target, along the
+     * shortest path around the NoFlyZones from the start: the estimate goes through
+     * the waypoint closest to the target that can be seen from the position.
+     */
+    private final class Heuristic {
+        /** Instance attributes */
+        private final double[] xs;
+        private final double[] ys;
+        // The length of the path left after every waypoint, minus the radius
+        private final double[] lengthLeft;
+
+        /**
+         * Class constructor
+         *
+         * @param start The starting position
+         * @param target The target
+         * @param radius The distance from the target to end within
+         */
+        private Heuristic(Point2D start, Point2D target, double radius) {
+            var waypoints = noFlyZonesManager.getVisibilityGraph().shortestPath(start, target)
+                    .orElse(List.of(target));
+            var n = waypoints.size();
+            xs = new double[n];
+            ys = new double[n];
+            lengthLeft = new double[n];
+            lengthLeft[n - 1] = -radius;
+            for (int i = n - 1; i >= 0; i--) {
+                xs[i] = waypoints.get(i).getX();
+                ys[i] = waypoints.get(i).getY();
+                if (i < n - 1) {
+                    lengthLeft[i] = lengthLeft[i + 1] + Point2D.distance(xs[i], ys[i], xs[i + 1], ys[i + 1]);
+                }
+            }
+        }
+
+        /**
+         * Estimates the moves left from a position
+         *
+         * @param x X of the position
+         * @param y Y of the position
+         * @return double The estimated number of moves, at least 0
+         */
+        private double movesLeft(double x, double y) {
+            // By the triangle inequality, the visible waypoint closest to the target is the best one
+            var i = xs.length - 1;
+            while (i > 0 && !noFlyZonesManager.isLegalMove(x, y, xs[i], ys[i])) {
+                i--;
+            }
+            var length = Point2D.distance(x, y, xs[i], ys[i]) + lengthLeft[i];
+            return Math.max(0, length / Drone.STEP_LENGTH);
+        }
+    }
+}
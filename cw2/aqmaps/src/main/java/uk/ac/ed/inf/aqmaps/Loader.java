@@ -1,10 +1,23 @@
 package uk.ac.ed.inf.aqmaps;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 
 
 /**
@@ -13,6 +26,18 @@ import java.net.http.HttpResponse;
  * to make its use more generalisable. It uses static methods as
  * network resources are expensive. This way, it ensures only one 
  * HTTP Client instance is created.
+ *
+ * Resources can also be loaded asynchronously. Asynchronous requests are
+ * issued without blocking, at most {@link #MAX_CONCURRENT_REQUESTS} at a time,
+ * and concurrent requests for the same resource share a single network request.
+ *
+ * Static resources (buildings and sensor details) go through a {@link ResourceCache},
+ * so warm runs do not touch the network for them. Stale entries are revalidated
+ * with <code>If-None-Match</code> / <code>If-Modified-Since</code>.
+ *
+ * Resources can also be parsed as they are received, with a {@link BodyParser}.
+ * The parser reads the body straight from the response stream, without building a String,
+ * unless the resource goes through the cache, which stores it as text.
  */
 public class Loader {
     /** Filenames from specification */
@@ -20,12 +45,47 @@ public class Loader {
     private static final String noFlightZonesFilename = "no-fly-zones.geojson";
     private static final String sensorLocationFilename = "details.json";
 
+    /** HTTP status codes */
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_NOT_MODIFIED = 304;
+
+    /** Maximum number of asynchronous requests in flight at the same time */
+    private static final int MAX_CONCURRENT_REQUESTS = 16;
+
     /** The HttpClient used to make the network requests */
     private static final HttpClient client = HttpClient.newHttpClient();
 
+    /** Permits for the asynchronous requests, and the requests waiting for one */
+    private static final Semaphore permits = new Semaphore(MAX_CONCURRENT_REQUESTS);
+    private static final Queue<Runnable> waitingRequests = new ConcurrentLinkedQueue<>();
+    /** The asynchronous requests in flight, by path */
+    private static final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    /** The streamed requests in flight, by path. A path is always parsed by the same parser */
+    private static final ConcurrentHashMap<String, CompletableFuture<?>> inFlightParsed = new ConcurrentHashMap<>();
+
     /** The server for the request. {@link #setServer} */
     private static String server;
 
+    /** The cache for static resources, null if disabled. {@link #setCache} */
+    private static ResourceCache cache = new ResourceCache(ResourceCache.DEFAULT_DIRECTORY, ResourceCache.DEFAULT_TIME_TO_LIVE);
+
+    /**
+     * Parser for the body of a resource
+     *
+     * @param <T> The type of the parsed resource
+     */
+    @FunctionalInterface
+    public interface BodyParser<T> {
+        /**
+         * Parses the body of a resource, as it is read
+         *
+         * @param body The body of the resource
+         * @return T The parsed resource
+         * @throws IOException If the body cannot be read or parsed
+         */
+        T parse(Reader body) throws IOException;
+    }
+
 
     /**
      * Sets the server to be used for the API calls.
@@ -39,20 +99,269 @@ public class Loader {
     }
 
 
+    /**
+     * Sets the cache used for static resources.
+     *
+     * @param cache The cache to use, or null to always load from the network
+     */
+    public static void setCache(ResourceCache cache) {
+        Loader.cache = cache;
+    }
+
+
     /**
      * Method to make a network request.
      *
      * @param path Path component of the URI for the resource to access
+     * @param cacheable Whether the resource is static, and can be cached
      * @return String The server response for the resource
      * @throws IOException If an IO error occurs when loading the data
      * @throws InterruptedException If the network operation is interrupted
      */
-    private static String getServerData(String path) throws IOException, InterruptedException {
-        var request = HttpRequest.newBuilder()
-                .uri(URI.create(server + path))
-                .build();
-        var response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        return(response.body());
+    private static String getServerData(String path, boolean cacheable) throws IOException, InterruptedException {
+        var cached = getCached(path, cacheable);
+        if (isFresh(cached)) {
+            return cached.get().getBody();
+        }
+        HttpResponse<String> response;
+        var timer = Metrics.time(Metrics.Phase.LOAD);
+        try {
+            response = client.send(buildRequest(path, cached), HttpResponse.BodyHandlers.ofString());
+        } finally {
+            timer.close();
+        }
+        return(readResponse(path, response, cached, cacheable));
+    }
+
+
+    /**
+     * Method to make an asynchronous network request.
+     * Concurrent requests for the same path are collapsed into a single one.
+     *
+     * @param path Path component of the URI for the resource to access
+     * @param cacheable Whether the resource is static, and can be cached
+     * @return <code>CompletableFuture&lt;String&gt;</code> The server response for the resource
+     */
+    private static CompletableFuture<String> getServerDataAsync(String path, boolean cacheable) {
+        var future = inFlight.computeIfAbsent(path, key -> {
+            var cached = getCached(path, cacheable);
+            if (isFresh(cached)) {
+                return CompletableFuture.completedFuture(cached.get().getBody());
+            }
+            return sendAsync(buildRequest(path, cached), HttpResponse.BodyHandlers.ofString())
+                    .thenApply(response -> readResponse(path, response, cached, cacheable));
+        });
+        future.whenComplete((body, exception) -> inFlight.remove(path, future));
+        return future;
+    }
+
+
+    /**
+     * Method to make an asynchronous network request, parsing the resource as it is received.
+     * Resources going through the cache are loaded as text first, as the cache stores them.
+     * Concurrent requests for the same path are collapsed into a single one.
+     *
+     * @param path Path component of the URI for the resource to access
+     * @param cacheable Whether the resource is static, and can be cached
+     * @param parser The parser for the resource
+     * @param <T> The type of the parsed resource
+     * @return <code>CompletableFuture&lt;T&gt;</code> The parsed resource
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> CompletableFuture<T> getServerDataAsync(String path, boolean cacheable, BodyParser<T> parser) {
+        if (cacheable && cache != null) {
+            return getServerDataAsync(path, true).thenApply(body -> parse(parser, new StringReader(body)));
+        }
+        var future = (CompletableFuture<T>) inFlightParsed.computeIfAbsent(path, key ->
+                sendAsync(buildRequest(path, Optional.empty()), HttpResponse.BodyHandlers.ofInputStream())
+                        // The body is read off the client threads, as the stream blocks until it arrives
+                        .thenApplyAsync(response -> readStream(response, parser)));
+        future.whenComplete((body, exception) -> inFlightParsed.remove(path, future));
+        return future;
+    }
+
+
+    /**
+     * Parses the body of a streamed response
+     *
+     * @param response The server response
+     * @param parser The parser for the resource
+     * @param <T> The type of the parsed resource
+     * @return T The parsed resource
+     * @throws CompletionException If the server did not answer with the resource, or it cannot be parsed
+     */
+    private static <T> T readStream(HttpResponse<InputStream> response, BodyParser<T> parser) {
+        try (var body = response.body()) {
+            if (response.statusCode() != HTTP_OK) {
+                throw new IOException("HTTP " + response.statusCode() + " for " + response.uri());
+            }
+            return parse(parser, new InputStreamReader(body, StandardCharsets.UTF_8));
+        } catch (IOException exception) {
+            throw new CompletionException(exception);
+        }
+    }
+
+
+    /**
+     * Parses the body of a resource
+     *
+     * @param parser The parser for the resource
+     * @param body The body of the resource
+     * @param <T> The type of the parsed resource
+     * @return T The parsed resource
+     * @throws CompletionException If the resource cannot be parsed
+     */
+    private static <T> T parse(BodyParser<T> parser, Reader body) {
+        var timer = Metrics.time(Metrics.Phase.PARSE);
+        try {
+            return parser.parse(body);
+        } catch (IOException exception) {
+            throw new CompletionException(exception);
+        } finally {
+            timer.close();
+        }
+    }
+
+
+    /**
+     * Queues an asynchronous network request, to be sent when a permit is available.
+     * The permit is freed once the body handler completes: for a streamed body,
+     * as soon as the headers are received.
+     *
+     * @param request The request to send
+     * @param bodyHandler The handler for the body of the response
+     * @param <T> The type of the body
+     * @return <code>CompletableFuture&lt;HttpResponse&lt;T&gt;&gt;</code> The server response
+     */
+    private static <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
+                                                                    HttpResponse.BodyHandler<T> bodyHandler) {
+        var future = new CompletableFuture<HttpResponse<T>>();
+        waitingRequests.add(() -> {
+            // The request is only timed once it is actually sent
+            var timer = Metrics.time(Metrics.Phase.LOAD);
+            client.sendAsync(request, bodyHandler)
+                    .whenComplete((response, exception) -> {
+                        // Free the permit for the next request, then complete
+                        timer.close();
+                        permits.release();
+                        sendWaitingRequests();
+                        if (exception != null) {
+                            future.completeExceptionally(exception);
+                        } else {
+                            future.complete(response);
+                        }
+                    });
+        });
+        sendWaitingRequests();
+        return future;
+    }
+
+
+    /**
+     * Looks up a resource in the cache
+     *
+     * @param path Path component of the URI for the resource to access
+     * @param cacheable Whether the resource is static, and can be cached
+     * @return <code>Optional&lt;CachedResource&gt;</code> The cached resource, possibly stale
+     */
+    private static Optional<ResourceCache.CachedResource> getCached(String path, boolean cacheable) {
+        if (!cacheable || cache == null) {
+            return Optional.empty();
+        }
+        return cache.get(server + path);
+    }
+
+
+    /**
+     * Checks if a cached resource can be used without asking the server
+     *
+     * @param cached The cached resource, possibly stale
+     * @return boolean Whether the resource is present and fresh
+     */
+    private static boolean isFresh(Optional<ResourceCache.CachedResource> cached) {
+        return cached.isPresent() && cache != null && cache.isFresh(cached.get());
+    }
+
+
+    /**
+     * Builds the request for a resource, adding the validators of the stale cached copy if any.
+     *
+     * @param path Path component of the URI for the resource to access
+     * @param cached The cached resource, possibly stale
+     * @return HttpRequest The request
+     */
+    private static HttpRequest buildRequest(String path, Optional<ResourceCache.CachedResource> cached) {
+        var builder = HttpRequest.newBuilder()
+                .uri(URI.create(server + path));
+        cached.flatMap(ResourceCache.CachedResource::getEtag)
+                .ifPresent(etag -> builder.header("If-None-Match", etag));
+        cached.flatMap(ResourceCache.CachedResource::getLastModified)
+                .ifPresent(lastModified -> builder.header("If-Modified-Since", lastModified));
+        return builder.build();
+    }
+
+
+    /**
+     * Reads the body of a response, updating the cache.
+     * If the server answered that the resource did not change, the cached copy is used.
+     *
+     * @param path Path component of the URI for the resource to access
+     * @param response The server response
+     * @param cached The cached resource, possibly stale
+     * @param cacheable Whether the resource is static, and can be cached
+     * @return String The content of the resource
+     */
+    private static String readResponse(String path, HttpResponse<String> response,
+                                       Optional<ResourceCache.CachedResource> cached, boolean cacheable) {
+        var key = server + path;
+        if (response.statusCode() == HTTP_NOT_MODIFIED && cached.isPresent() && cache != null) {
+            return cache.revalidated(key, cached.get()).getBody();
+        }
+        if (response.statusCode() == HTTP_OK && cacheable && cache != null) {
+            cache.put(key, response.body(),
+                    response.headers().firstValue("ETag").orElse(null),
+                    response.headers().firstValue("Last-Modified").orElse(null));
+        }
+        return response.body();
+    }
+
+
+    /**
+     * Sends the waiting requests, as long as permits are available.
+     */
+    private static void sendWaitingRequests() {
+        while (!waitingRequests.isEmpty() && permits.tryAcquire()) {
+            var request = waitingRequests.poll();
+            if (request == null) {
+                // Another thread took the last request, give the permit back
+                permits.release();
+                return;
+            }
+            request.run();
+        }
+    }
+
+
+    /**
+     * Waits for the result of an asynchronous request.
+     * Unwraps the exceptions to those thrown by the blocking methods.
+     *
+     * @param future The asynchronous request
+     * @param <T> The type of the result
+     * @return T The result of the request
+     * @throws IOException If an IO error occurs when loading the data
+     * @throws InterruptedException If the network operation is interrupted
+     */
+    public static <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException exception) {
+            var cause = exception.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
     }
 
 
@@ -68,7 +377,7 @@ public class Loader {
      */
     public static String loadDayData(String day, String month, String year) throws IOException, InterruptedException {
         var path = "maps/" + year + "/" + month + "/" + day + "/" + dayDataFilename;
-        return(getServerData(path));
+        return(getServerData(path, false));
     }
 
 
@@ -81,7 +390,7 @@ public class Loader {
      */
     public static String loadNoFlyZones() throws IOException, InterruptedException {
         var path = "buildings/" + noFlightZonesFilename;
-        return(getServerData(path));
+        return(getServerData(path, true));
     }
 
 
@@ -95,6 +404,79 @@ public class Loader {
      */
     public static String loadSensorDetails(String location) throws IOException, InterruptedException {
         var path = "words/" + location.replaceAll("\\.","/") + "/" + sensorLocationFilename;
-        return(getServerData(path));
+        return(getServerData(path, true));
+    }
+
+
+    /**
+     * Method to load daily sensor data asynchronously
+     *
+     * @param day The day (2 characters)
+     * @param month The month (2 characters)
+     * @param year The year (4 characters)
+     * @return <code>CompletableFuture&lt;String&gt;</code> The Json for the sensor data
+     * @see #loadDayData
+     */
+    public static CompletableFuture<String> loadDayDataAsync(String day, String month, String year) {
+        var path = "maps/" + year + "/" + month + "/" + day + "/" + dayDataFilename;
+        return getServerDataAsync(path, false);
+    }
+
+
+    /**
+     * Method to load and parse daily sensor data asynchronously.
+     * The day data is never cached, so it is parsed straight from the response stream.
+     *
+     * @param day The day (2 characters)
+     * @param month The month (2 characters)
+     * @param year The year (4 characters)
+     * @param parser The parser for the sensor data
+     * @param <T> The type of the parsed sensor data
+     * @return <code>CompletableFuture&lt;T&gt;</code> The parsed sensor data
+     * @see #loadDayDataAsync(String, String, String)
+     */
+    public static <T> CompletableFuture<T> loadDayDataAsync(String day, String month, String year, BodyParser<T> parser) {
+        var path = "maps/" + year + "/" + month + "/" + day + "/" + dayDataFilename;
+        return getServerDataAsync(path, false, parser);
+    }
+
+
+    /**
+     * Method to load buildings data asynchronously
+     *
+     * @return <code>CompletableFuture&lt;String&gt;</code> The Json for the buildings data
+     * @see #loadNoFlyZones
+     */
+    public static CompletableFuture<String> loadNoFlyZonesAsync() {
+        var path = "buildings/" + noFlightZonesFilename;
+        return getServerDataAsync(path, true);
+    }
+
+
+    /**
+     * Method to load a Sensor details asynchronously
+     *
+     * @param location What3Words location of the sensor
+     * @return <code>CompletableFuture&lt;String&gt;</code> The Json for the sensor data
+     * @see #loadSensorDetails
+     */
+    public static CompletableFuture<String> loadSensorDetailsAsync(String location) {
+        var path = "words/" + location.replaceAll("\\.","/") + "/" + sensorLocationFilename;
+        return getServerDataAsync(path, true);
+    }
+
+
+    /**
+     * Method to load and parse a Sensor details asynchronously
+     *
+     * @param location What3Words location of the sensor
+     * @param parser The parser for the details
+     * @param <T> The type of the parsed details
+     * @return <code>CompletableFuture&lt;T&gt;</code> The parsed details
+     * @see #loadSensorDetailsAsync(String)
+     */
+    public static <T> CompletableFuture<T> loadSensorDetailsAsync(String location, BodyParser<T> parser) {
+        var path = "words/" + location.replaceAll("\\.","/") + "/" + sensorLocationFilename;
+        return getServerDataAsync(path, true, parser);
     }
 }
@@ -0,0 +1,305 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * This class is a {@link TourOptimizer} based on construction plus local search.
+ * A first tour is built with the nearest-neighbour heuristic, then it is improved
+ * with 2-opt and or-opt moves until no improving move is left.
+ *
+ * Node 0 is always the starting point, and the tour is closed back to it.
+ * Distances are straight lines, or obstacle-aware ones looked up in a {@link DistanceTable}.
+ */
+public class LocalSearchTourOptimizer implements TourOptimizer {
+    /** Minimum gain for a move to be considered an improvement, avoids looping on rounding errors */
+    private static final double EPSILON = 1e-12;
+    /** Longest segment relocated by or-opt */
+    private static final int MAX_OR_OPT_SEGMENT = 3;
+
+    /** Rank (by distance from the start) of the first sensor of the constructed tour */
+    private final int firstSensorRank;
+    /** The obstacle-aware distances, null for straight-line distances */
+    private final DistanceTable distanceTable;
+
+    /**
+     * Default constructor.
+     * The constructed tour starts with the closest sensor.
+     */
+    public LocalSearchTourOptimizer() {
+        this(0);
+    }
+
+
+    /**
+     * Constructor with a different first sensor for the constructed tour.
+     * Different first sensors lead the local search to different local optima.
+     *
+     * @param firstSensorRank The rank by distance of the first sensor (0 is the closest)
+     */
+    public LocalSearchTourOptimizer(int firstSensorRank) {
+        this(firstSensorRank, null);
+    }
+
+
+    /**
+     * Constructor with a different first sensor, ordering by obstacle-aware distances.
+     *
+     * @param firstSensorRank The rank by distance of the first sensor (0 is the closest)
+     * @param distanceTable The table to look the distances up in, null for straight-line distances
+     */
+    public LocalSearchTourOptimizer(int firstSensorRank, DistanceTable distanceTable) {
+        if (firstSensorRank < 0) {
+            throw new IllegalArgumentException("The first sensor rank must not be negative");
+        }
+        this.firstSensorRank = firstSensorRank;
+        this.distanceTable = distanceTable;
+    }
+
+    /**
+     * Generate a visiting order over all the sensors.
+     *
+     * @param startingPoint The starting (and ending) point of the tour
+     * @param sensors The sensors to be visited
+     * @return <code>List&lt;Sensor&gt;</code> The sensors, in visiting order
+     */
+    @Override
+    public List<Sensor> optimise(Point2D startingPoint, Collection<Sensor> sensors) {
+        Objects.requireNonNull(startingPoint);
+        var sensorList = new ArrayList<>(Objects.requireNonNull(sensors));
+        var n = sensorList.size() + 1;
+
+        // Node 0 is the starting point, node i is sensor i-1
+        var points = new Point2D[n];
+        points[0] = startingPoint;
+        for (int i = 1; i < n; i++) {
+            points[i] = sensorList.get(i - 1).getCoordinates();
+        }
+        var distances = distanceMatrix(points);
+
+        // Construct, then improve until a local optimum for both neighbourhoods
+        var tour = nearestNeighbourTour(distances, Math.min(firstSensorRank, n - 2));
+        improve(tour, distances);
+
+        // Map the tour back to sensors, skipping the starting point
+        var result = new ArrayList<Sensor>(n - 1);
+        for (int i = 1; i < n; i++) {
+            result.add(sensorList.get(tour[i] - 1));
+        }
+        return result;
+    }
+
+
+    /**
+     * Calculates the distance between every pair of points.
+     * With a distance table, the pairs are looked up in it instead.
+     *
+     * @param points The points of the tour
+     * @return double[][] The symmetric distance matrix
+     */
+    protected double[][] distanceMatrix(Point2D[] points) {
+        if (distanceTable != null) {
+            return distanceTable.matrix(points);
+        }
+        var n = points.length;
+        var distances = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                distances[i][j] = distances[j][i] = points[i].distance(points[j]);
+            }
+        }
+        return distances;
+    }
+
+
+    /**
+     * Improves a tour in place, until a local optimum for both 2-opt and or-opt.
+     * Node 0 is never moved from the start of the tour.
+     *
+     * @param tour The tour to improve, starting with node 0
+     * @param distances The distance matrix
+     */
+    static void improve(int[] tour, double[][] distances) {
+        boolean improved = true;
+        while (improved) {
+            improved = twoOpt(tour, distances);
+            improved |= orOpt(tour, distances);
+        }
+    }
+
+
+    /**
+     * Builds a tour starting at node 0, always moving to the closest unvisited node.
+     * The first move goes to the node of the given rank instead.
+     *
+     * @param distances The distance matrix
+     * @param firstRank The rank by distance from node 0 of the first node
+     * @return int[] The tour, as an array of node indices starting with 0
+     */
+    private static int[] nearestNeighbourTour(double[][] distances, int firstRank) {
+        var n = distances.length;
+        var tour = new int[n];
+        var visited = new boolean[n];
+        visited[0] = true;
+        for (int i = 1; i < n; i++) {
+            // The first move goes to the node of the given rank, the others to the closest one
+            var next = i == 1
+                    ? IntStream.range(1, n).boxed()
+                        .sorted(Comparator.comparingDouble(j -> distances[0][j]))
+                        .skip(firstRank).findFirst().orElseThrow()
+                    : closestUnvisited(distances, tour[i - 1], visited);
+            tour[i] = next;
+            visited[next] = true;
+        }
+        return tour;
+    }
+
+
+    /**
+     * Finds the closest unvisited node to a node.
+     *
+     * @param distances The distance matrix
+     * @param node The node to start from
+     * @param visited The visited flags
+     * @return int The closest unvisited node
+     */
+    private static int closestUnvisited(double[][] distances, int node, boolean[] visited) {
+        var closest = -1;
+        for (int j = 1; j < distances.length; j++) {
+            if (!visited[j] && (closest == -1 || distances[node][j] < distances[node][closest])) {
+                closest = j;
+            }
+        }
+        return closest;
+    }
+
+
+    /**
+     * Applies improving 2-opt moves (reversal of a sub-tour) to the tour, in place.
+     *
+     * @param tour The tour to improve
+     * @param distances The distance matrix
+     * @return boolean Whether the tour was improved
+     */
+    private static boolean twoOpt(int[] tour, double[][] distances) {
+        var n = tour.length;
+        var improvedAny = false;
+        var improved = true;
+        while (improved) {
+            improved = false;
+            // Edges (i, i+1) and (j, j+1), the tour wraps around to node 0
+            for (int i = 0; i < n - 1; i++) {
+                for (int j = i + 2; j < n; j++) {
+                    var a = tour[i];
+                    var b = tour[i + 1];
+                    var c = tour[j];
+                    var d = tour[(j + 1) % n];
+                    var delta = distances[a][c] + distances[b][d] - distances[a][b] - distances[c][d];
+                    if (delta < -EPSILON) {
+                        reverse(tour, i + 1, j);
+                        improved = improvedAny = true;
+                    }
+                }
+            }
+        }
+        return improvedAny;
+    }
+
+
+    /**
+     * Applies improving or-opt moves (relocation of a short segment, possibly reversed) in place.
+     *
+     * @param tour The tour to improve
+     * @param distances The distance matrix
+     * @return boolean Whether the tour was improved
+     */
+    private static boolean orOpt(int[] tour, double[][] distances) {
+        var n = tour.length;
+        var improvedAny = false;
+        var improved = true;
+        while (improved) {
+            improved = false;
+            for (int length = 1; length <= MAX_OR_OPT_SEGMENT && !improved; length++) {
+                // Segment tour[i..i+length-1], never moving the starting point
+                for (int i = 1; i + length <= n && !improved; i++) {
+                    var prev = tour[i - 1];
+                    var first = tour[i];
+                    var last = tour[i + length - 1];
+                    var next = tour[(i + length) % n];
+                    var removalGain = distances[prev][first] + distances[last][next] - distances[prev][next];
+
+                    // Try to insert the segment between every other pair of consecutive nodes
+                    for (int j = 0; j < n && !improved; j++) {
+                        if (j >= i - 1 && j < i + length) {
+                            continue;
+                        }
+                        var a = tour[j];
+                        var b = tour[(j + 1) % n];
+                        var forward = distances[a][first] + distances[last][b] - distances[a][b];
+                        var backward = distances[a][last] + distances[first][b] - distances[a][b];
+                        if (Math.min(forward, backward) < removalGain - EPSILON) {
+                            moveSegment(tour, i, length, j, backward < forward);
+                            improved = improvedAny = true;
+                        }
+                    }
+                }
+            }
+        }
+        return improvedAny;
+    }
+
+
+    /**
+     * Moves the segment tour[from..from+length-1] right after position <code>after</code>.
+     *
+     * @param tour The tour to modify
+     * @param from The first index of the segment
+     * @param length The length of the segment
+     * @param after The index of the node the segment is inserted after
+     * @param reversed Whether the segment is inserted in reverse order
+     */
+    private static void moveSegment(int[] tour, int from, int length, int after, boolean reversed) {
+        var segment = new int[length];
+        System.arraycopy(tour, from, segment, 0, length);
+        if (reversed) {
+            reverse(segment, 0, length - 1);
+        }
+
+        // Rebuild the tour without the segment, and insert it in the new place
+        var rebuilt = new int[tour.length];
+        var k = 0;
+        for (int i = 0; i < tour.length; i++) {
+            if (i >= from && i < from + length) {
+                continue;
+            }
+            rebuilt[k++] = tour[i];
+            if (i == after) {
+                for (var node : segment) {
+                    rebuilt[k++] = node;
+                }
+            }
+        }
+        System.arraycopy(rebuilt, 0, tour, 0, tour.length);
+    }
+
+
+    /**
+     * Reverses the array between two indices, inclusive.
+     *
+     * @param array The array to modify
+     * @param from The first index
+     * @param to The last index
+     */
+    private static void reverse(int[] array, int from, int to) {
+        while (from < to) {
+            var tmp = array[from];
+            array[from++] = array[to];
+            array[to--] = tmp;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class collects the timing of the phases of a run, and counters on the hot paths.
+ *
+ * Metrics are only collected when the <code>aqmaps.metrics</code> system property is set
+ * to the path of a summary file. The summary is written when the JVM exits, in JSON if the
+ * path ends with <code>.json</code>, in the Prometheus text format otherwise.
+ * While collecting, the phases and flights are also emitted as JFR events, and the
+ * counters as a periodic one, so they show up in any running flight recording.
+ *
+ * The switch is a constant, so when metrics are disabled the JIT compiles the
+ * instrumentation away, and timers are a shared no-op instance.
+ */
+public final class Metrics {
+    /** Path of the summary file, null when metrics are disabled */
+    private static final String SUMMARY_FILE = System.getProperty("aqmaps.metrics");
+    /** Whether metrics are collected */
+    public static final boolean ENABLED = SUMMARY_FILE != null;
+
+    /**
+     * The phases of a run
+     */
+    public enum Phase { LOAD, PARSE, INDEX, PLAN, WRITE }
+
+    /**
+     * The counters, with their description
+     */
+    public enum Counter {
+        LEGAL_MOVE_CHECKS("Moves checked against the whole map"),
+        CLEAR_MOVES("Moves found legal by the clearance field alone"),
+        ZONE_LEGAL_MOVE_CHECKS("Moves checked against a single NoFlyZone"),
+        FLY_AROUNDS("Fly-around angles computed by the drones"),
+        MOVES("Moves of the planned flights"),
+        PLAN_CACHE_HITS("Flights served from the plan cache"),
+        FLIGHTS("Flights planned");
+
+        /** Description of the counter */
+        private final String description;
+
+        /**
+         * Enum constructor
+         *
+         * @param description Description of the counter
+         */
+        Counter(String description) {
+            this.description = description;
+        }
+    }
+
+    /** Collected values, indexed by the ordinal of their phase or counter */
+    private static final LongAdder[] counters = newAdders(Counter.values().length);
+    private static final LongAdder[] phaseNanos = newAdders(Phase.values().length);
+    private static final LongAdder[] phaseCounts = newAdders(Phase.values().length);
+
+    static {
+        if (ENABLED) {
+            FlightRecorder.addPeriodicEvent(CountersEvent.class, Metrics::emitCounters);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> writeSummary(Path.of(SUMMARY_FILE))));
+        }
+    }
+
+    /**
+     * Utility class, not to be instantiated
+     */
+    private Metrics() {
+    }
+
+
+    /**
+     * Increments a counter
+     *
+     * @param counter The counter
+     */
+    public static void increment(Counter counter) {
+        if (ENABLED) {
+            counters[counter.ordinal()].increment();
+        }
+    }
+
+
+    /**
+     * Adds to a counter
+     *
+     * @param counter The counter
+     * @param amount The amount to add
+     */
+    public static void add(Counter counter, long amount) {
+        if (ENABLED) {
+            counters[counter.ordinal()].add(amount);
+        }
+    }
+
+
+    /**
+     * Get the value of a counter
+     *
+     * @param counter The counter
+     * @return long The value, 0 when metrics are disabled
+     */
+    public static long get(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+
+    /**
+     * Starts timing a phase. The timer must be closed when the phase ends, on any thread:
+     * it is closed explicitly in a finally block, <code>var timer = Metrics.time(phase);
+     * try { ... } finally { timer.close(); }</code>, as a try-with-resources block whose
+     * timer is never used in its body is flagged by <code>-Xlint:try</code>.
+     *
+     * @param phase The phase
+     * @return Timer The running timer
+     */
+    public static Timer time(Phase phase) {
+        return ENABLED ? new Timer(phase) : Timer.DISABLED;
+    }
+
+
+    /**
+     * Records a planned flight
+     *
+     * @param date The date of the flight
+     * @param flightPlan The FlightPlan
+     */
+    public static void flight(String date, FlightPlan flightPlan) {
+        if (!ENABLED) {
+            return;
+        }
+        increment(Counter.FLIGHTS);
+        add(Counter.MOVES, flightPlan.getMovesCount());
+        var event = new FlightEvent();
+        if (event.shouldCommit()) {
+            event.date = date;
+            event.moves = flightPlan.getMovesCount();
+            event.readings = flightPlan.getReadingsCount();
+            event.commit();
+        }
+    }
+
+
+    /**
+     * Writes the summary of the metrics collected so far.
+     * As for the caches, errors are only reported, they never stop the run.
+     *
+     * @param file The summary file, in JSON if it ends with <code>.json</code>, in Prometheus text otherwise
+     */
+    public static void writeSummary(Path file) {
+        var summary = file.toString().endsWith(".json") ? json() : prometheus();
+        try {
+            Files.writeString(file, summary, StandardCharsets.UTF_8);
+        } catch (IOException exception) {
+            System.err.println("Could not write the metrics to " + file + ": " + exception);
+        }
+    }
+
+
+    /**
+     * Generates the summary in the Prometheus text format
+     *
+     * @return String The summary
+     */
+    static String prometheus() {
+        var text = new StringBuilder();
+        text.append("# HELP aqmaps_phase_seconds Time spent in each phase of the run\n");
+        text.append("# TYPE aqmaps_phase_seconds summary\n");
+        for (var phase : Phase.values()) {
+            var label = "{phase=\"" + name(phase) + "\"} ";
+            text.append("aqmaps_phase_seconds_sum").append(label).append(seconds(phase)).append('\n');
+            text.append("aqmaps_phase_seconds_count").append(label).append(phaseCounts[phase.ordinal()].sum()).append('\n');
+        }
+        for (var counter : Counter.values()) {
+            var metric = "aqmaps_" + name(counter) + "_total";
+            text.append("# HELP ").append(metric).append(' ').append(counter.description).append('\n');
+            text.append("# TYPE ").append(metric).append(" counter\n");
+            text.append(metric).append(' ').append(get(counter)).append('\n');
+        }
+        return text.toString();
+    }
+
+
+    /**
+     * Generates the summary in JSON
+     *
+     * @return String The summary
+     */
+    static String json() {
+        var text = new StringBuilder("{\"phases\":{");
+        for (var phase : Phase.values()) {
+            if (phase.ordinal() > 0) {
+                text.append(',');
+            }
+            text.append('"').append(name(phase)).append("\":{\"seconds\":").append(seconds(phase))
+                    .append(",\"count\":").append(phaseCounts[phase.ordinal()].sum()).append('}');
+        }
+        text.append("},\"counters\":{");
+        for (var counter : Counter.values()) {
+            if (counter.ordinal() > 0) {
+                text.append(',');
+            }
+            text.append('"').append(name(counter)).append("\":").append(get(counter));
+        }
+        return text.append("}}\n").toString();
+    }
+
+
+    /**
+     * Emits the current value of the counters as a JFR event
+     */
+    private static void emitCounters() {
+        var event = new CountersEvent();
+        event.legalMoveChecks = get(Counter.LEGAL_MOVE_CHECKS);
+        event.clearMoves = get(Counter.CLEAR_MOVES);
+        event.zoneLegalMoveChecks = get(Counter.ZONE_LEGAL_MOVE_CHECKS);
+        event.flyArounds = get(Counter.FLY_AROUNDS);
+        event.moves = get(Counter.MOVES);
+        event.planCacheHits = get(Counter.PLAN_CACHE_HITS);
+        event.flights = get(Counter.FLIGHTS);
+        event.commit();
+    }
+
+
+    /**
+     * Get the total time spent in a phase
+     *
+     * @param phase The phase
+     * @return double The time in seconds
+     */
+    private static double seconds(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum() / 1e9;
+    }
+
+
+    /**
+     * Get the name of a phase or counter in the summaries
+     *
+     * @param value The phase or counter
+     * @return String The name, in lower case
+     */
+    private static String name(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+
+
+    /**
+     * Generates an array of adders
+     *
+     * @param n The number of adders
+     * @return LongAdder[] The adders, all at 0
+     */
+    private static LongAdder[] newAdders(int n) {
+        var adders = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+
+    /**
+     * This class times a single run of a phase, see {@link Metrics#time}
+     */
+    public static final class Timer implements AutoCloseable {
+        /** The timer returned when metrics are disabled, it records nothing */
+        private static final Timer DISABLED = new Timer(null);
+
+        /** Instance attributes */
+        private final Phase phase;
+        private final long start;
+        private final PhaseEvent event;
+
+        /**
+         * Class constructor, starts the timer
+         *
+         * @param phase The phase, null for the disabled timer
+         */
+        private Timer(Phase phase) {
+            this.phase = phase;
+            if (phase == null) {
+                start = 0;
+                event = null;
+                return;
+            }
+            event = new PhaseEvent();
+            event.phase = name(phase);
+            event.begin();
+            start = System.nanoTime();
+        }
+
+        /**
+         * Stops the timer, and records the time spent in the phase
+         */
+        @Override
+        public void close() {
+            if (phase == null) {
+                return;
+            }
+            phaseNanos[phase.ordinal()].add(System.nanoTime() - start);
+            phaseCounts[phase.ordinal()].increment();
+            event.commit();
+        }
+    }
+
+
+    /**
+     * JFR event for a single run of a phase
+     */
+    @Name("uk.ac.ed.inf.aqmaps.Phase")
+    @Label("Phase")
+    @Category("aqmaps")
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+    }
+
+
+    /**
+     * JFR event for a planned flight
+     */
+    @Name("uk.ac.ed.inf.aqmaps.Flight")
+    @Label("Flight")
+    @Category("aqmaps")
+    @StackTrace(false)
+    static class FlightEvent extends Event {
+        @Label("Date")
+        String date;
+        @Label("Moves")
+        int moves;
+        @Label("Readings")
+        int readings;
+    }
+
+
+    /**
+     * Periodic JFR event with the counters since the start of the run
+     */
+    @Name("uk.ac.ed.inf.aqmaps.Counters")
+    @Label("Counters")
+    @Category("aqmaps")
+    @Description("Counters on the hot paths since the start of the run")
+    @Period("1 s")
+    @StackTrace(false)
+    static class CountersEvent extends Event {
+        @Label("Legal Move Checks")
+        long legalMoveChecks;
+        @Label("Clear Moves")
+        long clearMoves;
+        @Label("Zone Legal Move Checks")
+        long zoneLegalMoveChecks;
+        @Label("Fly-Arounds")
+        long flyArounds;
+        @Label("Moves")
+        long moves;
+        @Label("Plan Cache Hits")
+        long planCacheHits;
+        @Label("Flights")
+        long flights;
+    }
+}
@@ -0,0 +1,180 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This class plans a flight by running several independent {@link Drone} variants
+ * concurrently, and keeping the best resulting {@link FlightPlan}.
+ * The variants differ in the first sensor of their tour and in their preferred
+ * direction to fly around the NoFlyZones. They all use the same step planner.
+ * There are no variants of the tie-breaking between equally good steps: the drone only
+ * has a choice of step when flying around a NoFlyZone, where the direction is the tie-break.
+ *
+ * Every variant has its own Drone instance, and sensors are never modified while
+ * planning, so the variants share no mutable state.
+ * If enabled, the best plan is then shortened by a {@link PathShortcutter}.
+ */
+public class MultiStartPlanner {
+    /** Default number of different first sensors to try */
+    static final int DEFAULT_FIRST_SENSORS = 4;
+
+    /** The best plan reads the most sensors, then uses the fewest moves */
+    static final Comparator<FlightPlan> BEST_PLAN = Comparator
+            .comparingInt(FlightPlan::getReadingsCount).reversed()
+            .thenComparingInt(FlightPlan::getMovesCount);
+
+    /** Instance attributes */
+    private final NoFlyZonesManager noFlyZonesManager;
+    private final Set<Sensor> sensors;
+    private final List<Drone> variants = new ArrayList<>();
+    private final ForkJoinPool pool;
+    // Whether the best plan is shortened
+    private final boolean shortcut;
+
+    /**
+     * Constructor for the planner, with the default variants on the common pool.
+     *
+     * @param startingPoint The starting point for the Drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     */
+    public MultiStartPlanner(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors) {
+        this(startingPoint, noFlyZonesManager, sensors, DEFAULT_FIRST_SENSORS, ForkJoinPool.commonPool());
+    }
+
+
+    /**
+     * Constructor for the planner.
+     * Generates one variant for every combination of first sensor and fly-around direction.
+     *
+     * @param startingPoint The starting point for the Drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     * @param firstSensors The number of different first sensors to try
+     * @param pool The ForkJoinPool to run the variants on
+     */
+    public MultiStartPlanner(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                             int firstSensors, ForkJoinPool pool) {
+        this(startingPoint, noFlyZonesManager, sensors, firstSensors, Drone.ALLOWED_NUMBER_OF_MOVES, pool);
+    }
+
+
+    /**
+     * Constructor for the planner, with a custom move budget.
+     * Generates one variant for every combination of first sensor and fly-around direction.
+     *
+     * @param startingPoint The starting point for the Drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     * @param firstSensors The number of different first sensors to try
+     * @param moveBudget The maximum number of moves of the flight
+     * @param pool The ForkJoinPool to run the variants on
+     */
+    public MultiStartPlanner(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                             int firstSensors, int moveBudget, ForkJoinPool pool) {
+        this(startingPoint, noFlyZonesManager, sensors, firstSensors, moveBudget, Drone.StepPlanner.GREEDY, pool);
+    }
+
+
+    /**
+     * Constructor for the planner, with a custom move budget and step planner.
+     * Generates one variant for every combination of first sensor and fly-around direction.
+     *
+     * @param startingPoint The starting point for the Drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     * @param firstSensors The number of different first sensors to try
+     * @param moveBudget The maximum number of moves of the flight
+     * @param stepPlanner How the drones decide their moves
+     * @param pool The ForkJoinPool to run the variants on
+     */
+    public MultiStartPlanner(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                             int firstSensors, int moveBudget, Drone.StepPlanner stepPlanner, ForkJoinPool pool) {
+        this(startingPoint, noFlyZonesManager, sensors, firstSensors, moveBudget, stepPlanner, false, pool);
+    }
+
+
+    /**
+     * Constructor for the planner, with a custom move budget and step planner, and optionally
+     * shortening the best plan.
+     * Generates one variant for every combination of first sensor and fly-around direction.
+     *
+     * @param startingPoint The starting point for the Drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     * @param firstSensors The number of different first sensors to try
+     * @param moveBudget The maximum number of moves of the flight
+     * @param stepPlanner How the drones decide their moves
+     * @param shortcut Whether the best plan is shortened by a {@link PathShortcutter}
+     * @param pool The ForkJoinPool to run the variants on
+     */
+    public MultiStartPlanner(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                             int firstSensors, int moveBudget, Drone.StepPlanner stepPlanner, boolean shortcut,
+                             ForkJoinPool pool) {
+        if (firstSensors < 1) {
+            throw new IllegalArgumentException("At least one first sensor must be tried");
+        }
+        this.noFlyZonesManager = Objects.requireNonNull(noFlyZonesManager);
+        this.sensors = Set.copyOf(Objects.requireNonNull(sensors));
+        this.pool = Objects.requireNonNull(pool);
+        this.shortcut = shortcut;
+        variants.addAll(variants(startingPoint, noFlyZonesManager, sensors, firstSensors, moveBudget, stepPlanner));
+    }
+
+
+    /**
+     * Generates the variants, one for every combination of first sensor and fly-around direction
+     *
+     * @param startingPoint The starting point for the Drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The Set of sensors to be visited
+     * @param firstSensors The number of different first sensors to try
+     * @param moveBudget The maximum number of moves of the flight
+     * @param stepPlanner How the drones decide their moves
+     * @return <code>List&lt;Drone&gt;</code> The variants, the default tour first
+     */
+    static List<Drone> variants(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                                int firstSensors, int moveBudget, Drone.StepPlanner stepPlanner) {
+        var variants = new ArrayList<Drone>();
+        for (int rank = 0; rank < firstSensors; rank++) {
+            for (var direction : Drone.FlyAroundDirection.values()) {
+                variants.add(new Drone(startingPoint, noFlyZonesManager, sensors,
+                        new LocalSearchTourOptimizer(rank, noFlyZonesManager.getDistanceTable()), direction, moveBudget,
+                        stepPlanner));
+            }
+        }
+        return variants;
+    }
+
+
+    /**
+     * Plans the flight with every variant concurrently, and returns the best plan,
+     * shortened if enabled.
+     *
+     * @return FlightPlan The FlightPlan reading the most sensors with the fewest moves
+     */
+    public FlightPlan planFlight() {
+        // Fork one task per variant, then join them all
+        var tasks = new ArrayList<ForkJoinTask<FlightPlan>>();
+        for (var drone : variants) {
+            tasks.add(pool.submit(() -> drone.planFlight()));
+        }
+
+        // Keep the best plan. Ties are resolved in favour of the first variant
+        FlightPlan best = null;
+        for (var task : tasks) {
+            var plan = task.join();
+            if (best == null || BEST_PLAN.compare(plan, best) < 0) {
+                best = plan;
+            }
+        }
+        return shortcut ? new PathShortcutter(noFlyZonesManager, sensors).shorten(best) : best;
+    }
+}
@@ -3,19 +3,24 @@ package uk.ac.ed.inf.aqmaps;
 import com.mapbox.geojson.Polygon;
 
 import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.util.*;
 
 /**
  * This class represents a single NoFlyZone.
- * It is represented as a list of {@link Line2D} boundaries.
+ * Its boundaries are stored as packed arrays of X and Y coordinates, where
+ * boundary i goes from vertex i to vertex i+1, so moves can be checked with
+ * the primitive {@link Geometry} kernel without allocating.
  * A List of {@link Point2D} is also provided for quick access when needed by
  * the NoFlyZonesManager class.
  */
 public class NoFlyZone {
     /** Instance attributes - see class description */
     private final List<Point2D> coordinates;
-    private final List<Line2D> boundaries = new ArrayList<>();
+    private final double[] xs;
+    private final double[] ys;
+    private final Path2D area = new Path2D.Double();
 
     /**
      * Class constructor.
@@ -23,14 +28,22 @@ public class NoFlyZone {
      * @param polygon The GeoJson Polygon to build the NoFlyZone from
      */
     public NoFlyZone(Polygon polygon) {
-        // Validate input, then extract corners, and generate Line2D boundaries
+        // Validate input, then extract corners, and pack them in the coordinate arrays
         Objects.requireNonNull(polygon);
         this.coordinates = Utils.pointsToPoints2d(polygon.coordinates().get(0));
-        for (int i=0; i < this.coordinates.size() - 1; i++) {
-            var p1 = coordinates.get(i);
-            var p2 = coordinates.get(i + 1);
-            boundaries.add(new Line2D.Double(p1, p2));
+        xs = new double[coordinates.size()];
+        ys = new double[coordinates.size()];
+        for (int i=0; i < this.coordinates.size(); i++) {
+            xs[i] = coordinates.get(i).getX();
+            ys[i] = coordinates.get(i).getY();
         }
+
+        // Generate the area enclosed by the boundaries
+        area.moveTo(xs[0], ys[0]);
+        for (int i = 1; i < xs.length; i++) {
+            area.lineTo(xs[i], ys[i]);
+        }
+        area.closePath();
     }
 
 
@@ -41,10 +54,25 @@ public class NoFlyZone {
      * @return boolean Whether the move intersect the NoFlyZone
      */
     public boolean isLegalMove(Line2D move) {
+        return isLegalMove(move.getX1(), move.getY1(), move.getX2(), move.getY2());
+    }
+
+
+    /**
+     * Checks if a move from (x1, y1) to (x2, y2) is legal (i.e. does not intersect any zone boundary)
+     *
+     * @param x1 X of the start of the move
+     * @param y1 Y of the start of the move
+     * @param x2 X of the end of the move
+     * @param y2 Y of the end of the move
+     * @return boolean Whether the move intersect the NoFlyZone
+     */
+    public boolean isLegalMove(double x1, double y1, double x2, double y2) {
+        Metrics.increment(Metrics.Counter.ZONE_LEGAL_MOVE_CHECKS);
         // For each boundary, check if the move intersects it.
         // If no match, then the move is legal
-        for (var boundary : boundaries) {
-            if (boundary.intersectsLine(move)) {
+        for (int i = 0; i < xs.length - 1; i++) {
+            if (Geometry.segmentsIntersect(xs[i], ys[i], xs[i + 1], ys[i + 1], x1, y1, x2, y2)) {
                 return false;
             }
         }
@@ -52,6 +80,76 @@ public class NoFlyZone {
     }
 
 
+    /**
+     * Checks the moves of a given length from (x, y) in every direction at once.
+     *
+     * @param x X of the start of the moves
+     * @param y Y of the start of the moves
+     * @param length The length of the moves
+     * @return long The mask of legal directions, bit i set if direction i is legal
+     * @see Geometry#blockedDirections
+     */
+    public long legalDirections(double x, double y, double length) {
+        // One pass over the boundaries, clearing the directions they block
+        var legal = Geometry.ALL_DIRECTIONS;
+        for (int i = 0; i < xs.length - 1 && legal != 0; i++) {
+            legal &= ~Geometry.blockedDirections(x, y, length, legal, xs[i], ys[i], xs[i + 1], ys[i + 1]);
+        }
+        return legal;
+    }
+
+
+    /**
+     * Get the distance from a point to the furthest vertex of the zone
+     *
+     * @param x X of the point
+     * @param y Y of the point
+     * @return double The distance to the furthest vertex
+     */
+    public double furthestVertexDistance(double x, double y) {
+        var furthest = 0.0;
+        for (int i = 0; i < xs.length; i++) {
+            var dx = xs[i] - x;
+            var dy = ys[i] - y;
+            furthest = Math.max(furthest, Math.sqrt(dx * dx + dy * dy));
+        }
+        return furthest;
+    }
+
+
+    /**
+     * Checks if a point is strictly inside the zone
+     *
+     * @param point The point to be checked
+     * @return boolean Whether the point is inside the NoFlyZone
+     */
+    public boolean contains(Point2D point) {
+        return area.contains(point);
+    }
+
+
+    /**
+     * Get the packed X coordinates of the vertices.
+     * The last vertex repeats the first one, so boundary i goes from vertex i to vertex i+1.
+     *
+     * @return double[] A copy of the X coordinates
+     */
+    public double[] getPackedXs() {
+        return xs.clone();
+    }
+
+
+    /**
+     * Get the packed Y coordinates of the vertices.
+     * The last vertex repeats the first one, so boundary i goes from vertex i to vertex i+1.
+     *
+     * @return double[] A copy of the Y coordinates
+     */
+    public double[] getPackedYs() {
+        return ys.clone();
+    }
+
+
     /**
      * Get coordinates
      *
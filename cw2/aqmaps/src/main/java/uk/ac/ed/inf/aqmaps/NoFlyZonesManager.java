@@ -5,6 +5,7 @@ import com.mapbox.geojson.Point;
 import com.mapbox.geojson.Polygon;
 
 import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
 import java.util.*;
 
 
@@ -27,6 +28,14 @@ public class NoFlyZonesManager {
 
     /** The set of NoFlyZones for this specific instance */
     private final Set<NoFlyZone> zones;
+    /** Spatial index over the boundaries of all zones, used to check moves */
+    private final SegmentGrid boundariesIndex;
+    /** Clearance around the boundaries, so moves far from them skip the index */
+    private final ClearanceField clearanceField;
+    /** The visibility graph of the map, used for shortest-path queries */
+    private final VisibilityGraph visibilityGraph;
+    /** Obstacle-aware distances between the sites visited on the map, filled lazily */
+    private final DistanceTable distanceTable;
 
     /**
      * Class constructor.
@@ -49,6 +58,63 @@ public class NoFlyZonesManager {
             }
             zones.add(new NoFlyZone((Polygon) zone.geometry()));
         }
+
+        // Index the boundaries of all zones, so moves are only tested against nearby ones,
+        // and only the moves close to a boundary are tested at all
+        boundariesIndex = new SegmentGrid(zones);
+        clearanceField = new ClearanceField(zones, confinementArea);
+
+        // Build the visibility graph over the buildings, once per map
+        var buildings = new HashSet<>(zones);
+        buildings.remove(confinementArea);
+        visibilityGraph = new VisibilityGraph(this, buildings);
+        distanceTable = new DistanceTable(this);
+    }
+
+
+    /**
+     * Class constructor for a changed map.
+     * The boundaries index is rebuilt, the clearance field and visibility graph are updated incrementally,
+     * and the distances the changes cannot affect are copied.
+     *
+     * @param previous The map before the changes
+     * @param added The zones added to the map
+     * @param removed The zones removed from the map
+     */
+    private NoFlyZonesManager(NoFlyZonesManager previous, Collection<NoFlyZone> added, Collection<NoFlyZone> removed) {
+        zones = new HashSet<>(previous.zones);
+        zones.removeAll(removed);
+        zones.addAll(added);
+        var changed = new ArrayList<NoFlyZone>(added);
+        changed.addAll(removed);
+        boundariesIndex = new SegmentGrid(zones);
+        clearanceField = previous.clearanceField.withChanges(zones, confinementArea, changed);
+
+        var buildings = new HashSet<>(zones);
+        buildings.remove(confinementArea);
+        visibilityGraph = previous.visibilityGraph.withChanges(this, buildings, added, removed);
+        // Only the distances of the pairs close to the changed zones are computed again
+        distanceTable = new DistanceTable(this, previous.distanceTable, changed);
+    }
+
+
+    /**
+     * Generates the map after some zones are added or removed, e.g. temporary NoFlyZones.
+     * This map is not modified. The parts of the visibility graph and the distances not
+     * affected by the changes are reused, so this is much cheaper than building a new map.
+     *
+     * @param added The zones to add
+     * @param removed The zones to remove, as returned by {@link #getNoFlyZones}
+     * @return NoFlyZonesManager The changed map
+     */
+    public NoFlyZonesManager withChanges(Collection<NoFlyZone> added, Collection<NoFlyZone> removed) {
+        for (var zone : Objects.requireNonNull(added)) {
+            Objects.requireNonNull(zone);
+        }
+        if (Objects.requireNonNull(removed).contains(confinementArea)) {
+            throw new IllegalArgumentException("The confinement area cannot be removed");
+        }
+        return new NoFlyZonesManager(this, added, removed);
     }
 
 
@@ -62,15 +128,95 @@ public class NoFlyZonesManager {
      * @see NoFlyZone#isLegalMove
      */
     public boolean isLegalMove(Line2D move) {
-        // For every zone in the map, call their isLegalMove.
+        return isLegalMove(move.getX1(), move.getY1(), move.getX2(), move.getY2());
+    }
+
+
+    /**
+     * Verifies a move from (x1, y1) to (x2, y2) is legal in the map, without allocating.
+     *
+     * @param x1 X of the start of the move
+     * @param y1 Y of the start of the move
+     * @param x2 X of the end of the move
+     * @param y2 Y of the end of the move
+     * @return boolean Whether the move intersect the NoFlyZone
+     * @see #isLegalMove(Line2D)
+     */
+    public boolean isLegalMove(double x1, double y1, double x2, double y2) {
+        Metrics.increment(Metrics.Counter.LEGAL_MOVE_CHECKS);
+        // Moves far from every boundary are legal, see {@link ClearanceField}
+        if (clearanceField.isClear(x1, y1, x2, y2)) {
+            Metrics.increment(Metrics.Counter.CLEAR_MOVES);
+            return true;
+        }
+        // Only the boundaries close to the move are checked, see {@link SegmentGrid}
+        return !boundariesIndex.intersects(x1, y1, x2, y2);
+    }
+
+    /**
+     * Verifies the moves of a given length from (x, y) in all the drone directions, in one pass.
+     *
+     * @param x X of the start of the moves
+     * @param y Y of the start of the moves
+     * @param length The length of the moves
+     * @return long The mask of legal directions, bit i set if the move at i * STEP_ANGLE degrees is legal
+     * @see Geometry#DIRECTIONS
+     */
+    public long legalDirections(double x, double y, double length) {
+        // Squaring drops the sign, so the moves inside a NoFlyZone but away from its boundaries pass, as in ClearanceField.isClear
+        var clearance = clearanceField.clearance(x, y);
+        if (clearance * clearance > length * length) {
+            return Geometry.ALL_DIRECTIONS;
+        }
+        return boundariesIndex.legalDirections(x, y, length);
+    }
+
+
+    /**
+     * Verifies a position is legal in the map.
+     * This checks that it is inside the confinement area, and not inside any NoFlyZone.
+     *
+     * @param point The position to be checked
+     * @return boolean Whether the position is legal
+     */
+    public boolean isLegalPosition(Point2D point) {
+        // The clearance field knows the side of the points away from the boundaries
+        var clearance = clearanceField.clearance(point.getX(), point.getY());
+        if (clearance != 0) {
+            return clearance > 0;
+        }
+        if (!confinementArea.contains(point)) {
+            return false;
+        }
         for (var zone : zones) {
-            if (!zone.isLegalMove(move)) {
+            if (zone != confinementArea && zone.contains(point)) {
                 return false;
             }
         }
         return true;
     }
 
+
+    /**
+     * Get the visibility graph of the map
+     *
+     * @return VisibilityGraph The visibility graph over the NoFlyZones corners
+     */
+    public VisibilityGraph getVisibilityGraph() {
+        return visibilityGraph;
+    }
+
+
+    /**
+     * Get the table of obstacle-aware distances between sites of the map
+     *
+     * @return DistanceTable The distance table, shared by all the planners on this map
+     */
+    public DistanceTable getDistanceTable() {
+        return distanceTable;
+    }
+
+
     /**
      * Get the confinement area of the map
      *
@@ -0,0 +1,205 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * This class writes text output straight to a channel, without building the whole file in memory.
+ * Values are formatted into a reusable char buffer, which is encoded to UTF-8 and written
+ * to the channel whenever it fills up. Numbers are appended as primitives, so nothing is boxed.
+ *
+ * The numbers are formatted exactly as {@link String#valueOf} does,
+ * so the output is the same as concatenating Strings.
+ */
+public class OutputWriter implements Closeable {
+    /**
+     * Content that can be streamed to an OutputWriter
+     */
+    @FunctionalInterface
+    public interface Content {
+        /**
+         * Writes the content
+         *
+         * @param out The writer to write to
+         * @throws IOException If the output cannot be written
+         */
+        void writeTo(OutputWriter out) throws IOException;
+    }
+
+    /** Size of the char buffer, it is written to the channel when it grows past this */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** Instance attributes */
+    private final WritableByteChannel channel;
+    private final StringBuilder chars = new StringBuilder(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE * 4);
+
+    /**
+     * Class constructor
+     *
+     * @param channel The channel to write to, closed with the writer
+     */
+    public OutputWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+
+    /**
+     * Opens a writer to a file, replacing it if it exists.
+     *
+     * @param path The path of the file
+     * @param gzip Whether to compress the output with gzip
+     * @return OutputWriter The writer
+     * @throws IOException If the file cannot be opened
+     */
+    public static OutputWriter open(Path path, boolean gzip) throws IOException {
+        if (gzip) {
+            var stream = new GZIPOutputStream(Files.newOutputStream(path), BUFFER_SIZE);
+            return new OutputWriter(Channels.newChannel(stream));
+        }
+        return new OutputWriter(FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+
+    /**
+     * Appends a String
+     *
+     * @param value The value to append
+     * @return OutputWriter This writer
+     * @throws IOException If the channel cannot be written
+     */
+    public OutputWriter append(String value) throws IOException {
+        chars.append(value);
+        return flushIfFull();
+    }
+
+
+    /**
+     * Appends a char
+     *
+     * @param value The value to append
+     * @return OutputWriter This writer
+     * @throws IOException If the channel cannot be written
+     */
+    public OutputWriter append(char value) throws IOException {
+        chars.append(value);
+        return flushIfFull();
+    }
+
+
+    /**
+     * Appends an int
+     *
+     * @param value The value to append
+     * @return OutputWriter This writer
+     * @throws IOException If the channel cannot be written
+     */
+    public OutputWriter append(int value) throws IOException {
+        chars.append(value);
+        return flushIfFull();
+    }
+
+
+    /**
+     * Appends a double, formatted as {@link Double#toString(double)}
+     *
+     * @param value The value to append
+     * @return OutputWriter This writer
+     * @throws IOException If the channel cannot be written
+     */
+    public OutputWriter append(double value) throws IOException {
+        chars.append(value);
+        return flushIfFull();
+    }
+
+
+    /**
+     * Appends the platform line separator, as {@link java.io.PrintWriter#println()} does
+     *
+     * @return OutputWriter This writer
+     * @throws IOException If the channel cannot be written
+     */
+    public OutputWriter newLine() throws IOException {
+        return append(System.lineSeparator());
+    }
+
+
+    /**
+     * Writes the buffer to the channel once it is full
+     *
+     * @return OutputWriter This writer
+     * @throws IOException If the channel cannot be written
+     */
+    private OutputWriter flushIfFull() throws IOException {
+        if (chars.length() >= BUFFER_SIZE) {
+            flush();
+        }
+        return this;
+    }
+
+
+    /**
+     * Encodes the content of the buffer, and writes it to the channel.
+     * The buffer always holds whole values, so surrogate pairs are never split.
+     *
+     * @throws IOException If the channel cannot be written
+     */
+    public void flush() throws IOException {
+        var in = CharBuffer.wrap(chars);
+        CoderResult result;
+        do {
+            result = encoder.encode(in, bytes, true);
+            if (result.isError()) {
+                result.throwException();
+            }
+            writeBytes();
+        } while (result.isOverflow());
+        encoder.flush(bytes);
+        writeBytes();
+        encoder.reset();
+        chars.setLength(0);
+    }
+
+
+    /**
+     * Writes the encoded bytes to the channel
+     *
+     * @throws IOException If the channel cannot be written
+     */
+    private void writeBytes() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+
+    /**
+     * Writes what is left in the buffer, then closes the channel
+     *
+     * @throws IOException If the channel cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
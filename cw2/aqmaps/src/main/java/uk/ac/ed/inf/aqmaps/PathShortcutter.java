@@ -0,0 +1,246 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * This class shortens a finished {@link FlightPlan}, removing the zig-zags and detours
+ * the drone leaves behind, e.g. after flying around a NoFlyZone.
+ *
+ * The plan is split into legs at its readings, the last leg flying back to the starting
+ * point. The legs are searched again one after the other with a {@link LatticeSearch},
+ * for the fewest moves ending within range of the same sensor. As the best end of a leg
+ * depends on the legs after it, several partial plans are kept after every leg: those with
+ * the fewest moves, ending at different positions, the closest to the next sensor first.
+ * The original plan is always kept among them, so the result is never worse than it.
+ *
+ * The shortened plan reads the same sensors in the same order, and returns to the starting
+ * point. A PathShortcutter is not thread-safe, as its search is not.
+ */
+public class PathShortcutter {
+    /** Maximum number of moves looked ahead, deeper than the drone's as whole legs are searched */
+    private static final int MAX_DEPTH = 64;
+    /** Number of partial plans kept after every leg */
+    private static final int BEAM_WIDTH = 8;
+    /** Number of different ends of a leg searched from every partial plan */
+    private static final int ENDS_PER_LEG = 4;
+
+    /** Instance attributes */
+    private final Map<String, Point2D> coordinates = new HashMap<>();
+    private final LatticeSearch latticeSearch;
+
+    /**
+     * Constructor for the shortcutter
+     *
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The sensors the plans may read
+     */
+    public PathShortcutter(NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors) {
+        this.latticeSearch = new LatticeSearch(Objects.requireNonNull(noFlyZonesManager),
+                LatticeSearch.DEFAULT_BEAM_WIDTH, MAX_DEPTH, LatticeSearch.DEFAULT_TIME_BUDGET_NANOS);
+        for (var sensor : sensors) {
+            coordinates.put(sensor.getLocation(), sensor.getCoordinates());
+        }
+    }
+
+
+    /**
+     * Shortens a FlightPlan.
+     * Plans that do not end back at their starting point, or read unknown sensors,
+     * are returned as they are.
+     *
+     * @param plan The FlightPlan to shorten
+     * @return FlightPlan The shortened FlightPlan, or the same one if no shorter one is found
+     */
+    public FlightPlan shorten(FlightPlan plan) {
+        var moves = plan.getMovesCount();
+        var startingPoint = plan.getPosition(0);
+        if (moves == 0 || plan.getPosition(moves).distance(startingPoint) >= Drone.STEP_LENGTH) {
+            return plan;
+        }
+
+        // The legs end after every reading, the last one flies back to the starting point
+        var legEnds = new ArrayList<Integer>();
+        for (int move = 0; move < moves; move++) {
+            var reading = plan.getReading(move);
+            if (reading != null) {
+                if (!coordinates.containsKey(reading)) {
+                    return plan;
+                }
+                legEnds.add(move + 1);
+            }
+        }
+        legEnds.add(moves);
+
+        List<Partial> beam = List.of(new Partial(null, List.of(), null, startingPoint, 0, true));
+        var legStart = 0;
+        for (int leg = 0; leg < legEnds.size(); leg++) {
+            var legEnd = legEnds.get(leg);
+            var isHoming = leg == legEnds.size() - 1;
+            var reading = isHoming ? null : plan.getReading(legEnd - 1);
+            var target = isHoming ? startingPoint : coordinates.get(reading);
+            var radius = isHoming ? Drone.STEP_LENGTH : Drone.SENSOR_RANGE;
+            var next = nextTarget(plan, legEnd, startingPoint);
+
+            var candidates = new ArrayList<Partial>();
+            for (var partial : beam) {
+                if (isHoming && partial.moves > 0 && partial.end.distance(startingPoint) < Drone.STEP_LENGTH) {
+                    // Already back
+                    candidates.add(partial);
+                    continue;
+                }
+                if (partial.original) {
+                    var positions = new ArrayList<Point2D>();
+                    for (int i = legStart + 1; i <= legEnd; i++) {
+                        positions.add(plan.getPosition(i));
+                    }
+                    candidates.add(partial.extend(positions, reading, true));
+                }
+                // Only the legs that can still make the plan shorter are searched for
+                var maxMoves = moves - 1 - partial.moves;
+                if (maxMoves > 0) {
+                    for (var result : latticeSearch.searchAll(partial.end, target, radius, next, maxMoves, ENDS_PER_LEG)) {
+                        candidates.add(partial.extend(result.getPositions(), reading, false));
+                    }
+                }
+            }
+            beam = select(candidates, next);
+            legStart = legEnd;
+        }
+
+        var best = Collections.min(beam, Comparator.comparingInt(partial -> partial.moves));
+        return best.original || best.moves >= moves ? plan : best.toFlightPlan(startingPoint);
+    }
+
+
+    /**
+     * Selects the partial plans to continue from: the original one, then those with the
+     * fewest moves, the closest to the next target first. Only one is kept per end position.
+     *
+     * @param candidates The partial plans after a leg
+     * @param next The target of the next leg
+     * @return <code>List&lt;Partial&gt;</code> At most BEAM_WIDTH partial plans
+     */
+    private static List<Partial> select(List<Partial> candidates, Point2D next) {
+        var sorted = new ArrayList<>(candidates);
+        sorted.sort(Comparator.<Partial>comparingInt(partial -> partial.moves)
+                .thenComparingDouble(partial -> partial.end.distance(next)));
+        var selected = new ArrayList<Partial>(BEAM_WIDTH);
+        var ends = new HashSet<Long>();
+        for (var partial : sorted) {
+            if (partial.original) {
+                selected.add(partial);
+                ends.add(LatticeSearch.key(partial.end.getX(), partial.end.getY()));
+            }
+        }
+        for (var partial : sorted) {
+            if (selected.size() == BEAM_WIDTH) {
+                break;
+            }
+            if (!partial.original && ends.add(LatticeSearch.key(partial.end.getX(), partial.end.getY()))) {
+                selected.add(partial);
+            }
+        }
+        return selected;
+    }
+
+
+    /**
+     * Get the target of the leg after the one ending at a move
+     *
+     * @param plan The original FlightPlan
+     * @param legEnd The number of moves at the end of the leg
+     * @param startingPoint The starting point, targeted by the last leg
+     * @return Point2D The sensor read next, or the starting point if there is none
+     */
+    private Point2D nextTarget(FlightPlan plan, int legEnd, Point2D startingPoint) {
+        for (int move = legEnd; move < plan.getMovesCount(); move++) {
+            var reading = plan.getReading(move);
+            if (reading != null) {
+                return coordinates.get(reading);
+            }
+        }
+        return startingPoint;
+    }
+
+
+    /**
+     * This class is a partial plan, as a chain of legs
+     */
+    private static final class Partial {
+        /** Instance attributes */
+        private final Partial parent;
+        // The positions after every move of the last leg, and the sensor read at its end
+        private final List<Point2D> positions;
+        private final String reading;
+        private final Point2D end;
+        private final int moves;
+        // Whether every leg so far is the one of the original plan
+        private final boolean original;
+
+        /**
+         * Class constructor
+         *
+         * @param parent The partial plan before the last leg, null for the empty one
+         * @param positions The positions after every move of the last leg
+         * @param reading The sensor read at the end of the last leg, or null
+         * @param end The position at the end of the plan
+         * @param moves The number of moves of the plan
+         * @param original Whether every leg is the one of the original plan
+         */
+        private Partial(Partial parent, List<Point2D> positions, String reading, Point2D end, int moves,
+                        boolean original) {
+            this.parent = parent;
+            this.positions = positions;
+            this.reading = reading;
+            this.end = end;
+            this.moves = moves;
+            this.original = original;
+        }
+
+        /**
+         * Generates the partial plan with one more leg
+         *
+         * @param positions The positions after every move of the leg
+         * @param reading The sensor read at the end of the leg, or null
+         * @param original Whether the leg is the one of the original plan
+         * @return Partial The extended partial plan
+         */
+        private Partial extend(List<Point2D> positions, String reading, boolean original) {
+            var end = positions.isEmpty() ? this.end : positions.get(positions.size() - 1);
+            return new Partial(this, positions, reading, end, moves + positions.size(), this.original && original);
+        }
+
+        /**
+         * Generates the FlightPlan of the legs, in order
+         *
+         * @param startingPoint The starting point
+         * @return FlightPlan The FlightPlan
+         */
+        private FlightPlan toFlightPlan(Point2D startingPoint) {
+            var legs = new ArrayList<Partial>();
+            for (var partial = this; partial != null; partial = partial.parent) {
+                legs.add(partial);
+            }
+            Collections.reverse(legs);
+            var plan = new FlightPlan(startingPoint);
+            for (var leg : legs) {
+                for (var position : leg.positions) {
+                    plan.add(position);
+                }
+                if (leg.reading != null) {
+                    plan.read(leg.reading);
+                }
+            }
+            return plan;
+        }
+    }
+}
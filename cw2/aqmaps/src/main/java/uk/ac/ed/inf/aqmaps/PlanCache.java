@@ -0,0 +1,260 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * This class is a two-tier cache of the planned flights, so a flight planned before
+ * is not planned again. The first tier is an in-memory LRU map, the second one a
+ * directory on disk, where every plan is stored in the compact form of
+ * {@link FlightPlan#writeCompact}.
+ *
+ * A plan is keyed by everything its planning depends on: the hash of the NoFlyZones,
+ * the coordinates of the sensors, the starting point quantized to a fine grid, the whole
+ * planner configuration, and the bytecode of the planning classes, so plans are planned
+ * again whenever the planning changes. As quantized starting points may differ slightly,
+ * a hit is only returned if the plan starts at exactly the same point.
+ * The cache is best-effort: disk errors are treated as misses.
+ */
+public class PlanCache {
+    /** Default location and size of the cache */
+    public static final Path DEFAULT_DIRECTORY = ResourceCache.DEFAULT_DIRECTORY.resolve("plans");
+    public static final int DEFAULT_MEMORY_ENTRIES = 64;
+
+    /** Header of the plan files, and version of their format */
+    private static final int MAGIC = 0x41515043;
+    private static final int VERSION = 1;
+    /** Size of the grid starting points are quantized to, in degrees */
+    private static final double QUANTUM = 1e-9;
+    /** The classes the plans depend on, and the hash of their bytecode */
+    private static final List<Class<?>> PLANNING_CLASSES = List.of(Drone.class, LatticeSearch.class,
+            PathShortcutter.class, MultiStartPlanner.class, LocalSearchTourOptimizer.class, TourOptimizer.class,
+            VisibilityGraph.class, DistanceTable.class, NoFlyZonesManager.class, NoFlyZone.class, SegmentGrid.class,
+            ClearanceField.class, Geometry.class, Utils.class, FlightPlan.class);
+    private static final String PLANNING_CODE_HASH = hashClasses(PLANNING_CLASSES);
+
+    /** Instance attributes */
+    private final Path directory;
+    private final Map<String, FlightPlan> memory;
+
+    /**
+     * Class constructor.
+     * The directory is created lazily, on the first write.
+     *
+     * @param directory The directory to store the plans in
+     * @param memoryEntries The number of plans kept in memory
+     */
+    public PlanCache(Path directory, int memoryEntries) {
+        if (memoryEntries < 1) {
+            throw new IllegalArgumentException("The cache must keep at least one plan in memory");
+        }
+        this.directory = Objects.requireNonNull(directory);
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FlightPlan> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+    }
+
+
+    /**
+     * Generates the key of a flight
+     *
+     * @param startingPoint The starting point of the drone
+     * @param noFlyZonesManager The NoFlyZonesManager
+     * @param sensors The sensors to visit, with their coordinates
+     * @param stepPlanner How the drones decide their moves
+     * @param moveBudget The maximum number of moves
+     * @param firstSensors The number of different first sensors tried, see {@link MultiStartPlanner}
+     * @param shortcut Whether the plan is shortened, see {@link PathShortcutter}
+     * @return String The hex SHA-256 of everything the plan depends on
+     */
+    public static String key(Point2D startingPoint, NoFlyZonesManager noFlyZonesManager, Set<Sensor> sensors,
+                             Drone.StepPlanner stepPlanner, int moveBudget, int firstSensors, boolean shortcut) {
+        var text = new StringBuilder();
+        text.append(PLANNING_CODE_HASH).append('\n');
+        text.append(noFlyZonesManager.getDistanceTable().getZonesHash()).append('\n');
+        text.append(stepPlanner).append(' ').append(moveBudget).append(' ')
+                .append(firstSensors).append(' ').append(shortcut).append('\n');
+        // The limits of the lattice searches, whose time budget is set globally
+        text.append(LatticeSearch.DEFAULT_BEAM_WIDTH).append(' ').append(LatticeSearch.DEFAULT_MAX_DEPTH).append(' ')
+                .append(LatticeSearch.DEFAULT_TIME_BUDGET_NANOS).append('\n');
+        text.append(Math.round(startingPoint.getX() / QUANTUM)).append(' ')
+                .append(Math.round(startingPoint.getY() / QUANTUM)).append('\n');
+        // The sensors are sorted, so the key does not depend on the order they were loaded in
+        var sorted = new ArrayList<>(sensors);
+        sorted.sort(Comparator.comparing(Sensor::getLocation));
+        for (var sensor : sorted) {
+            var coordinates = sensor.getCoordinates();
+            text.append(sensor.getLocation()).append(' ')
+                    .append(coordinates.getX()).append(' ').append(coordinates.getY()).append('\n');
+        }
+        return ResourceCache.hash(text.toString());
+    }
+
+
+    /**
+     * Get a plan.
+     * Looks in memory first, then on disk.
+     *
+     * @param key The key of the flight, see {@link #key}
+     * @param startingPoint The exact starting point of the flight
+     * @return <code>Optional&lt;FlightPlan&gt;</code> A copy of the plan, empty if not cached
+     */
+    public Optional<FlightPlan> get(String key, Point2D startingPoint) {
+        FlightPlan plan;
+        synchronized (memory) {
+            plan = memory.get(key);
+        }
+        if (plan == null) {
+            plan = readFromDisk(key).orElse(null);
+            if (plan == null) {
+                return Optional.empty();
+            }
+            remember(key, plan);
+        }
+        if (!plan.getPosition(0).equals(startingPoint)) {
+            return Optional.empty();
+        }
+        // The cached plan is never handed out, so it cannot be changed
+        return Optional.of(plan.prefix(plan.getMovesCount()));
+    }
+
+
+    /**
+     * Stores a plan, in memory and on disk
+     *
+     * @param key The key of the flight, see {@link #key}
+     * @param plan The plan
+     */
+    public void put(String key, FlightPlan plan) {
+        var copy = plan.prefix(plan.getMovesCount());
+        remember(key, copy);
+        writeToDisk(key, copy);
+    }
+
+
+    /**
+     * Stores a plan in memory, evicting the least recently used one if full
+     *
+     * @param key The key of the flight
+     * @param plan The plan
+     */
+    private void remember(String key, FlightPlan plan) {
+        synchronized (memory) {
+            memory.put(key, plan);
+        }
+    }
+
+
+    /**
+     * Reads a plan from disk
+     *
+     * @param key The key of the flight
+     * @return <code>Optional&lt;FlightPlan&gt;</code> The plan, empty if missing or unreadable
+     */
+    private Optional<FlightPlan> readFromDisk(String key) {
+        var file = directory.resolve(key);
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return Optional.empty();
+            }
+            return Optional.of(FlightPlan.readCompact(in));
+        } catch (IOException | RuntimeException exception) {
+            // A corrupted plan is planned again, and overwritten
+            return Optional.empty();
+        }
+    }
+
+
+    /**
+     * Writes a plan to disk. The plan is written to a temporary file first,
+     * then moved in place, so concurrent readers never see a partial plan.
+     *
+     * @param key The key of the flight
+     * @param plan The plan
+     */
+    private void writeToDisk(String key, FlightPlan plan) {
+        Path file = null;
+        try {
+            Files.createDirectories(directory);
+            file = Files.createTempFile(directory, "plan", ".tmp");
+            try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                plan.writeCompact(out);
+            }
+            Files.move(file, directory.resolve(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            // The cache is best-effort, the plan is still kept in memory.
+            // A partial plan is never left behind
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException deleteException) {
+                    // Nothing else can be done
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Generates a hash of the bytecode of some classes, and of their nested classes
+     *
+     * @param classes The classes
+     * @return String The hex SHA-256 of the class files, in order
+     */
+    private static String hashClasses(List<Class<?>> classes) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            var pending = new ArrayDeque<Class<?>>(classes);
+            while (!pending.isEmpty()) {
+                var type = pending.removeFirst();
+                var name = type.getName().substring(type.getPackageName().length() + 1);
+                digest.update(name.getBytes(StandardCharsets.UTF_8));
+                // A class file that cannot be found or read is only hashed by name
+                try (var in = type.getResourceAsStream(name + ".class")) {
+                    if (in != null) {
+                        digest.update(in.readAllBytes());
+                    }
+                } catch (IOException exception) {
+                    // The name is still hashed
+                }
+                pending.addAll(Arrays.asList(type.getDeclaredClasses()));
+            }
+            var hex = new StringBuilder();
+            for (var b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException exception) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+}
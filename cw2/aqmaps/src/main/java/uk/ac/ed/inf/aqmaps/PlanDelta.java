@@ -0,0 +1,111 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class represents a change to the map and sensors of a planned flight,
+ * to be applied by an {@link IncrementalPlanner}.
+ *
+ * Removed zones must be the same instances as those of the {@link NoFlyZonesManager},
+ * removed sensors are identified by their What3Words location.
+ */
+public class PlanDelta {
+    /** Instance attributes */
+    private final List<NoFlyZone> zonesAdded;
+    private final List<NoFlyZone> zonesRemoved;
+    private final List<Sensor> sensorsAdded;
+    private final Set<String> sensorsRemoved;
+
+    /**
+     * Class constructor
+     *
+     * @param zonesAdded The NoFlyZones added to the map
+     * @param zonesRemoved The NoFlyZones removed from the map
+     * @param sensorsAdded The sensors to visit as well
+     * @param sensorsRemoved The What3Words locations of the sensors not to visit anymore
+     */
+    public PlanDelta(Collection<NoFlyZone> zonesAdded, Collection<NoFlyZone> zonesRemoved,
+                     Collection<Sensor> sensorsAdded, Collection<String> sensorsRemoved) {
+        // List.copyOf and Set.copyOf reject null elements
+        this.zonesAdded = List.copyOf(zonesAdded);
+        this.zonesRemoved = List.copyOf(zonesRemoved);
+        this.sensorsAdded = List.copyOf(sensorsAdded);
+        this.sensorsRemoved = Set.copyOf(sensorsRemoved);
+    }
+
+
+    /**
+     * Generates a change to the map only
+     *
+     * @param zonesAdded The NoFlyZones added to the map
+     * @param zonesRemoved The NoFlyZones removed from the map
+     * @return PlanDelta The change
+     */
+    public static PlanDelta ofZones(Collection<NoFlyZone> zonesAdded, Collection<NoFlyZone> zonesRemoved) {
+        return new PlanDelta(zonesAdded, zonesRemoved, List.of(), List.of());
+    }
+
+
+    /**
+     * Generates a change to the sensors only
+     *
+     * @param sensorsAdded The sensors to visit as well
+     * @param sensorsRemoved The What3Words locations of the sensors not to visit anymore
+     * @return PlanDelta The change
+     */
+    public static PlanDelta ofSensors(Collection<Sensor> sensorsAdded, Collection<String> sensorsRemoved) {
+        return new PlanDelta(List.of(), List.of(), sensorsAdded, sensorsRemoved);
+    }
+
+
+    /**
+     * Checks whether the map changes
+     *
+     * @return boolean Whether any zone is added or removed
+     */
+    public boolean changesZones() {
+        return !zonesAdded.isEmpty() || !zonesRemoved.isEmpty();
+    }
+
+
+    /**
+     * Get the NoFlyZones added to the map
+     *
+     * @return <code>List&lt;NoFlyZone&gt;</code> The added zones
+     */
+    public List<NoFlyZone> getZonesAdded() {
+        return zonesAdded;
+    }
+
+
+    /**
+     * Get the NoFlyZones removed from the map
+     *
+     * @return <code>List&lt;NoFlyZone&gt;</code> The removed zones
+     */
+    public List<NoFlyZone> getZonesRemoved() {
+        return zonesRemoved;
+    }
+
+
+    /**
+     * Get the sensors to visit as well
+     *
+     * @return <code>List&lt;Sensor&gt;</code> The added sensors
+     */
+    public List<Sensor> getSensorsAdded() {
+        return sensorsAdded;
+    }
+
+
+    /**
+     * Get the sensors not to visit anymore
+     *
+     * @return <code>Set&lt;String&gt;</code> The What3Words locations of the removed sensors
+     */
+    public Set<String> getSensorsRemoved() {
+        return sensorsRemoved;
+    }
+}
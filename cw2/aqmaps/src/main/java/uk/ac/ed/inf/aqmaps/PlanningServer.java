@@ -0,0 +1,351 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class is a resident planning service, built on the JDK HTTP server.
+ * The NoFlyZones are loaded and indexed once at startup, and the {@link Loader}
+ * cache and the {@link DistanceTable} stay warm between requests, so a request
+ * only pays for the sensors of its date and the planning itself.
+ *
+ * Endpoints, all taking <code>date</code> (yyyy-MM-dd), <code>lat</code> and <code>lng</code>:
+ * <ul>
+ *     <li><code>GET /flightpath</code> returns the flightpath file</li>
+ *     <li><code>GET /readings</code> returns the readings GeoJson file</li>
+ * </ul>
+ * Both are streamed with the same writers as the files. With the optional <code>budget</code>
+ * parameter, in milliseconds, the flight is planned by an {@link AnytimePlanner} within it.
+ *
+ * The two files of a flight are usually requested one after the other, so they must come from
+ * the same plan, even when planning within a budget does not give the same plan twice. The plans
+ * are shared for a while by all the requests with the same parameters, and concurrent requests
+ * wait for the same planning.
+ */
+public class PlanningServer {
+    /** HTTP status codes */
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_BAD_REQUEST = 400;
+    private static final int HTTP_METHOD_NOT_ALLOWED = 405;
+    private static final int HTTP_INTERNAL_ERROR = 500;
+    private static final int HTTP_BAD_GATEWAY = 502;
+    private static final int HTTP_UNAVAILABLE = 503;
+
+    /** Maximum number of connections waiting to be accepted */
+    private static final int BACKLOG = 64;
+    /** Maximum number of plans shared between requests, and for how long */
+    private static final int SHARED_PLANS = 64;
+    private static final long SHARED_PLAN_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /** Instance attributes */
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final NoFlyZonesManager noFlyZonesManager;
+    // The plans shared between requests, by request parameters, the least recently used first
+    private final Map<String, SharedPlan> sharedPlans = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SharedPlan> eldest) {
+            return size() > SHARED_PLANS;
+        }
+    };
+
+    /**
+     * Content of a response, generated from a FlightPlan and its sensors
+     */
+    @FunctionalInterface
+    private interface Response {
+        /**
+         * Writes the response
+         *
+         * @param out The writer to write to
+         * @param flightPlan The FlightPlan
+         * @param sensors The sensors of the day
+         * @throws IOException If the output cannot be written
+         */
+        void writeTo(OutputWriter out, FlightPlan flightPlan, Set<Sensor> sensors) throws IOException;
+    }
+
+    /**
+     * Constructor for the server, with one request thread per available processor.
+     *
+     * @param port The port to listen on, 0 for any free port
+     * @throws IOException If the NoFlyZones cannot be loaded, or the port cannot be bound
+     * @throws InterruptedException If the network operation is interrupted
+     */
+    public PlanningServer(int port) throws IOException, InterruptedException {
+        this(port, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * Constructor for the server.
+     * Loads and indexes the NoFlyZones. The server does not accept requests until {@link #start}.
+     *
+     * @param port The port to listen on, 0 for any free port
+     * @param threads The number of requests handled at the same time
+     * @throws IOException If the NoFlyZones cannot be loaded, or the port cannot be bound
+     * @throws InterruptedException If the network operation is interrupted
+     */
+    public PlanningServer(int port, int threads) throws IOException, InterruptedException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed");
+        }
+        noFlyZonesManager = App.loadNoFlyZonesManager();
+        executor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        server.setExecutor(executor);
+        server.createContext("/flightpath", exchange ->
+                handle(exchange, "text/plain; charset=utf-8", (out, plan, sensors) -> plan.writeFlightPlan(out)));
+        server.createContext("/readings", exchange ->
+                handle(exchange, "application/geo+json; charset=utf-8", App::writeReadings));
+    }
+
+
+    /**
+     * Starts accepting requests
+     */
+    public void start() {
+        server.start();
+    }
+
+
+    /**
+     * Stops accepting requests, waits for those in progress, and releases the threads.
+     * The distances computed while running are persisted for the next start.
+     *
+     * @param delay The maximum time to wait for the requests in progress, in seconds
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        executor.shutdown();
+        noFlyZonesManager.getDistanceTable().save(DistanceTable.DEFAULT_DIRECTORY);
+    }
+
+
+    /**
+     * Get the port the server listens on
+     *
+     * @return int The port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+
+    /**
+     * Handles a plan request: plans the flight, then streams the response.
+     * Errors are answered with a plain text message.
+     *
+     * @param exchange The HTTP exchange
+     * @param contentType The content type of the response
+     * @param response The content of the response
+     * @throws IOException If the response cannot be written
+     */
+    private void handle(HttpExchange exchange, String contentType, Response response) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, HTTP_METHOD_NOT_ALLOWED, "Only GET is supported");
+                return;
+            }
+
+            SharedPlan plan;
+            try {
+                var query = parseQuery(exchange.getRequestURI().getRawQuery());
+                var date = LocalDate.parse(require(query, "date"));
+                var startingPoint = new Point2D.Double(
+                        Double.parseDouble(require(query, "lng")), Double.parseDouble(require(query, "lat")));
+                if (!noFlyZonesManager.isLegalPosition(startingPoint)) {
+                    throw new IllegalArgumentException("The starting point is not a legal position");
+                }
+                var budget = query.containsKey("budget") ? Duration.ofMillis(Long.parseLong(query.get("budget"))) : null;
+                plan = sharedPlan(date, startingPoint, budget);
+            } catch (IllegalArgumentException | DateTimeException exception) {
+                sendError(exchange, HTTP_BAD_REQUEST, exception.getMessage());
+                return;
+            } catch (IOException exception) {
+                sendError(exchange, HTTP_BAD_GATEWAY, "Could not load the data: " + exception);
+                return;
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                sendError(exchange, HTTP_UNAVAILABLE, "Interrupted");
+                return;
+            } catch (RuntimeException exception) {
+                sendError(exchange, HTTP_INTERNAL_ERROR, "Planning failed: " + exception);
+                return;
+            }
+
+            // The length is unknown while streaming, so the response is chunked
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(HTTP_OK, 0);
+            try (var out = new OutputWriter(Channels.newChannel(exchange.getResponseBody()))) {
+                response.writeTo(out, plan.flightPlan, plan.sensors);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+
+    /**
+     * Get the plan of a request, shared with the other requests with the same parameters.
+     * The first request plans the flight, and the others wait for it. A failed plan is not
+     * shared, so the requests waiting for it plan the flight again on their own.
+     *
+     * @param date The date of the sensors
+     * @param startingPoint The starting point
+     * @param budget The time budget of the planning, or null to plan without one
+     * @return SharedPlan The FlightPlan and its sensors
+     * @throws IOException If the sensors cannot be loaded
+     * @throws InterruptedException If the thread is interrupted while loading or planning
+     */
+    private SharedPlan sharedPlan(LocalDate date, Point2D startingPoint, Duration budget)
+            throws IOException, InterruptedException {
+        var key = date + " " + startingPoint.getX() + " " + startingPoint.getY() + " " + budget;
+        SharedPlan shared;
+        var owner = false;
+        synchronized (sharedPlans) {
+            shared = sharedPlans.get(key);
+            if (shared == null || shared.isExpired()) {
+                shared = new SharedPlan();
+                sharedPlans.put(key, shared);
+                owner = true;
+            }
+        }
+        if (!owner) {
+            try {
+                return shared.planned.get();
+            } catch (ExecutionException exception) {
+                return plan(date, startingPoint, budget, new SharedPlan());
+            }
+        }
+        try {
+            return plan(date, startingPoint, budget, shared);
+        } catch (IOException | InterruptedException | RuntimeException exception) {
+            synchronized (sharedPlans) {
+                sharedPlans.remove(key, shared);
+            }
+            shared.planned.completeExceptionally(exception);
+            throw exception;
+        }
+    }
+
+
+    /**
+     * Loads the sensors of a date and plans the flight
+     *
+     * @param date The date of the sensors
+     * @param startingPoint The starting point
+     * @param budget The time budget of the planning, or null to plan without one
+     * @param plan The plan to fill in
+     * @return SharedPlan The plan, filled in
+     * @throws IOException If the sensors cannot be loaded
+     * @throws InterruptedException If the thread is interrupted while loading or planning
+     */
+    private SharedPlan plan(LocalDate date, Point2D startingPoint, Duration budget, SharedPlan plan)
+            throws IOException, InterruptedException {
+        var day = String.format("%02d", date.getDayOfMonth());
+        var month = String.format("%02d", date.getMonthValue());
+        var year = String.format("%04d", date.getYear());
+        plan.sensors = Loader.await(App.loadSensorDataAsync(day, month, year));
+        plan.flightPlan = budget == null
+                ? App.planFlight(startingPoint, noFlyZonesManager, plan.sensors)
+                : App.planFlight(startingPoint, noFlyZonesManager, plan.sensors, budget);
+        plan.planned.complete(plan);
+        return plan;
+    }
+
+
+    /**
+     * Sends a plain text error response
+     *
+     * @param exchange The HTTP exchange
+     * @param status The HTTP status code
+     * @param message The error message
+     * @throws IOException If the response cannot be written
+     */
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        var body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+
+    /**
+     * Parses the parameters of a query string
+     *
+     * @param rawQuery The raw query string, may be null
+     * @return <code>Map&lt;String, String&gt;</code> The decoded parameters, by name
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        var query = new HashMap<String, String>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (var parameter : rawQuery.split("&")) {
+            var separator = parameter.indexOf('=');
+            if (separator > 0) {
+                query.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+
+    /**
+     * Get a required parameter
+     *
+     * @param query The parameters
+     * @param name The name of the parameter
+     * @return String The value of the parameter
+     */
+    private static String require(Map<String, String> query, String name) {
+        var value = query.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+
+    /**
+     * This class is a plan shared between the requests with the same parameters
+     */
+    private static final class SharedPlan {
+        /** Instance attributes */
+        private final long created = System.nanoTime();
+        // Completed once the plan is filled in, or failed
+        private final CompletableFuture<SharedPlan> planned = new CompletableFuture<>();
+        private Set<Sensor> sensors;
+        private FlightPlan flightPlan;
+
+        /**
+         * Checks if the plan is too old to be shared, as the sensors may have changed since
+         *
+         * @return boolean Whether the plan is older than SHARED_PLAN_NANOS
+         */
+        private boolean isExpired() {
+            return System.nanoTime() - created > SHARED_PLAN_NANOS;
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * This class is a two-tier cache for the network resources loaded by the {@link Loader}.
+ * The first tier is an in-memory LRU map, the second one is a content-addressed
+ * directory on disk, where every entry is stored under the SHA-256 of its key.
+ *
+ * Entries are fresh for a given time-to-live. Stale entries keep their
+ * <code>ETag</code> and <code>Last-Modified</code> validators, so the caller can
+ * revalidate them with the server instead of downloading them again.
+ * The metadata of an entry holds the hash of its body, so a body and metadata written
+ * for different versions of a resource are never read together.
+ * The cache is best-effort: disk errors are treated as misses.
+ */
+public class ResourceCache {
+    /** Default location and time-to-live of the cache */
+    public static final Path DEFAULT_DIRECTORY = Path.of(System.getProperty("user.home"), ".cache", "aqmaps");
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofDays(1);
+    /** Default number of entries kept in memory */
+    public static final int DEFAULT_MEMORY_ENTRIES = 256;
+
+    /** Names of the metadata properties */
+    private static final String FETCHED_AT = "fetched-at";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "last-modified";
+    private static final String BODY_HASH = "body-sha256";
+
+    /** Instance attributes */
+    private final Path directory;
+    private final Duration timeToLive;
+    private final Map<String, CachedResource> memory;
+
+    /**
+     * Class constructor, keeping the default number of entries in memory.
+     * The directory is created lazily, on the first write.
+     *
+     * @param directory The directory to store the entries in
+     * @param timeToLive How long an entry is fresh for after being fetched or revalidated
+     */
+    public ResourceCache(Path directory, Duration timeToLive) {
+        this(directory, timeToLive, DEFAULT_MEMORY_ENTRIES);
+    }
+
+
+    /**
+     * Class constructor.
+     * The directory is created lazily, on the first write.
+     *
+     * @param directory The directory to store the entries in
+     * @param timeToLive How long an entry is fresh for after being fetched or revalidated
+     * @param memoryEntries The number of entries kept in memory
+     */
+    public ResourceCache(Path directory, Duration timeToLive, int memoryEntries) {
+        if (memoryEntries < 1) {
+            throw new IllegalArgumentException("The cache must keep at least one entry in memory");
+        }
+        this.directory = Objects.requireNonNull(directory);
+        this.timeToLive = Objects.requireNonNull(timeToLive);
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResource> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+    }
+
+
+    /**
+     * Get an entry, fresh or stale.
+     * Looks in memory first, then on disk.
+     *
+     * @param key The key of the resource, e.g. its URI
+     * @return <code>Optional&lt;CachedResource&gt;</code> The entry, empty if not cached
+     */
+    public Optional<CachedResource> get(String key) {
+        synchronized (memory) {
+            var entry = memory.get(key);
+            if (entry != null) {
+                return Optional.of(entry);
+            }
+        }
+        var entry = readFromDisk(key);
+        entry.ifPresent(resource -> remember(key, resource));
+        return entry;
+    }
+
+
+    /**
+     * Get an entry only if it is still fresh
+     *
+     * @param key The key of the resource
+     * @return <code>Optional&lt;CachedResource&gt;</code> The fresh entry, empty if missing or stale
+     */
+    public Optional<CachedResource> getFresh(String key) {
+        return get(key).filter(this::isFresh);
+    }
+
+
+    /**
+     * Checks if an entry is still fresh, i.e. it was fetched or revalidated within the time-to-live
+     *
+     * @param resource The entry
+     * @return boolean Whether the entry is fresh
+     */
+    public boolean isFresh(CachedResource resource) {
+        return resource.getFetchedAt().plus(timeToLive).isAfter(Instant.now());
+    }
+
+
+    /**
+     * Stores a resource just fetched from the server.
+     *
+     * @param key The key of the resource
+     * @param body The content of the resource
+     * @param etag The ETag validator of the response, may be null
+     * @param lastModified The Last-Modified validator of the response, may be null
+     * @return CachedResource The new entry
+     */
+    public CachedResource put(String key, String body, String etag, String lastModified) {
+        var resource = new CachedResource(body, etag, lastModified, Instant.now());
+        remember(key, resource);
+        writeToDisk(key, resource);
+        return resource;
+    }
+
+
+    /**
+     * Marks an entry as fresh again, after the server confirmed it did not change.
+     *
+     * @param key The key of the resource
+     * @param resource The stale entry
+     * @return CachedResource The revalidated entry
+     */
+    public CachedResource revalidated(String key, CachedResource resource) {
+        return put(key, resource.getBody(), resource.getEtag().orElse(null), resource.getLastModified().orElse(null));
+    }
+
+
+    /**
+     * Adds an entry to the in-memory tier
+     *
+     * @param key The key of the resource
+     * @param resource The entry
+     */
+    private void remember(String key, CachedResource resource) {
+        synchronized (memory) {
+            memory.put(key, resource);
+        }
+    }
+
+
+    /**
+     * Reads an entry from the disk tier
+     *
+     * @param key The key of the resource
+     * @return <code>Optional&lt;CachedResource&gt;</code> The entry, empty if missing, unreadable,
+     *                                            or if its body and metadata do not match
+     */
+    private Optional<CachedResource> readFromDisk(String key) {
+        var hash = hash(key);
+        var bodyFile = directory.resolve(hash + ".body");
+        var metaFile = directory.resolve(hash + ".meta");
+        if (!Files.isRegularFile(bodyFile) || !Files.isRegularFile(metaFile)) {
+            return Optional.empty();
+        }
+        try (Reader metaReader = Files.newBufferedReader(metaFile, StandardCharsets.UTF_8)) {
+            var meta = new Properties();
+            meta.load(metaReader);
+            var body = Files.readString(bodyFile, StandardCharsets.UTF_8);
+            if (!hash(body).equals(meta.getProperty(BODY_HASH))) {
+                // The body of another version, left by a writer that did not finish
+                return Optional.empty();
+            }
+            var fetchedAt = Instant.ofEpochMilli(Long.parseLong(meta.getProperty(FETCHED_AT)));
+            return Optional.of(new CachedResource(body, meta.getProperty(ETAG), meta.getProperty(LAST_MODIFIED), fetchedAt));
+        } catch (IOException | RuntimeException exception) {
+            // A corrupted entry is a miss, it will be overwritten
+            return Optional.empty();
+        }
+    }
+
+
+    /**
+     * Writes an entry to the disk tier.
+     * Files are written to a temporary file first, then moved in place,
+     * so concurrent readers never see a partial file. The body is moved first and the
+     * metadata last: until both are in place, the hash in the metadata does not match
+     * the body, and the entry is a miss.
+     *
+     * @param key The key of the resource
+     * @param resource The entry
+     */
+    private void writeToDisk(String key, CachedResource resource) {
+        var hash = hash(key);
+        Path bodyFile = null;
+        Path metaFile = null;
+        try {
+            Files.createDirectories(directory);
+            var meta = new Properties();
+            meta.setProperty("key", key);
+            meta.setProperty(FETCHED_AT, String.valueOf(resource.getFetchedAt().toEpochMilli()));
+            resource.getEtag().ifPresent(etag -> meta.setProperty(ETAG, etag));
+            resource.getLastModified().ifPresent(lastModified -> meta.setProperty(LAST_MODIFIED, lastModified));
+            meta.setProperty(BODY_HASH, hash(resource.getBody()));
+
+            bodyFile = Files.createTempFile(directory, hash, ".tmp");
+            Files.writeString(bodyFile, resource.getBody(), StandardCharsets.UTF_8);
+            metaFile = Files.createTempFile(directory, hash, ".tmp");
+            try (Writer metaWriter = Files.newBufferedWriter(metaFile, StandardCharsets.UTF_8)) {
+                meta.store(metaWriter, null);
+            }
+            Files.move(bodyFile, directory.resolve(hash + ".body"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(metaFile, directory.resolve(hash + ".meta"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            // The cache is best-effort, the entry is still kept in memory.
+            // The temporary files not moved in place are never left behind
+            for (var file : new Path[] { bodyFile, metaFile }) {
+                if (file != null) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException deleteException) {
+                        // Nothing else can be done
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Generates the content address of a key
+     *
+     * @param key The key of the resource
+     * @return String The hex SHA-256 of the key
+     */
+    static String hash(String key) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            var hex = new StringBuilder();
+            for (var b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException exception) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+
+    /**
+     * This class represents a single cached resource, with its validators.
+     */
+    public static class CachedResource {
+        /** Instance attributes */
+        private final String body;
+        private final String etag;
+        private final String lastModified;
+        private final Instant fetchedAt;
+
+        /**
+         * Class constructor
+         *
+         * @param body The content of the resource
+         * @param etag The ETag validator, may be null
+         * @param lastModified The Last-Modified validator, may be null
+         * @param fetchedAt When the resource was last fetched or revalidated
+         */
+        private CachedResource(String body, String etag, String lastModified, Instant fetchedAt) {
+            this.body = Objects.requireNonNull(body);
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAt = Objects.requireNonNull(fetchedAt);
+        }
+
+        /**
+         * Getter for body
+         *
+         * @return String The content of the resource
+         */
+        public String getBody() {
+            return body;
+        }
+
+        /**
+         * Getter for etag
+         *
+         * @return <code>Optional&lt;String&gt;</code> The ETag validator
+         */
+        public Optional<String> getEtag() {
+            return Optional.ofNullable(etag);
+        }
+
+        /**
+         * Getter for lastModified
+         *
+         * @return <code>Optional&lt;String&gt;</code> The Last-Modified validator
+         */
+        public Optional<String> getLastModified() {
+            return Optional.ofNullable(lastModified);
+        }
+
+        /**
+         * Getter for fetchedAt
+         *
+         * @return Instant When the resource was last fetched or revalidated
+         */
+        public Instant getFetchedAt() {
+            return fetchedAt;
+        }
+    }
+}
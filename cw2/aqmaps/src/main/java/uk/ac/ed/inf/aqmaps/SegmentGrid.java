@@ -0,0 +1,217 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class is a uniform-grid spatial index over line segments.
+ * It is bulk-loaded once with the boundaries of all the {@link NoFlyZone}s,
+ * so that a move only needs to be tested against the segments in the cells its
+ * bounding box overlaps, instead of every boundary in the map.
+ * Queries run on the primitive {@link Geometry} kernel and never allocate.
+ */
+public class SegmentGrid {
+    /** Average number of segments per cell the grid is sized for */
+    private static final int SEGMENTS_PER_CELL = 2;
+    /** Maximum number of cells along each axis */
+    private static final int MAX_CELLS_PER_AXIS = 1024;
+
+    /** Segment end-points, one entry per segment */
+    private final double[] x1;
+    private final double[] y1;
+    private final double[] x2;
+    private final double[] y2;
+
+    /** Grid geometry */
+    private final double minX;
+    private final double minY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+    // The indices of the segments overlapping each cell, cells are stored row by row
+    private final int[][] cells;
+
+    /**
+     * Class constructor.
+     * Bulk-loads the boundaries of the zones into a grid covering their bounding box.
+     *
+     * @param zones The zones whose boundaries are indexed
+     */
+    public SegmentGrid(Collection<NoFlyZone> zones) {
+        var n = 0;
+        for (var zone : zones) {
+            n += zone.getPackedXs().length - 1;
+        }
+        x1 = new double[n];
+        y1 = new double[n];
+        x2 = new double[n];
+        y2 = new double[n];
+
+        // Copy the boundaries, and compute the bounding box
+        var minX = Double.POSITIVE_INFINITY;
+        var minY = Double.POSITIVE_INFINITY;
+        var maxX = Double.NEGATIVE_INFINITY;
+        var maxY = Double.NEGATIVE_INFINITY;
+        var i = 0;
+        for (var zone : zones) {
+            var xs = zone.getPackedXs();
+            var ys = zone.getPackedYs();
+            for (int vertex = 0; vertex < xs.length - 1; vertex++, i++) {
+                x1[i] = xs[vertex];
+                y1[i] = ys[vertex];
+                x2[i] = xs[vertex + 1];
+                y2[i] = ys[vertex + 1];
+                minX = Math.min(minX, Math.min(x1[i], x2[i]));
+                minY = Math.min(minY, Math.min(y1[i], y2[i]));
+                maxX = Math.max(maxX, Math.max(x1[i], x2[i]));
+                maxY = Math.max(maxY, Math.max(y1[i], y2[i]));
+            }
+        }
+        if (n == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+
+        // Size the grid so that each cell holds a few segments on average
+        var cellsPerAxis = (int) Math.ceil(Math.sqrt((double) n / SEGMENTS_PER_CELL));
+        cellsPerAxis = Math.max(1, Math.min(MAX_CELLS_PER_AXIS, cellsPerAxis));
+        this.minX = minX;
+        this.minY = minY;
+        this.columns = cellsPerAxis;
+        this.rows = cellsPerAxis;
+        // Avoid empty cells for degenerate (e.g. perfectly horizontal) bounding boxes
+        this.cellWidth = Math.max(maxX - minX, Double.MIN_NORMAL) / columns;
+        this.cellHeight = Math.max(maxY - minY, Double.MIN_NORMAL) / rows;
+
+        // Add every segment to all the cells overlapped by its bounding box
+        var buckets = new ArrayList<List<Integer>>();
+        for (int cell = 0; cell < columns * rows; cell++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (int segment = 0; segment < n; segment++) {
+            var fromColumn = column(Math.min(x1[segment], x2[segment]));
+            var toColumn = column(Math.max(x1[segment], x2[segment]));
+            var fromRow = row(Math.min(y1[segment], y2[segment]));
+            var toRow = row(Math.max(y1[segment], y2[segment]));
+            for (int row = fromRow; row <= toRow; row++) {
+                for (int column = fromColumn; column <= toColumn; column++) {
+                    buckets.get(row * columns + column).add(segment);
+                }
+            }
+        }
+        cells = new int[buckets.size()][];
+        for (int cell = 0; cell < buckets.size(); cell++) {
+            cells[cell] = buckets.get(cell).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+
+    /**
+     * Checks if a move intersects any of the indexed segments.
+     * Only the segments in the cells overlapped by the move bounding box are tested.
+     *
+     * @param move The move to be checked
+     * @return boolean Whether the move intersects a segment
+     */
+    public boolean intersects(Line2D move) {
+        return intersects(move.getX1(), move.getY1(), move.getX2(), move.getY2());
+    }
+
+
+    /**
+     * Checks if a move from (moveX1, moveY1) to (moveX2, moveY2) intersects any of the indexed segments.
+     *
+     * @param moveX1 X of the start of the move
+     * @param moveY1 Y of the start of the move
+     * @param moveX2 X of the end of the move
+     * @param moveY2 Y of the end of the move
+     * @return boolean Whether the move intersects a segment
+     */
+    public boolean intersects(double moveX1, double moveY1, double moveX2, double moveY2) {
+        var moveMinX = Math.min(moveX1, moveX2);
+        var moveMaxX = Math.max(moveX1, moveX2);
+        var moveMinY = Math.min(moveY1, moveY2);
+        var moveMaxY = Math.max(moveY1, moveY2);
+
+        var fromColumn = column(moveMinX);
+        var toColumn = column(moveMaxX);
+        var fromRow = row(moveMinY);
+        var toRow = row(moveMaxY);
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int column = fromColumn; column <= toColumn; column++) {
+                for (var segment : cells[row * columns + column]) {
+                    // Cheap bounding-box rejection before the exact test
+                    if (Math.max(x1[segment], x2[segment]) < moveMinX || Math.min(x1[segment], x2[segment]) > moveMaxX
+                            || Math.max(y1[segment], y2[segment]) < moveMinY || Math.min(y1[segment], y2[segment]) > moveMaxY) {
+                        continue;
+                    }
+                    if (Geometry.segmentsIntersect(x1[segment], y1[segment], x2[segment], y2[segment],
+                            moveX1, moveY1, moveX2, moveY2)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Checks the moves of a given length from (x, y) in every direction at once.
+     * Each segment near the start is visited once for all the directions.
+     *
+     * @param x X of the start of the moves
+     * @param y Y of the start of the moves
+     * @param length The length of the moves
+     * @return long The mask of legal directions, bit i set if direction i is legal
+     * @see Geometry#blockedDirections
+     */
+    public long legalDirections(double x, double y, double length) {
+        // All the moves are within the square of side 2 * length around the start
+        var legal = Geometry.ALL_DIRECTIONS;
+        var fromColumn = column(x - length);
+        var toColumn = column(x + length);
+        var fromRow = row(y - length);
+        var toRow = row(y + length);
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int column = fromColumn; column <= toColumn; column++) {
+                for (var segment : cells[row * columns + column]) {
+                    if (legal == 0) {
+                        return legal;
+                    }
+                    if (Math.max(x1[segment], x2[segment]) < x - length || Math.min(x1[segment], x2[segment]) > x + length
+                            || Math.max(y1[segment], y2[segment]) < y - length || Math.min(y1[segment], y2[segment]) > y + length) {
+                        continue;
+                    }
+                    legal &= ~Geometry.blockedDirections(x, y, length, legal,
+                            x1[segment], y1[segment], x2[segment], y2[segment]);
+                }
+            }
+        }
+        return legal;
+    }
+
+
+    /**
+     * Get the column of the cell containing an X coordinate, clamped to the grid
+     *
+     * @param x The X coordinate
+     * @return int The column index
+     */
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - minX) / cellWidth)));
+    }
+
+
+    /**
+     * Get the row of the cell containing a Y coordinate, clamped to the grid
+     *
+     * @param y The Y coordinate
+     * @return int The row index
+     */
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / cellHeight)));
+    }
+}
@@ -3,13 +3,15 @@ package uk.ac.ed.inf.aqmaps;
 import com.mapbox.geojson.Feature;
 
 import java.awt.geom.Point2D;
+import java.io.IOException;
 
 import static uk.ac.ed.inf.aqmaps.Utils.point2dToPoint;
 
 /**
  * This class represents a Sensor.
- * It includes methods to visit it, as well as to generate a GeoJson representation of it.
+ * It includes methods to generate a GeoJson representation of it.
  * This uses the {@link DataPoint} class to generate an appropriate marker.
+ * Visits are recorded in the {@link FlightPlan}, so a Sensor can be shared between planners.
  */
 public class Sensor {
     /** Instance attributes for the sensor */
@@ -17,7 +19,6 @@ public class Sensor {
     private final String location;
     private final double battery;
     private final String reading;
-    private boolean visited;
 
     /**
      * Class constructor
@@ -26,22 +27,13 @@ public class Sensor {
      * @param location The What3Words location of the sensor
      * @param battery The battery reading of the sensor
      * @param reading The value reading of the sensor
-     * @param visited Whether the sensor was visited
      */
-    public Sensor(Point2D coordinates, String location, double battery, String reading, boolean visited) {
-        // This constructor is never called, as sensors are generated by Gson
+    public Sensor(Point2D coordinates, String location, double battery, String reading) {
+        // The coordinates are null when read from the day data, see SensorAdapters
         this.coordinates = coordinates;
         this.location = location;
         this.battery = battery;
         this.reading = reading;
-        this.visited = visited;
-    }
-
-    /**
-     * Method to visit this sensor.
-     */
-    public void visit() {
-        this.visited = true;
     }
 
 
@@ -49,9 +41,10 @@ public class Sensor {
      * Method to generate a GeoJson feature representing the sensor.
      * The attributes for the marker are generated from {@link DataPoint}
      *
+     * @param visited Whether the sensor was visited
      * @return Feature The sensor feature.
      */
-    public Feature toGeoJsonFeature() {
+    public Feature toGeoJsonFeature(boolean visited) {
         // Instanciate a new appropriate DataPoint
         var data = new DataPoint(reading.equals("null") ? 0 : Double.parseDouble(reading), battery <= 10, visited);
 
@@ -65,6 +58,26 @@ public class Sensor {
     }
 
 
+    /**
+     * Method to stream the GeoJson feature representing the sensor.
+     * Writes the same feature as {@link #toGeoJsonFeature}, without building it in memory.
+     *
+     * @param json The GeoJson encoder to write to
+     * @param visited Whether the sensor was visited
+     * @throws IOException If the output cannot be written
+     */
+    public void writeGeoJsonFeature(GeoJsonWriter json, boolean visited) throws IOException {
+        var data = new DataPoint(reading.equals("null") ? 0 : Double.parseDouble(reading), battery <= 10, visited);
+
+        json.beginPoint(coordinates.getX(), coordinates.getY());
+        json.property("location", location);
+        json.property("marker-symbol", data.getMarkerSymbol());
+        json.property("marker-color", data.getRgbString());
+        json.property("rgb-string", data.getRgbString());
+        json.endPoint();
+    }
+
+
     /**
      * Method to set the coordinates of the sensor
      *
@@ -93,4 +106,24 @@ public class Sensor {
     public String getLocation() {
         return location;
     }
+
+
+    /**
+     * Method to get the battery reading of the sensor
+     *
+     * @return double The battery reading of the sensor
+     */
+    public double getBattery() {
+        return battery;
+    }
+
+
+    /**
+     * Method to get the value reading of the sensor
+     *
+     * @return String The value reading of the sensor, "null" if the reading is not valid
+     */
+    public String getReading() {
+        return reading;
+    }
 }
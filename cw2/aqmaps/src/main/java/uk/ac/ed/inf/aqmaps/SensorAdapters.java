@@ -0,0 +1,240 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * This class holds the hand-written Gson TypeAdapters for the sensor data of the server:
+ * the sensors of a day, and the details of a What3Words location.
+ *
+ * The data is read token by token with a {@link JsonReader}, straight from the response
+ * of the server, so no intermediate String or JSON tree is built, and nothing is set
+ * through reflection. Unknown fields are skipped, and the values are read with the same
+ * leniency as the reflective Gson adapters: numbers may be quoted, and a missing or
+ * null number is 0.
+ */
+public final class SensorAdapters {
+    /** Adapter for a single sensor of the day data */
+    public static final TypeAdapter<Sensor> SENSOR = new SensorAdapter();
+    /** Adapter for the details of a location, read as its coordinates */
+    public static final TypeAdapter<Point2D> DETAILS = new DetailsAdapter();
+
+    /**
+     * Utility class, not to be instantiated
+     */
+    private SensorAdapters() {
+    }
+
+
+    /**
+     * Reads the sensors of a day. The JSON is an array of sensors,
+     * their order is kept as Gson would for a Set.
+     *
+     * @param in The JSON of the day data
+     * @return <code>Set&lt;Sensor&gt;</code> The sensors, without coordinates
+     * @throws IOException If the JSON cannot be read
+     */
+    public static Set<Sensor> readSensors(Reader in) throws IOException {
+        var reader = new JsonReader(in);
+        var sensors = new LinkedHashSet<Sensor>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            sensors.add(SENSOR.read(reader));
+        }
+        reader.endArray();
+        return sensors;
+    }
+
+
+    /**
+     * Reads the coordinates of a location from its details
+     *
+     * @param in The JSON of the details
+     * @return Point2D The coordinates of the location
+     * @throws IOException If the JSON cannot be read, or has no coordinates
+     */
+    public static Point2D readCoordinates(Reader in) throws IOException {
+        return DETAILS.read(new JsonReader(in));
+    }
+
+
+    /**
+     * Reads a string value. Numbers and booleans are read as their text.
+     *
+     * @param reader The reader, before the value
+     * @return String The value, null for a JSON null
+     * @throws IOException If the value cannot be read
+     */
+    private static String readString(JsonReader reader) throws IOException {
+        var token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(reader.nextBoolean());
+        }
+        return reader.nextString();
+    }
+
+
+    /**
+     * Reads a number value
+     *
+     * @param reader The reader, before the value
+     * @return double The value, 0 for a JSON null
+     * @throws IOException If the value cannot be read
+     */
+    private static double readDouble(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+        return reader.nextDouble();
+    }
+
+
+    /**
+     * TypeAdapter for a sensor: <code>{"location": ..., "battery": ..., "reading": ...}</code>.
+     * The coordinates are not part of the day data, they are set from the details.
+     */
+    private static final class SensorAdapter extends TypeAdapter<Sensor> {
+        /**
+         * Writes a sensor as in the day data
+         *
+         * @param out The writer
+         * @param sensor The sensor, may be null
+         * @throws IOException If the sensor cannot be written
+         */
+        @Override
+        public void write(JsonWriter out, Sensor sensor) throws IOException {
+            if (sensor == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("location").value(sensor.getLocation());
+            out.name("battery").value(sensor.getBattery());
+            out.name("reading").value(sensor.getReading());
+            out.endObject();
+        }
+
+
+        /**
+         * Reads a sensor
+         *
+         * @param in The reader, before the sensor
+         * @return Sensor The sensor, null for a JSON null
+         * @throws IOException If the sensor cannot be read
+         */
+        @Override
+        public Sensor read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String location = null;
+            var battery = 0.0;
+            String reading = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "location":
+                        location = readString(in);
+                        break;
+                    case "battery":
+                        battery = readDouble(in);
+                        break;
+                    case "reading":
+                        reading = readString(in);
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Sensor(null, location, battery, reading);
+        }
+    }
+
+
+    /**
+     * TypeAdapter for the details of a location, of which only
+     * <code>{"coordinates": {"lng": ..., "lat": ...}}</code> is kept.
+     */
+    private static final class DetailsAdapter extends TypeAdapter<Point2D> {
+        /**
+         * Writes the coordinates as the details of a location
+         *
+         * @param out The writer
+         * @param coordinates The coordinates, may be null
+         * @throws IOException If the coordinates cannot be written
+         */
+        @Override
+        public void write(JsonWriter out, Point2D coordinates) throws IOException {
+            if (coordinates == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("coordinates").beginObject();
+            out.name("lng").value(coordinates.getX());
+            out.name("lat").value(coordinates.getY());
+            out.endObject();
+            out.endObject();
+        }
+
+
+        /**
+         * Reads the coordinates from the details of a location
+         *
+         * @param in The reader, before the details
+         * @return Point2D The coordinates, with the longitude as x
+         * @throws IOException If the details cannot be read, or have no coordinates
+         */
+        @Override
+        public Point2D read(JsonReader in) throws IOException {
+            Point2D coordinates = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!in.nextName().equals("coordinates")) {
+                    in.skipValue();
+                    continue;
+                }
+                Double lng = null;
+                Double lat = null;
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "lng":
+                            lng = in.nextDouble();
+                            break;
+                        case "lat":
+                            lat = in.nextDouble();
+                            break;
+                        default:
+                            in.skipValue();
+                    }
+                }
+                in.endObject();
+                if (lng == null || lat == null) {
+                    throw new IOException("Incomplete coordinates at " + in.getPath());
+                }
+                coordinates = new Point2D.Double(lng, lat);
+            }
+            in.endObject();
+            if (coordinates == null) {
+                throw new IOException("No coordinates in the details");
+            }
+            return coordinates;
+        }
+    }
+}
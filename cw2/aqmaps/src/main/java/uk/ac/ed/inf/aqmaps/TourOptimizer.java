@@ -0,0 +1,23 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This interface represents the tour-ordering stage of the {@link Drone}.
+ * Given the starting point and the sensors to visit, it decides the order
+ * in which the Drone flies to them, before any step is planned.
+ */
+public interface TourOptimizer {
+    /**
+     * Generate a visiting order over all the sensors.
+     * The tour is closed, i.e. the drone returns to <code>startingPoint</code>
+     * after the last sensor, and this should be considered in the ordering.
+     *
+     * @param startingPoint The starting (and ending) point of the tour
+     * @param sensors The sensors to be visited
+     * @return <code>List&lt;Sensor&gt;</code> The sensors, in visiting order
+     */
+    List<Sensor> optimise(Point2D startingPoint, Collection<Sensor> sensors);
+}
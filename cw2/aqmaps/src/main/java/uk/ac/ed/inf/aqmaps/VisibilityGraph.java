@@ -0,0 +1,436 @@
+package uk.ac.ed.inf.aqmaps;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+
+/**
+ * This class represents the visibility graph of a map.
+ * Its nodes are the convex corners of the {@link NoFlyZone}s, pushed slightly
+ * outwards so the drone can fly past them, and its edges connect the pairs of
+ * nodes that can see each other (i.e. the straight line is a legal move).
+ * Only the edges tangent to the zones at both ends are kept: a shortest path
+ * only bends around the corners it wraps, so it never follows an edge cutting
+ * between the two sides of a corner. Most pairs fail this test, which is much
+ * cheaper than the visibility one.
+ *
+ * The graph is built once per {@link NoFlyZonesManager}, and answers
+ * point-to-point shortest-path queries with A*. When zones are added or removed,
+ * the graph is updated incrementally, see {@link #withChanges}.
+ */
+public class VisibilityGraph {
+    /** Distance the corners are pushed outwards from the zones */
+    private static final double CORNER_CLEARANCE = 0.0001;
+
+    /** Instance attributes */
+    private final NoFlyZonesManager noFlyZonesManager;
+    private final List<Point2D> nodes = new ArrayList<>();
+    // The zone each node is a corner of
+    private final List<NoFlyZone> nodeZones = new ArrayList<>();
+    // The corners before and after each node on its zone, offset when they are nodes too
+    private final List<Point2D[]> nodeSides = new ArrayList<>();
+    // Adjacency lists in increasing order, with the edge lengths stored alongside the neighbours
+    private final int[][] neighbours;
+    private final double[][] edgeLengths;
+
+    /**
+     * Class constructor.
+     * Generates the nodes from the zones corners, and connects the visible ones
+     * whose edge is tangent at both ends.
+     *
+     * @param noFlyZonesManager The map to build the graph for
+     * @param zones The zones whose corners are the nodes of the graph
+     */
+    public VisibilityGraph(NoFlyZonesManager noFlyZonesManager, Collection<NoFlyZone> zones) {
+        this.noFlyZonesManager = Objects.requireNonNull(noFlyZonesManager);
+        addNodes(Objects.requireNonNull(zones));
+
+        // Connect the pairs of nodes that can see each other along a tangent edge
+        var n = nodes.size();
+        var adjacency = emptyAdjacency(n);
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (isTangent(i, j) && isVisible(nodes.get(i), nodes.get(j))) {
+                    adjacency.get(i).add(j);
+                    adjacency.get(j).add(i);
+                }
+            }
+        }
+        neighbours = new int[n][];
+        edgeLengths = new double[n][];
+        packAdjacency(adjacency);
+    }
+
+
+    /**
+     * Class constructor for a changed map, reusing the visibility of a previous graph.
+     * An edge between two nodes of the previous graph is only tested against the
+     * added zones, and a missing edge only if a removed zone was in the way.
+     * Only the pairs involving new nodes are fully tested.
+     *
+     * @param noFlyZonesManager The changed map
+     * @param zones The zones whose corners are the nodes of the graph
+     * @param previous The graph of the map before the changes
+     * @param added The zones added to the map
+     * @param removed The zones removed from the map
+     */
+    private VisibilityGraph(NoFlyZonesManager noFlyZonesManager, Collection<NoFlyZone> zones, VisibilityGraph previous,
+                            Collection<NoFlyZone> added, Collection<NoFlyZone> removed) {
+        this.noFlyZonesManager = noFlyZonesManager;
+        addNodes(zones);
+
+        // Match the nodes to those of the previous graph: same zone, same position
+        var previousByZone = new HashMap<NoFlyZone, List<Integer>>();
+        for (int i = 0; i < previous.nodes.size(); i++) {
+            previousByZone.computeIfAbsent(previous.nodeZones.get(i), zone -> new ArrayList<>()).add(i);
+        }
+        var n = nodes.size();
+        var previousIndex = new int[n];
+        Arrays.fill(previousIndex, -1);
+        for (int i = 0; i < n; i++) {
+            for (var candidate : previousByZone.getOrDefault(nodeZones.get(i), List.of())) {
+                if (previous.nodes.get(candidate).equals(nodes.get(i))) {
+                    previousIndex[i] = candidate;
+                }
+            }
+        }
+
+        var adjacency = emptyAdjacency(n);
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                if (!isTangent(i, j)) {
+                    continue;
+                }
+                var from = nodes.get(i);
+                var to = nodes.get(j);
+                boolean visible;
+                if (previousIndex[i] != -1 && previousIndex[j] != -1) {
+                    // Removing zones cannot block an edge, adding them cannot unblock one
+                    visible = previous.isNeighbour(previousIndex[i], previousIndex[j])
+                            ? !crossesAny(added, from, to)
+                            : crossesAny(removed, from, to) && isVisible(from, to);
+                } else {
+                    visible = isVisible(from, to);
+                }
+                if (visible) {
+                    adjacency.get(i).add(j);
+                    adjacency.get(j).add(i);
+                }
+            }
+        }
+        neighbours = new int[n][];
+        edgeLengths = new double[n][];
+        packAdjacency(adjacency);
+    }
+
+
+    /**
+     * Generates the graph of a changed map, reusing the visibility computed for this one.
+     *
+     * @param noFlyZonesManager The changed map
+     * @param zones All the zones whose corners are the nodes of the graph, after the changes
+     * @param added The zones added to the map
+     * @param removed The zones removed from the map
+     * @return VisibilityGraph The graph of the changed map
+     */
+    public VisibilityGraph withChanges(NoFlyZonesManager noFlyZonesManager, Collection<NoFlyZone> zones,
+                                       Collection<NoFlyZone> added, Collection<NoFlyZone> removed) {
+        return new VisibilityGraph(Objects.requireNonNull(noFlyZonesManager), Objects.requireNonNull(zones),
+                this, Objects.requireNonNull(added), Objects.requireNonNull(removed));
+    }
+
+
+    /**
+     * Generates the nodes from the corners of the zones, keeping only those in a legal position
+     *
+     * @param zones The zones whose corners are the nodes of the graph
+     */
+    private void addNodes(Collection<NoFlyZone> zones) {
+        for (var zone : zones) {
+            var coordinates = zone.getCoordinates();
+            var corners = offsetCorners(zone);
+            var n = corners.size();
+            for (int i = 0; i < n; i++) {
+                var corner = corners.get(i);
+                if (corner == null || !noFlyZonesManager.isLegalPosition(corner)) {
+                    continue;
+                }
+                var previous = (i + n - 1) % n;
+                var next = (i + 1) % n;
+                nodes.add(corner);
+                nodeZones.add(zone);
+                nodeSides.add(new Point2D[] {
+                        corners.get(previous) == null ? coordinates.get(previous) : corners.get(previous),
+                        corners.get(next) == null ? coordinates.get(next) : corners.get(next) });
+            }
+        }
+    }
+
+
+    /**
+     * Generates empty adjacency lists
+     *
+     * @param n The number of nodes
+     * @return <code>List&lt;List&lt;Integer&gt;&gt;</code> One empty list per node
+     */
+    private static List<List<Integer>> emptyAdjacency(int n) {
+        var adjacency = new ArrayList<List<Integer>>();
+        for (int i = 0; i < n; i++) {
+            adjacency.add(new ArrayList<>());
+        }
+        return adjacency;
+    }
+
+
+    /**
+     * Packs the adjacency lists into the neighbours and edge lengths arrays
+     *
+     * @param adjacency The adjacency lists, in increasing order
+     */
+    private void packAdjacency(List<List<Integer>> adjacency) {
+        var n = nodes.size();
+        for (int i = 0; i < n; i++) {
+            var list = adjacency.get(i);
+            neighbours[i] = new int[list.size()];
+            edgeLengths[i] = new double[list.size()];
+            for (int k = 0; k < list.size(); k++) {
+                neighbours[i][k] = list.get(k);
+                edgeLengths[i][k] = nodes.get(i).distance(nodes.get(list.get(k)));
+            }
+        }
+    }
+
+
+    /**
+     * Finds the shortest obstacle-free path between two points.
+     * The path is returned as a list of waypoints, excluding <code>start</code>
+     * and ending with <code>target</code>.
+     *
+     * @param start The starting point
+     * @param target The target point
+     * @return <code>Optional&lt;List&lt;Point2D&gt;&gt;</code> The waypoints. Empty if the target is unreachable
+     */
+    public Optional<List<Point2D>> shortestPath(Point2D start, Point2D target) {
+        // If the straight line is legal, there is no need to search
+        if (isVisible(start, target)) {
+            return Optional.of(Collections.singletonList(target));
+        }
+
+        // A* over the nodes. The start is a virtual node with index n, the target is reached
+        // from any node that can see it. Visibility to the target is computed lazily.
+        var n = nodes.size();
+        var bestCost = new double[n];
+        var parent = new int[n];
+        var closed = new boolean[n];
+        // 0 = unknown, 1 = visible, -1 = not visible
+        var seesTarget = new byte[n];
+        Arrays.fill(bestCost, Double.POSITIVE_INFINITY);
+        Arrays.fill(parent, -1);
+
+        // Queue entries are {estimated total cost, node}
+        var queue = new PriorityQueue<double[]>((a, b) -> Double.compare(a[0], b[0]));
+        for (int i = 0; i < n; i++) {
+            if (isVisible(start, nodes.get(i))) {
+                bestCost[i] = start.distance(nodes.get(i));
+                parent[i] = n;
+                queue.add(new double[] { bestCost[i] + nodes.get(i).distance(target), i });
+            }
+        }
+
+        // The best complete path found so far: its cost and last node
+        var bestPathCost = Double.POSITIVE_INFINITY;
+        var bestLastNode = -1;
+        while (!queue.isEmpty()) {
+            var entry = queue.poll();
+            // The heuristic is admissible, so no better path can be found from here on
+            if (entry[0] >= bestPathCost) {
+                break;
+            }
+            var node = (int) entry[1];
+            if (closed[node]) {
+                continue;
+            }
+            closed[node] = true;
+
+            // Check if the target can be reached straight away from this node
+            if (seesTarget[node] == 0) {
+                seesTarget[node] = (byte) (isVisible(nodes.get(node), target) ? 1 : -1);
+            }
+            if (seesTarget[node] == 1) {
+                var cost = bestCost[node] + nodes.get(node).distance(target);
+                if (cost < bestPathCost) {
+                    bestPathCost = cost;
+                    bestLastNode = node;
+                }
+            }
+
+            // Relax the edges to the neighbours
+            for (int k = 0; k < neighbours[node].length; k++) {
+                var next = neighbours[node][k];
+                var cost = bestCost[node] + edgeLengths[node][k];
+                if (!closed[next] && cost < bestCost[next]) {
+                    bestCost[next] = cost;
+                    parent[next] = node;
+                    queue.add(new double[] { cost + nodes.get(next).distance(target), next });
+                }
+            }
+        }
+
+        if (bestLastNode == -1) {
+            return Optional.empty();
+        }
+
+        // Walk back the parents to generate the waypoints
+        var path = new ArrayList<Point2D>();
+        path.add(target);
+        for (var node = bestLastNode; node != n; node = parent[node]) {
+            path.add(nodes.get(node));
+        }
+        Collections.reverse(path);
+        return Optional.of(path);
+    }
+
+
+    /**
+     * Get the nodes of the graph
+     *
+     * @return <code>List&lt;Point2D&gt;</code> The offset corners used as nodes
+     */
+    public List<Point2D> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+
+    /**
+     * Checks if two nodes are connected
+     *
+     * @param node1 The first node
+     * @param node2 The second node
+     * @return boolean Whether there is an edge between the nodes
+     */
+    private boolean isNeighbour(int node1, int node2) {
+        return Arrays.binarySearch(neighbours[node1], node2) >= 0;
+    }
+
+
+    /**
+     * Checks if the edge between two nodes is tangent to the zones at both ends
+     *
+     * @param node1 The first node
+     * @param node2 The second node
+     * @return boolean Whether the edge is tangent at both nodes
+     */
+    private boolean isTangent(int node1, int node2) {
+        return isTangent(node1, nodes.get(node2)) && isTangent(node2, nodes.get(node1));
+    }
+
+
+    /**
+     * Checks if the line from a node to a point is tangent to the zone of the node:
+     * the corners on either side of the node are on the same side of the line.
+     * A line along the side of a zone, to the next node, is tangent.
+     *
+     * @param node The node
+     * @param point The point
+     * @return boolean Whether both corners are on the same side of the line, or on it
+     */
+    private boolean isTangent(int node, Point2D point) {
+        var from = nodes.get(node);
+        var sides = nodeSides.get(node);
+        var dx = point.getX() - from.getX();
+        var dy = point.getY() - from.getY();
+        var side1 = dx * (sides[0].getY() - from.getY()) - dy * (sides[0].getX() - from.getX());
+        var side2 = dx * (sides[1].getY() - from.getY()) - dy * (sides[1].getX() - from.getX());
+        return side1 * side2 >= 0;
+    }
+
+
+    /**
+     * Checks if the straight line between two points crosses the boundary of any of the zones
+     *
+     * @param zones The zones
+     * @param point1 The first point
+     * @param point2 The second point
+     * @return boolean Whether a zone is in the way
+     */
+    private static boolean crossesAny(Collection<NoFlyZone> zones, Point2D point1, Point2D point2) {
+        for (var zone : zones) {
+            if (!zone.isLegalMove(point1.getX(), point1.getY(), point2.getX(), point2.getY())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Checks if two points can see each other, i.e. the straight line between them is a legal move
+     *
+     * @param point1 The first point
+     * @param point2 The second point
+     * @return boolean Whether the straight line is legal
+     */
+    private boolean isVisible(Point2D point1, Point2D point2) {
+        return noFlyZonesManager.isLegalMove(point1.getX(), point1.getY(), point2.getX(), point2.getY());
+    }
+
+
+    /**
+     * Generates the convex corners of a zone, pushed outwards by {@link #CORNER_CLEARANCE}.
+     * Concave corners are never part of a shortest path, so they are skipped.
+     *
+     * @param zone The zone
+     * @return <code>List&lt;Point2D&gt;</code> The offset corners, one per corner of the zone, null for the concave ones
+     */
+    private static List<Point2D> offsetCorners(NoFlyZone zone) {
+        // The last coordinate repeats the first one, as in a GeoJson Polygon
+        var coordinates = zone.getCoordinates();
+        var n = coordinates.size() - 1;
+        var corners = new ArrayList<Point2D>();
+        if (n < 3) {
+            return corners;
+        }
+
+        // The sign of the area gives the orientation of the polygon
+        var area = 0.0;
+        for (int i = 0; i < n; i++) {
+            var p1 = coordinates.get(i);
+            var p2 = coordinates.get(i + 1);
+            area += p1.getX() * p2.getY() - p2.getX() * p1.getY();
+        }
+
+        for (int i = 0; i < n; i++) {
+            var previous = coordinates.get((i + n - 1) % n);
+            var corner = coordinates.get(i);
+            var next = coordinates.get(i + 1);
+
+            // A corner is convex if it turns in the same direction as the polygon orientation
+            var cross = (corner.getX() - previous.getX()) * (next.getY() - corner.getY())
+                    - (corner.getY() - previous.getY()) * (next.getX() - corner.getX());
+            if (cross * area <= 0) {
+                corners.add(null);
+                continue;
+            }
+
+            // Push the corner outwards, along the bisector of its two edges
+            var toPreviousX = (previous.getX() - corner.getX()) / previous.distance(corner);
+            var toPreviousY = (previous.getY() - corner.getY()) / previous.distance(corner);
+            var toNextX = (next.getX() - corner.getX()) / next.distance(corner);
+            var toNextY = (next.getY() - corner.getY()) / next.distance(corner);
+            var bisectorX = -(toPreviousX + toNextX);
+            var bisectorY = -(toPreviousY + toNextY);
+            var length = Math.hypot(bisectorX, bisectorY);
+            corners.add(new Point2D.Double(
+                    corner.getX() + CORNER_CLEARANCE * bisectorX / length,
+                    corner.getY() + CORNER_CLEARANCE * bisectorY / length));
+        }
+        return corners;
+    }
+}
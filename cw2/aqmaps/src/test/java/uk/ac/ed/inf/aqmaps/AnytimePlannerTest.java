@@ -0,0 +1,105 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for the {@link AnytimePlanner}
+ */
+public class AnytimePlannerTest {
+    /** Starting point of the flights */
+    private static final Point2D START = new Point2D.Double(TestMaps.CENTRE.getX() - 0.0012, TestMaps.CENTRE.getY());
+    /** Time allowed past the deadline, for the scheduling of the threads */
+    private static final long SLACK_MILLIS = 500;
+
+    /**
+     * Generates a map with a few buildings
+     *
+     * @return NoFlyZonesManager The map
+     */
+    private static NoFlyZonesManager map() {
+        var x = TestMaps.CENTRE.getX();
+        var y = TestMaps.CENTRE.getY();
+        return TestMaps.map(TestMaps.square(x, y, 0.0003), TestMaps.square(x + 0.002, y + 0.001, 0.0002),
+                TestMaps.square(x - 0.002, y - 0.0009, 0.00025));
+    }
+
+
+    /**
+     * Generates sensors over the confinement area
+     *
+     * @param map The map
+     * @param count The number of sensors
+     * @return <code>Set&lt;Sensor&gt;</code> The sensors, at legal positions
+     */
+    private static Set<Sensor> sensors(NoFlyZonesManager map, int count) {
+        var random = new Random(53);
+        var sensors = new HashSet<Sensor>();
+        while (sensors.size() < count) {
+            var coordinates = new Point2D.Double(TestMaps.CENTRE.getX() + (random.nextDouble() * 2 - 1) * 0.0038,
+                    TestMaps.CENTRE.getY() + (random.nextDouble() * 2 - 1) * 0.0017);
+            if (map.isLegalPosition(coordinates)) {
+                sensors.add(new Sensor(coordinates, "sensor." + sensors.size(), 100, "50.0"));
+            }
+        }
+        return sensors;
+    }
+
+
+    @Test
+    public void zeroBudgetReturnsTheGreedyPlan() throws InterruptedException {
+        var map = map();
+        var sensors = sensors(map, 33);
+        var pool = new ForkJoinPool(2);
+        try {
+            var planner = new AnytimePlanner(START, map, sensors, pool);
+            var plan = planner.planFlight(Duration.ZERO);
+            assertEquals(new Drone(START, map, sensors).planFlight().fileFlightPlan(), plan.fileFlightPlan());
+
+            // The variants still running stop, and none of their plans is kept
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(SLACK_MILLIS, TimeUnit.MILLISECONDS));
+            assertSame(plan, planner.getBest());
+            assertTrue(planner.isDone());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void planIsReturnedByTheDeadline() throws InterruptedException {
+        var map = map();
+        var sensors = sensors(map, 33);
+        var pool = new ForkJoinPool(2);
+        try {
+            var planner = new AnytimePlanner(START, map, sensors, true, pool);
+            var budget = Duration.ofMillis(50);
+            var started = System.nanoTime();
+            // The first plan is always planned, however long it takes
+            var first = planner.start(budget);
+            var deadline = Math.max(System.nanoTime(), started + budget.toNanos());
+            var plan = planner.await();
+            assertTrue(System.nanoTime() - deadline < TimeUnit.MILLISECONDS.toNanos(SLACK_MILLIS));
+            assertTrue(MultiStartPlanner.BEST_PLAN.compare(plan, first) <= 0);
+
+            // Once frozen, the plans offered by the variants still running are ignored
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(SLACK_MILLIS, TimeUnit.MILLISECONDS));
+            assertSame(plan, planner.getBest());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
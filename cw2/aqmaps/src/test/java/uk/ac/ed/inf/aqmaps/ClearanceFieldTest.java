@@ -0,0 +1,136 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Unit tests for the {@link ClearanceField}
+ */
+public class ClearanceFieldTest {
+    /** Number of random points and moves checked */
+    private static final int SAMPLES = 20000;
+
+    /**
+     * Generates the zones of a map with a few buildings around the centre, and the confinement area
+     *
+     * @return <code>Set&lt;NoFlyZone&gt;</code> The zones
+     */
+    private static Set<NoFlyZone> zones() {
+        var x = TestMaps.CENTRE.getX();
+        var y = TestMaps.CENTRE.getY();
+        return TestMaps.map(TestMaps.square(x, y, 0.0003), TestMaps.square(x - 0.0015, y + 0.0008, 0.0002),
+                TestMaps.square(x + 0.0012, y - 0.0006, 0.0004)).getNoFlyZones();
+    }
+
+
+    /**
+     * Generates a random point of the confinement area, with a margin outside it
+     *
+     * @param random The source of the points
+     * @return Point2D The point
+     */
+    private static Point2D randomPoint(Random random) {
+        return new Point2D.Double(-3.1926 + random.nextDouble() * 0.0084, 55.9425 + random.nextDouble() * 0.0038);
+    }
+
+
+    /**
+     * Checks if a point is in the legal area, with the exact tests of the zones
+     *
+     * @param zones The zones
+     * @param point The point
+     * @return boolean Whether the point is inside the confinement area and outside every building
+     */
+    private static boolean isLegalArea(Set<NoFlyZone> zones, Point2D point) {
+        var confinementArea = NoFlyZonesManager.getConfinementArea();
+        if (!confinementArea.contains(point)) {
+            return false;
+        }
+        for (var zone : zones) {
+            if (zone != confinementArea && zone.contains(point)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    @Test
+    public void clearMovesCrossNoBoundary() {
+        var zones = zones();
+        var field = new ClearanceField(zones, NoFlyZonesManager.getConfinementArea());
+        var boundaries = new SegmentGrid(zones);
+        var random = new Random(3);
+        var clear = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            var start = randomPoint(random);
+            var angle = random.nextDouble() * 2 * Math.PI;
+            var length = random.nextDouble() * 2 * Drone.STEP_LENGTH;
+            var endX = start.getX() + length * Math.cos(angle);
+            var endY = start.getY() + length * Math.sin(angle);
+            if (field.isClear(start.getX(), start.getY(), endX, endY)) {
+                clear++;
+                assertFalse(boundaries.intersects(start.getX(), start.getY(), endX, endY));
+            }
+        }
+        // The fast path is taken by most moves
+        assertTrue(clear > SAMPLES / 2);
+    }
+
+
+    @Test
+    public void signOfClearanceIsSideOfPoint() {
+        var zones = zones();
+        var field = new ClearanceField(zones, NoFlyZonesManager.getConfinementArea());
+        var random = new Random(5);
+        for (int i = 0; i < SAMPLES; i++) {
+            var point = randomPoint(random);
+            var clearance = field.clearance(point.getX(), point.getY());
+            if (clearance != 0) {
+                assertEquals(isLegalArea(zones, point), clearance > 0);
+            }
+        }
+    }
+
+
+    @Test
+    public void changedFieldIsTheFieldOfTheChangedMap() {
+        var zones = zones();
+        var confinementArea = NoFlyZonesManager.getConfinementArea();
+        var field = new ClearanceField(zones, confinementArea);
+
+        // A building is added, another one removed
+        var added = new NoFlyZone(TestMaps.square(TestMaps.CENTRE.getX() + 0.0002, TestMaps.CENTRE.getY() + 0.0011,
+                0.0001));
+        NoFlyZone removed = null;
+        for (var zone : zones) {
+            if (zone != confinementArea) {
+                removed = zone;
+                break;
+            }
+        }
+        var changedZones = new HashSet<>(zones);
+        changedZones.add(added);
+        changedZones.remove(removed);
+        List<NoFlyZone> changed = new ArrayList<>(List.of(added, removed));
+
+        var updated = field.withChanges(changedZones, confinementArea, changed);
+        var rebuilt = new ClearanceField(changedZones, confinementArea);
+        var random = new Random(9);
+        for (int i = 0; i < SAMPLES; i++) {
+            var point = randomPoint(random);
+            assertEquals(rebuilt.clearance(point.getX(), point.getY()), updated.clearance(point.getX(), point.getY()),
+                    0);
+        }
+    }
+}
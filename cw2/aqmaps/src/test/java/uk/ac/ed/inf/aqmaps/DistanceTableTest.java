@@ -0,0 +1,123 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for the {@link DistanceTable}
+ */
+public class DistanceTableTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Generates a map with a building in the centre
+     *
+     * @return NoFlyZonesManager The map
+     */
+    private static NoFlyZonesManager map() {
+        return TestMaps.map(TestMaps.square(TestMaps.CENTRE.getX(), TestMaps.CENTRE.getY(), 0.0003));
+    }
+
+
+    /**
+     * Generates sites around the centre, outside the building
+     *
+     * @param map The map
+     * @param count The number of sites
+     * @return <code>List&lt;Point2D&gt;</code> The sites
+     */
+    private static List<Point2D> sites(NoFlyZonesManager map, int count) {
+        var random = new Random(31);
+        var sites = new ArrayList<Point2D>();
+        while (sites.size() < count) {
+            var site = new Point2D.Double(TestMaps.CENTRE.getX() + (random.nextDouble() * 2 - 1) * 0.0015,
+                    TestMaps.CENTRE.getY() + (random.nextDouble() * 2 - 1) * 0.0015);
+            if (map.isLegalPosition(site)) {
+                sites.add(site);
+            }
+        }
+        return sites;
+    }
+
+
+    @Test
+    public void savedDistancesAreLoadedBack() throws IOException {
+        var map = map();
+        var sites = sites(map, 12);
+        var table = new DistanceTable(map);
+        table.precompute(sites);
+        var directory = folder.getRoot().toPath().resolve("distances");
+        table.save(directory);
+
+        // The sites are indexed in another order before loading, the pairs are mapped to them
+        var loaded = new DistanceTable(map);
+        loaded.distance(sites.get(5), sites.get(3));
+        loaded.load(directory);
+        assertEquals(table.size(), loaded.size());
+        for (var from : sites) {
+            for (var to : sites) {
+                assertEquals(table.distance(from, to), loaded.distance(from, to), 0);
+            }
+        }
+        // Every pair was loaded, none is computed again
+        assertEquals(table.size(), loaded.size());
+        // Only the table is left in the directory
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+
+    @Test
+    public void distancesOfAnotherMapAreNotLoaded() {
+        var map = map();
+        var table = new DistanceTable(map);
+        table.precompute(sites(map, 6));
+        var directory = folder.getRoot().toPath();
+        table.save(directory);
+
+        var other = new DistanceTable(TestMaps.map());
+        other.load(directory);
+        assertEquals(0, other.size());
+    }
+
+
+    @Test
+    public void corruptedFilesAreIgnored() throws IOException {
+        var map = map();
+        var sites = sites(map, 6);
+        var table = new DistanceTable(map);
+        table.precompute(sites);
+        var directory = folder.getRoot().toPath();
+        table.save(directory);
+        try (var files = Files.list(directory)) {
+            for (var file : files.toArray(Path[]::new)) {
+                // The header is kept, the pairs are cut off
+                var bytes = Files.readAllBytes(file);
+                Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+            }
+        }
+
+        var loaded = new DistanceTable(map);
+        loaded.load(directory);
+        // The pairs read before the end of the file may be kept, and are right
+        for (var from : sites) {
+            for (var to : sites) {
+                assertEquals(table.distance(from, to), loaded.distance(from, to), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.util.Set;
+
+/**
+ * Unit tests for the {@link Drone}
+ */
+public class DroneTest {
+    @Test
+    public void boxedInDroneEndsTheFlight() {
+        // The drone starts in a building smaller than a step, so every step crosses a boundary
+        var map = TestMaps.map(TestMaps.square(TestMaps.CENTRE.getX(), TestMaps.CENTRE.getY(), 0.0001));
+        var sensor = new Sensor(new Point2D.Double(TestMaps.CENTRE.getX() + 0.001, TestMaps.CENTRE.getY()),
+                "sensor.0", 100, "50.0");
+        var plan = new Drone(TestMaps.CENTRE, map, Set.of(sensor)).planFlight();
+        assertEquals(0, plan.getMovesCount());
+        assertEquals(0, plan.getReadingsCount());
+    }
+}
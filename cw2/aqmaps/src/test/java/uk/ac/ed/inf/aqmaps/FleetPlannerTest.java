@@ -0,0 +1,105 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Unit tests for the {@link FleetPlanner}
+ */
+public class FleetPlannerTest {
+    /** Starting point of the drones, below the building */
+    private static final Point2D START = new Point2D.Double(TestMaps.CENTRE.getX(), TestMaps.CENTRE.getY() - 0.001);
+
+    /**
+     * Generates sensors around the building in the centre
+     *
+     * @param map The map
+     * @param random The source of the positions
+     * @param count The number of sensors
+     * @param spread The largest distance from the centre
+     * @return <code>Set&lt;Sensor&gt;</code> The sensors, at legal positions
+     */
+    private static Set<Sensor> sensors(NoFlyZonesManager map, Random random, int count, double spread) {
+        var sensors = new HashSet<Sensor>();
+        while (sensors.size() < count) {
+            var coordinates = new Point2D.Double(TestMaps.CENTRE.getX() + (random.nextDouble() * 2 - 1) * spread,
+                    TestMaps.CENTRE.getY() + (random.nextDouble() * 2 - 1) * spread);
+            if (map.isLegalPosition(coordinates)) {
+                sensors.add(new Sensor(coordinates, "sensor." + sensors.size(), 100, "50.0"));
+            }
+        }
+        return sensors;
+    }
+
+
+    /**
+     * Checks that every sensor is assigned to exactly one drone
+     *
+     * @param sensors The sensors
+     * @param sectors The sensors of every drone
+     */
+    private static void assertAssignedOnce(Set<Sensor> sensors, List<List<Sensor>> sectors) {
+        var assigned = new HashSet<Sensor>();
+        var count = 0;
+        for (var sector : sectors) {
+            assigned.addAll(sector);
+            count += sector.size();
+        }
+        assertEquals(sensors, assigned);
+        assertEquals(sensors.size(), count);
+    }
+
+
+    @Test
+    public void sectorsFitTheBudgetWhenTheFleetCanCoverTheSensors() {
+        var map = TestMaps.map(TestMaps.square(TestMaps.CENTRE.getX(), TestMaps.CENTRE.getY(), 0.0003));
+        var random = new Random(41);
+        for (int drones = 2; drones <= 5; drones++) {
+            var sensors = sensors(map, random, 40, 0.0035);
+            var planner = new FleetPlanner(START, map, sensors, drones, Drone.ALLOWED_NUMBER_OF_MOVES);
+            var sectors = planner.partition();
+            assertEquals(drones, sectors.size());
+            assertAssignedOnce(sensors, sectors);
+            for (var sector : sectors) {
+                assertTrue(planner.estimatedCost(sector) <= Drone.ALLOWED_NUMBER_OF_MOVES * FleetPlanner.BUDGET_FILL);
+            }
+        }
+    }
+
+
+    @Test
+    public void sensorsLeftOverAreStillAssigned() {
+        // Far more sensors than two short flights can visit
+        var map = TestMaps.map();
+        var sensors = sensors(map, new Random(43), 60, 0.0018);
+        var planner = new FleetPlanner(START, map, sensors, 2, 20);
+        var sectors = planner.partition();
+        assertEquals(2, sectors.size());
+        assertAssignedOnce(sensors, sectors);
+    }
+
+
+    @Test
+    public void unusedDronesGetEmptyPlans() {
+        var map = TestMaps.map();
+        var sensors = sensors(map, new Random(47), 2, 0.0005);
+        var plans = new FleetPlanner(START, map, sensors, 4, Drone.ALLOWED_NUMBER_OF_MOVES).planFlights();
+        assertEquals(4, plans.size());
+        var empty = 0;
+        var readings = 0;
+        for (var plan : plans) {
+            empty += plan.getMovesCount() == 0 ? 1 : 0;
+            readings += plan.getReadingsCount();
+        }
+        assertTrue(empty >= 2);
+        assertEquals(2, readings);
+    }
+}
@@ -0,0 +1,98 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+/**
+ * Unit tests for the {@link FlightPlan}
+ */
+public class FlightPlanTest {
+    /** Offset of the first angle in the compact form, after the starting point and the number of moves */
+    private static final int FIRST_ANGLE = 2 * Double.BYTES + Integer.BYTES;
+
+    /**
+     * Plans a flight reading two sensors around a building
+     *
+     * @return FlightPlan The FlightPlan
+     */
+    private static FlightPlan plan() {
+        var x = TestMaps.CENTRE.getX();
+        var y = TestMaps.CENTRE.getY();
+        var map = TestMaps.map(TestMaps.square(x, y, 0.0002));
+        var sensors = Set.of(
+                new Sensor(new Point2D.Double(x + 0.0006, y), "east", 100, "10.0"),
+                new Sensor(new Point2D.Double(x, y + 0.0007), "north", 100, "20.0"));
+        return new Drone(new Point2D.Double(x - 0.0008, y), map, sensors).planFlight();
+    }
+
+
+    /**
+     * Writes a FlightPlan in its compact form
+     *
+     * @param plan The FlightPlan
+     * @return byte[] The compact form
+     * @throws IOException If the FlightPlan cannot be written
+     */
+    private static byte[] compact(FlightPlan plan) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(bytes)) {
+            plan.writeCompact(out);
+        }
+        return bytes.toByteArray();
+    }
+
+
+    @Test
+    public void compactFormRoundTrips() throws IOException {
+        var plan = plan();
+        var read = FlightPlan.readCompact(new DataInputStream(new ByteArrayInputStream(compact(plan))));
+        assertEquals(plan.getMovesCount(), read.getMovesCount());
+        assertEquals(plan.getReadingsCount(), read.getReadingsCount());
+        assertEquals(plan.fileFlightPlan(), read.fileFlightPlan());
+    }
+
+
+    @Test(expected = IOException.class)
+    public void changedAngleFailsTheChecksum() throws IOException {
+        var bytes = compact(plan());
+        // Another valid direction, so only the replayed end position differs
+        bytes[FIRST_ANGLE] = (byte) ((bytes[FIRST_ANGLE] + 1) % Geometry.DIRECTIONS);
+        FlightPlan.readCompact(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+
+    @Test(expected = IOException.class)
+    public void truncatedPlanFails() throws IOException {
+        var bytes = compact(plan());
+        var truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        FlightPlan.readCompact(new DataInputStream(new ByteArrayInputStream(truncated)));
+    }
+
+
+    @Test(expected = IOException.class)
+    public void hugeMovesCountFails() throws IOException {
+        var bytes = compact(plan());
+        // The count is rejected before anything is allocated for it
+        ByteBuffer.wrap(bytes).putInt(2 * Double.BYTES, Integer.MAX_VALUE);
+        FlightPlan.readCompact(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+
+    @Test(expected = IOException.class)
+    public void negativeMovesCountFails() throws IOException {
+        var bytes = compact(plan());
+        ByteBuffer.wrap(bytes).putInt(2 * Double.BYTES, -1);
+        FlightPlan.readCompact(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+}
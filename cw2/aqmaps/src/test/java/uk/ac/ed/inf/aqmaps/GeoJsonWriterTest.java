@@ -0,0 +1,77 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.LineString;
+import com.mapbox.geojson.Point;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Unit tests for the {@link GeoJsonWriter}, against the output of the mapbox classes
+ */
+public class GeoJsonWriterTest {
+    /** Property values that need escaping */
+    private static final String[] VALUES = {"slightly.mixed.words", "#ff0000", "lighthouse", "50.0", "NaN",
+            "\"quoted\" \\ back", "<a href='x'>&amp;=</a>", "tab\tnew\nline\r\u0001", "   ünïcödé"};
+
+    @Test
+    public void outputIsTheSameAsMapbox() throws IOException {
+        var random = new Random(4);
+        var bytes = new ByteArrayOutputStream();
+        var features = new ArrayList<Feature>();
+        try (var out = new OutputWriter(Channels.newChannel(bytes))) {
+            var json = new GeoJsonWriter(out);
+            json.beginFeatureCollection();
+
+            // The path, with coordinates of every magnitude and precision
+            var points = new ArrayList<Point>();
+            json.beginLineString();
+            for (int i = 0; i < 200; i++) {
+                var x = TestMaps.CENTRE.getX() + (random.nextDouble() - 0.5) * Math.pow(10, -random.nextInt(8));
+                var y = i % 10 == 0 ? Math.round(TestMaps.CENTRE.getY()) : TestMaps.CENTRE.getY() + random.nextDouble();
+                json.point(x, y);
+                points.add(Point.fromLngLat(x, y));
+            }
+            json.endLineString();
+            features.add(Feature.fromGeometry(LineString.fromLngLats(points)));
+
+            // The sensors, with escaped properties
+            for (var value : VALUES) {
+                var x = TestMaps.CENTRE.getX() + random.nextDouble() * 0.001;
+                var y = TestMaps.CENTRE.getY() + random.nextDouble() * 0.001;
+                json.beginPoint(x, y);
+                json.property("location", value);
+                json.property("marker-color", value);
+                json.endPoint();
+                var feature = Feature.fromGeometry(Point.fromLngLat(x, y));
+                feature.addStringProperty("location", value);
+                feature.addStringProperty("marker-color", value);
+                features.add(feature);
+            }
+            json.endFeatureCollection();
+        }
+        assertEquals(FeatureCollection.fromFeatures(features).toJson(), bytes.toString(StandardCharsets.UTF_8));
+    }
+
+
+    @Test
+    public void emptyCollectionIsTheSameAsMapbox() throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new OutputWriter(Channels.newChannel(bytes))) {
+            var json = new GeoJsonWriter(out);
+            json.beginFeatureCollection();
+            json.endFeatureCollection();
+        }
+        assertEquals(FeatureCollection.fromFeatures(new ArrayList<Feature>()).toJson(),
+                bytes.toString(StandardCharsets.UTF_8));
+    }
+}
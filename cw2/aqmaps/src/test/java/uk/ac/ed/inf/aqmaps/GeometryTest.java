@@ -0,0 +1,73 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.awt.geom.Line2D;
+import java.util.Random;
+
+/**
+ * Unit tests for the {@link Geometry} kernel, against the java.awt.geom implementations it replaces
+ */
+public class GeometryTest {
+    /** Number of random cases checked */
+    private static final int SAMPLES = 100000;
+
+    @Test
+    public void segmentsIntersectLikeLine2D() {
+        var random = new Random(1);
+        for (int i = 0; i < SAMPLES; i++) {
+            // Small integer coordinates give many touching, collinear and degenerate segments
+            var c = new double[8];
+            for (int j = 0; j < c.length; j++) {
+                c[j] = i % 2 == 0 ? random.nextInt(5) : random.nextDouble();
+            }
+            // Line2D has any two points intersect, even distinct ones. Moves and boundaries are never both points
+            if (c[0] == c[2] && c[1] == c[3] && c[4] == c[6] && c[5] == c[7]) {
+                continue;
+            }
+            assertEquals(Line2D.linesIntersect(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]),
+                    Geometry.segmentsIntersect(c[0], c[1], c[2], c[3], c[4], c[5], c[6], c[7]));
+        }
+    }
+
+
+    @Test
+    public void blockedDirectionsAreTheIntersectingSteps() {
+        var random = new Random(2);
+        for (int i = 0; i < SAMPLES / 100; i++) {
+            var x = random.nextDouble();
+            var y = random.nextDouble();
+            var x1 = random.nextDouble();
+            var y1 = random.nextDouble();
+            var x2 = random.nextDouble();
+            var y2 = random.nextDouble();
+            var length = random.nextDouble() * 0.5;
+            var blocked = Geometry.blockedDirections(x, y, length, Geometry.ALL_DIRECTIONS, x1, y1, x2, y2);
+            for (int direction = 0; direction < Geometry.DIRECTIONS; direction++) {
+                var angle = direction * Geometry.STEP_ANGLE;
+                var step = new Line2D.Double(x, y, Geometry.stepX(x, angle, length), Geometry.stepY(y, angle, length));
+                assertEquals(step.intersectsLine(x1, y1, x2, y2), (blocked & (1L << direction)) != 0);
+            }
+        }
+    }
+
+
+    @Test
+    public void pointSegmentDistanceLikeLine2D() {
+        var random = new Random(3);
+        for (int i = 0; i < SAMPLES; i++) {
+            var px = random.nextDouble();
+            var py = random.nextDouble();
+            var x1 = random.nextDouble();
+            var y1 = random.nextDouble();
+            // Some segments are points
+            var x2 = i % 10 == 0 ? x1 : random.nextDouble();
+            var y2 = i % 10 == 0 ? y1 : random.nextDouble();
+            // Line2D projects the point through a difference of squares, which loses some precision
+            assertEquals(Line2D.ptSegDist(x1, y1, x2, y2, px, py),
+                    Geometry.pointSegmentDistance(px, py, x1, y1, x2, y2), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Unit tests for the {@link IncrementalPlanner}
+ */
+public class IncrementalPlannerTest {
+    /** Starting point of the flights, left of the building */
+    private static final Point2D START = new Point2D.Double(TestMaps.CENTRE.getX() - 0.0012, TestMaps.CENTRE.getY());
+    /** The building added while flying, above the first one */
+    private static final NoFlyZone ADDED = new NoFlyZone(
+            TestMaps.square(TestMaps.CENTRE.getX(), TestMaps.CENTRE.getY() + 0.0009, 0.0001));
+
+    /**
+     * Generates sensors around the building in the centre, away from the added building
+     *
+     * @param map The map
+     * @param random The source of the positions
+     * @param count The number of sensors
+     * @return <code>Set&lt;Sensor&gt;</code> The sensors, at legal positions
+     */
+    private static Set<Sensor> sensors(NoFlyZonesManager map, Random random, int count) {
+        var changed = map.withChanges(List.of(ADDED), List.of());
+        var sensors = new HashSet<Sensor>();
+        while (sensors.size() < count) {
+            var angle = random.nextDouble() * 2 * Math.PI;
+            var distance = 0.0006 + random.nextDouble() * 0.0009;
+            var coordinates = new Point2D.Double(TestMaps.CENTRE.getX() + distance * Math.cos(angle),
+                    TestMaps.CENTRE.getY() + distance * Math.sin(angle));
+            if (changed.isLegalPosition(coordinates)) {
+                sensors.add(new Sensor(coordinates, "sensor." + sensors.size(), 100, "50.0"));
+            }
+        }
+        return sensors;
+    }
+
+
+    /**
+     * Get the positions of a plan after every move
+     *
+     * @param plan The FlightPlan
+     * @return <code>List&lt;Point2D&gt;</code> The positions, without the starting point
+     */
+    private static List<Point2D> positions(FlightPlan plan) {
+        var positions = new ArrayList<Point2D>();
+        for (int move = 1; move <= plan.getMovesCount(); move++) {
+            positions.add(plan.getPosition(move));
+        }
+        return positions;
+    }
+
+
+    /**
+     * Get the sensors read by a plan
+     *
+     * @param plan The FlightPlan
+     * @return <code>Set&lt;String&gt;</code> The locations of the sensors read
+     */
+    private static Set<String> readings(FlightPlan plan) {
+        var readings = new HashSet<String>();
+        for (int move = 0; move < plan.getMovesCount(); move++) {
+            if (plan.getReading(move) != null) {
+                readings.add(plan.getReading(move));
+            }
+        }
+        return readings;
+    }
+
+
+    @Test
+    public void replanningKeepsTheMovesFlown() {
+        var map = TestMaps.map(TestMaps.square(TestMaps.CENTRE.getX(), TestMaps.CENTRE.getY(), 0.0003));
+        var random = new Random(21);
+        for (int i = 0; i < 5; i++) {
+            var sensors = sensors(map, random, 6);
+            var plan = new Drone(START, map, sensors).planFlight();
+            var movesFlown = plan.getMovesCount() / 2;
+            var replanned = new IncrementalPlanner(START, map, sensors)
+                    .replan(plan, movesFlown, PlanDelta.ofZones(List.of(ADDED), List.of()));
+
+            // The moves and readings already flown are the same
+            for (int move = 0; move < movesFlown; move++) {
+                assertEquals(plan.getPosition(move + 1), replanned.getPosition(move + 1));
+                assertEquals(plan.getReading(move), replanned.getReading(move));
+            }
+            // The rest is legal on the changed map, reads every sensor and goes back home
+            var changed = map.withChanges(List.of(ADDED), List.of());
+            assertTrue(TestMaps.isLegalPath(changed, plan.getPosition(movesFlown),
+                    positions(replanned).subList(movesFlown, replanned.getMovesCount())));
+            assertEquals(readings(plan), readings(replanned));
+            assertTrue(replanned.getPosition(replanned.getMovesCount()).distance(START) < Drone.STEP_LENGTH);
+        }
+    }
+
+
+    @Test
+    public void replanningReadsTheSensorsAdded() {
+        var map = TestMaps.map(TestMaps.square(TestMaps.CENTRE.getX(), TestMaps.CENTRE.getY(), 0.0003));
+        var random = new Random(23);
+        var sensors = sensors(map, random, 6);
+        var plan = new Drone(START, map, sensors).planFlight();
+        var added = new Sensor(new Point2D.Double(TestMaps.CENTRE.getX() + 0.0008, TestMaps.CENTRE.getY() - 0.0004),
+                "sensor.added", 100, "50.0");
+        var removed = sensors.iterator().next().getLocation();
+        var replanned = new IncrementalPlanner(START, map, sensors)
+                .replan(plan, 3, PlanDelta.ofSensors(List.of(added), List.of(removed)));
+
+        var expected = readings(plan);
+        expected.add(added.getLocation());
+        // A sensor removed after the first moves may have been read already
+        if (!readings(plan.prefix(3)).contains(removed)) {
+            expected.remove(removed);
+        }
+        assertEquals(expected, readings(replanned));
+        assertTrue(TestMaps.isLegalPath(map, START, positions(replanned)));
+    }
+
+
+    @Test
+    public void replanningWithoutChangesKeepsThePlan() {
+        var map = TestMaps.map(TestMaps.square(TestMaps.CENTRE.getX(), TestMaps.CENTRE.getY(), 0.0003));
+        var sensors = sensors(map, new Random(25), 6);
+        var plan = new Drone(START, map, sensors).planFlight();
+        var replanned = new IncrementalPlanner(START, map, sensors)
+                .replan(plan, 0, PlanDelta.ofSensors(List.of(), List.of()));
+        assertEquals(positions(plan), positions(replanned));
+    }
+
+
+    @Test
+    public void rejectedChangeLeavesThePlannerAsItWas() {
+        var map = TestMaps.map(TestMaps.square(TestMaps.CENTRE.getX(), TestMaps.CENTRE.getY(), 0.0003));
+        var sensors = sensors(map, new Random(27), 6);
+        var plan = new Drone(START, map, sensors).planFlight();
+        var planner = new IncrementalPlanner(START, map, sensors);
+
+        // A building over the drone, with a sensor added in the same change
+        var position = plan.getPosition(2);
+        var over = new NoFlyZone(TestMaps.square(position.getX(), position.getY(), 0.00005));
+        var added = new Sensor(new Point2D.Double(TestMaps.CENTRE.getX() + 0.0008, TestMaps.CENTRE.getY() - 0.0004),
+                "sensor.added", 100, "50.0");
+        try {
+            planner.replan(plan, 2, new PlanDelta(List.of(over), List.of(), List.of(added), List.of()));
+            fail("The drone is inside the added building");
+        } catch (IllegalArgumentException exception) {
+            // Expected
+        }
+        assertSame(map, planner.getNoFlyZonesManager());
+        assertEquals(sensors, planner.getSensors());
+    }
+}
@@ -0,0 +1,228 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for the {@link LatticeSearch}
+ */
+public class LatticeSearchTest {
+    /** The fewest moves the plain search below can afford to look for */
+    private static final int MAX_BFS_MOVES = 4;
+
+    /**
+     * Searches for the fewest moves to a target with a plain breadth-first search
+     *
+     * @param map The map
+     * @param start The starting position
+     * @param target The target
+     * @param radius The distance from the target to end within
+     * @return int The fewest moves, or -1 if there are more than MAX_BFS_MOVES
+     */
+    private static int fewestMoves(NoFlyZonesManager map, Point2D start, Point2D target, double radius) {
+        if (start.distance(target) < radius) {
+            return 0;
+        }
+        List<Point2D> layer = List.of(start);
+        var reached = new HashSet<Long>();
+        reached.add(LatticeSearch.key(start.getX(), start.getY()));
+        for (int moves = 1; moves <= MAX_BFS_MOVES; moves++) {
+            var next = new ArrayList<Point2D>();
+            for (var position : layer) {
+                for (int direction = 0; direction < Geometry.DIRECTIONS; direction++) {
+                    var angle = direction * Geometry.STEP_ANGLE;
+                    var x = Geometry.stepX(position.getX(), angle, Drone.STEP_LENGTH);
+                    var y = Geometry.stepY(position.getY(), angle, Drone.STEP_LENGTH);
+                    if (!map.isLegalMove(position.getX(), position.getY(), x, y)) {
+                        continue;
+                    }
+                    if (Point2D.distance(x, y, target.getX(), target.getY()) < radius) {
+                        return moves;
+                    }
+                    if (reached.add(LatticeSearch.key(x, y))) {
+                        next.add(new Point2D.Double(x, y));
+                    }
+                }
+            }
+            layer = next;
+        }
+        return -1;
+    }
+
+
+    /**
+     * Checks the result of a shortest path search: legal, ending within the radius,
+     * and no shorter than the fewest moves
+     *
+     * @param map The map
+     * @param start The starting position
+     * @param target The target
+     * @param radius The distance from the target to end within
+     * @return int The number of moves of the result
+     */
+    private static int checkShortestPath(NoFlyZonesManager map, Point2D start, Point2D target, double radius) {
+        var result = new LatticeSearch(map).shortestPath(start, target, radius, Drone.ALLOWED_NUMBER_OF_MOVES);
+        assertTrue(result.isComplete());
+        var positions = result.getPositions();
+        assertTrue(TestMaps.isLegalPath(map, start, positions));
+        var end = positions.isEmpty() ? start : positions.get(positions.size() - 1);
+        assertTrue(end.distance(target) < radius);
+        var fewest = fewestMoves(map, start, target, radius);
+        assertTrue(fewest >= 0);
+        assertTrue(positions.size() >= fewest);
+        return positions.size() - fewest;
+    }
+
+
+    @Test
+    public void shortestPathIsShortestAwayFromZones() {
+        // A single building, far from the targets
+        var map = TestMaps.map(TestMaps.square(TestMaps.CENTRE.getX() + 0.003, TestMaps.CENTRE.getY(), 0.0002));
+        var random = new Random(7);
+        for (int i = 0; i < 20; i++) {
+            var radius = i % 2 == 0 ? Drone.STEP_LENGTH : Drone.SENSOR_RANGE;
+            var angle = random.nextDouble() * 2 * Math.PI;
+            var distance = (1 + random.nextDouble() * 2.5) * Drone.STEP_LENGTH;
+            var start = new Point2D.Double(TestMaps.CENTRE.getX() + distance * Math.cos(angle),
+                    TestMaps.CENTRE.getY() + distance * Math.sin(angle));
+            assertEquals(0, checkShortestPath(map, start, TestMaps.CENTRE, radius));
+        }
+    }
+
+
+    @Test
+    public void shortestPathIsShortestNextToAZone() {
+        // A small building between the starts and the target, next to the target
+        var x = TestMaps.CENTRE.getX();
+        var y = TestMaps.CENTRE.getY();
+        var map = TestMaps.map(TestMaps.square(x, y, 0.00005));
+        var target = new Point2D.Double(x + 0.00009, y);
+        for (int i = -2; i <= 2; i++) {
+            var start = new Point2D.Double(x - 0.0005, y + i * 0.0001);
+            assertEquals(0, checkShortestPath(map, start, target, Drone.SENSOR_RANGE));
+        }
+    }
+
+
+    @Test
+    public void shortestPathIsShortestNearZones() {
+        var map = buildings();
+        var random = new Random(13);
+        var checked = 0;
+        while (checked < 30) {
+            var radius = checked % 2 == 0 ? Drone.STEP_LENGTH : Drone.SENSOR_RANGE;
+            var start = randomPosition(map, random, 0.0008);
+            var target = randomPosition(map, random, 0.0008);
+            // Only the targets the plain search can reach are compared
+            if (fewestMoves(map, start, target, radius) < 0) {
+                continue;
+            }
+            assertEquals(0, checkShortestPath(map, start, target, radius));
+            checked++;
+        }
+    }
+
+
+    /**
+     * Generates a legal position within a distance of the centre
+     *
+     * @param map The map
+     * @param random The source of the positions
+     * @param distance The maximum distance from the centre
+     * @return Point2D The position
+     */
+    private static Point2D randomPosition(NoFlyZonesManager map, Random random, double distance) {
+        while (true) {
+            var position = new Point2D.Double(TestMaps.CENTRE.getX() + (random.nextDouble() * 2 - 1) * distance,
+                    TestMaps.CENTRE.getY() + (random.nextDouble() * 2 - 1) * distance);
+            if (map.isLegalPosition(position)) {
+                return position;
+            }
+        }
+    }
+
+
+    /**
+     * Generates a map with a few buildings around the centre
+     *
+     * @return NoFlyZonesManager The map
+     */
+    private static NoFlyZonesManager buildings() {
+        var x = TestMaps.CENTRE.getX();
+        var y = TestMaps.CENTRE.getY();
+        return TestMaps.map(TestMaps.square(x, y, 0.0002), TestMaps.square(x - 0.0007, y + 0.0004, 0.00015),
+                TestMaps.square(x + 0.0006, y - 0.0005, 0.00025));
+    }
+
+
+    @Test
+    public void searchIsLegalNearZones() {
+        var map = buildings();
+        var search = new LatticeSearch(map);
+        var random = new Random(13);
+        for (int i = 0; i < 40; i++) {
+            var start = randomPosition(map, random, 0.0012);
+            var target = randomPosition(map, random, 0.0012);
+            var next = randomPosition(map, random, 0.0012);
+            var maxMoves = 1 + random.nextInt(30);
+            var result = search.search(start, target, Drone.SENSOR_RANGE, next, maxMoves);
+            var positions = result.getPositions();
+            assertTrue(positions.size() <= maxMoves);
+            assertTrue(TestMaps.isLegalPath(map, start, positions));
+            if (result.isComplete()) {
+                var end = positions.isEmpty() ? start : positions.get(positions.size() - 1);
+                assertTrue(end.distance(target) < Drone.SENSOR_RANGE);
+            }
+        }
+    }
+
+
+    @Test
+    public void searchAllResultsAreLegalAndOrdered() {
+        var map = buildings();
+        var search = new LatticeSearch(map);
+        var random = new Random(17);
+        var reached = 0;
+        for (int i = 0; i < 20; i++) {
+            var start = randomPosition(map, random, 0.0012);
+            var target = randomPosition(map, random, 0.0012);
+            var next = randomPosition(map, random, 0.0012);
+            var results = search.searchAll(start, target, Drone.SENSOR_RANGE, next, Drone.ALLOWED_NUMBER_OF_MOVES, 4);
+            assertTrue(results.size() <= 4);
+            reached += results.isEmpty() ? 0 : 1;
+            var previousDistance = 0.0;
+            var ends = new HashSet<Long>();
+            for (var result : results) {
+                assertTrue(result.isComplete());
+                var positions = result.getPositions();
+                assertTrue(TestMaps.isLegalPath(map, start, positions));
+                // All in the fewest moves, ending at different positions, the closest to the next target first
+                assertEquals(results.get(0).getPositions().size(), positions.size());
+                var end = positions.isEmpty() ? start : positions.get(positions.size() - 1);
+                assertTrue(end.distance(target) < Drone.SENSOR_RANGE);
+                assertTrue(ends.add(LatticeSearch.key(end.getX(), end.getY())));
+                assertTrue(end.distance(next) >= previousDistance);
+                previousDistance = end.distance(next);
+            }
+        }
+        assertTrue(reached > 0);
+    }
+
+
+    @Test
+    public void startWithinRadiusNeedsNoMoves() {
+        var map = TestMaps.map();
+        var start = new Point2D.Double(TestMaps.CENTRE.getX() + 0.0001, TestMaps.CENTRE.getY());
+        var result = new LatticeSearch(map).shortestPath(start, TestMaps.CENTRE, Drone.STEP_LENGTH, 10);
+        assertTrue(result.isComplete());
+        assertTrue(result.getPositions().isEmpty());
+    }
+}
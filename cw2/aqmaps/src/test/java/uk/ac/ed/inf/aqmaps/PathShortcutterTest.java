@@ -0,0 +1,105 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Unit tests for the {@link PathShortcutter}
+ */
+public class PathShortcutterTest {
+    /** Starting point of the flights, left of the building */
+    private static final Point2D START = new Point2D.Double(TestMaps.CENTRE.getX() - 0.0012, TestMaps.CENTRE.getY());
+
+    /**
+     * Generates sensors around the building in the centre
+     *
+     * @param map The map
+     * @param random The source of the positions
+     * @param count The number of sensors
+     * @return <code>Set&lt;Sensor&gt;</code> The sensors, at legal positions
+     */
+    private static Set<Sensor> sensors(NoFlyZonesManager map, Random random, int count) {
+        var sensors = new HashSet<Sensor>();
+        while (sensors.size() < count) {
+            var angle = random.nextDouble() * 2 * Math.PI;
+            var distance = 0.0006 + random.nextDouble() * 0.0009;
+            var coordinates = new Point2D.Double(TestMaps.CENTRE.getX() + distance * Math.cos(angle),
+                    TestMaps.CENTRE.getY() + distance * Math.sin(angle));
+            if (map.isLegalPosition(coordinates)) {
+                sensors.add(new Sensor(coordinates, "sensor." + sensors.size(), 100, "50.0"));
+            }
+        }
+        return sensors;
+    }
+
+
+    /**
+     * Get the sensors read by a plan, in order
+     *
+     * @param plan The FlightPlan
+     * @return <code>List&lt;String&gt;</code> The locations of the sensors read
+     */
+    private static List<String> readings(FlightPlan plan) {
+        var readings = new ArrayList<String>();
+        for (int move = 0; move < plan.getMovesCount(); move++) {
+            if (plan.getReading(move) != null) {
+                readings.add(plan.getReading(move));
+            }
+        }
+        return readings;
+    }
+
+
+    @Test
+    public void shortenedPlansAreValidAndNeverLonger() {
+        var map = TestMaps.map(TestMaps.square(TestMaps.CENTRE.getX(), TestMaps.CENTRE.getY(), 0.0003));
+        var random = new Random(11);
+        for (int i = 0; i < 5; i++) {
+            var sensors = sensors(map, random, 6);
+            var plan = new Drone(START, map, sensors).planFlight();
+            var shortened = new PathShortcutter(map, sensors).shorten(plan);
+
+            assertTrue(shortened.getMovesCount() <= plan.getMovesCount());
+            assertEquals(readings(plan), readings(shortened));
+            var positions = new ArrayList<Point2D>();
+            for (int move = 1; move <= shortened.getMovesCount(); move++) {
+                positions.add(shortened.getPosition(move));
+            }
+            assertTrue(TestMaps.isLegalPath(map, START, positions));
+            assertTrue(shortened.getPosition(shortened.getMovesCount()).distance(START) < Drone.STEP_LENGTH);
+
+            // Every reading is taken within range of its sensor
+            var coordinates = new HashMap<String, Point2D>();
+            for (var sensor : sensors) {
+                coordinates.put(sensor.getLocation(), sensor.getCoordinates());
+            }
+            for (int move = 0; move < shortened.getMovesCount(); move++) {
+                var reading = shortened.getReading(move);
+                if (reading != null) {
+                    assertTrue(shortened.getPosition(move + 1).distance(coordinates.get(reading)) < Drone.SENSOR_RANGE);
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void plansNotBackHomeAreKept() {
+        var map = TestMaps.map();
+        var plan = new FlightPlan(START);
+        plan.add(new Point2D.Double(START.getX() + Drone.STEP_LENGTH, START.getY()));
+        plan.add(new Point2D.Double(START.getX() + 2 * Drone.STEP_LENGTH, START.getY()));
+        assertSame(plan, new PathShortcutter(map, Set.of()).shorten(plan));
+    }
+}
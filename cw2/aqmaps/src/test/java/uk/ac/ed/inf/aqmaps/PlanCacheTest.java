@@ -0,0 +1,57 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+
+/**
+ * Unit tests for the {@link PlanCache}
+ */
+public class PlanCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void plansAreReadBackFromDisk() throws IOException {
+        var map = TestMaps.map();
+        var start = new Point2D.Double(TestMaps.CENTRE.getX() - 0.0005, TestMaps.CENTRE.getY());
+        var sensors = Set.of(new Sensor(TestMaps.CENTRE, "centre", 100, "10.0"));
+        var plan = new Drone(start, map, sensors).planFlight();
+        var key = PlanCache.key(start, map, sensors, Drone.StepPlanner.GREEDY, Drone.ALLOWED_NUMBER_OF_MOVES, 4, false);
+
+        var directory = folder.getRoot().toPath().resolve("plans");
+        new PlanCache(directory, 1).put(key, plan);
+        var cached = new PlanCache(directory, 1).get(key, start);
+        assertTrue(cached.isPresent());
+        assertEquals(plan.fileFlightPlan(), cached.get().fileFlightPlan());
+        // Only the plan is left in the directory
+        try (var files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        // Another starting point misses
+        assertFalse(new PlanCache(directory, 1).get(key, TestMaps.CENTRE).isPresent());
+    }
+
+
+    @Test
+    public void keysCoverThePlannerConfiguration() {
+        var map = TestMaps.map();
+        var sensors = Set.of(new Sensor(TestMaps.CENTRE, "centre", 100, "10.0"));
+        var key = PlanCache.key(TestMaps.CENTRE, map, sensors, Drone.StepPlanner.GREEDY, 150, 4, false);
+        assertEquals(key, PlanCache.key(TestMaps.CENTRE, map, sensors, Drone.StepPlanner.GREEDY, 150, 4, false));
+        assertNotEquals(key, PlanCache.key(TestMaps.CENTRE, map, sensors, Drone.StepPlanner.LATTICE_SEARCH, 150, 4, false));
+        assertNotEquals(key, PlanCache.key(TestMaps.CENTRE, map, sensors, Drone.StepPlanner.GREEDY, 100, 4, false));
+        assertNotEquals(key, PlanCache.key(TestMaps.CENTRE, map, sensors, Drone.StepPlanner.GREEDY, 150, 2, false));
+        assertNotEquals(key, PlanCache.key(TestMaps.CENTRE, map, sensors, Drone.StepPlanner.GREEDY, 150, 4, true));
+    }
+}
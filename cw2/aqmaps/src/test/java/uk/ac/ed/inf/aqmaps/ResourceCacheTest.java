@@ -0,0 +1,145 @@
+package uk.ac.ed.inf.aqmaps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Unit tests for the {@link ResourceCache}, and its use by the {@link Loader}
+ */
+public class ResourceCacheTest {
+    /** Key of the resource cached */
+    private static final String KEY = "http://localhost/buildings/no-fly-zones.geojson";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Get the files of an entry on disk
+     *
+     * @param directory The directory of the cache
+     * @param extension The extension of the files, body or meta
+     * @return Path The file of the entry of <code>KEY</code>
+     */
+    private static Path file(Path directory, String extension) {
+        return directory.resolve(ResourceCache.hash(KEY) + "." + extension);
+    }
+
+
+    @Test
+    public void entriesAreReadBackFromDisk() throws IOException {
+        var directory = folder.getRoot().toPath();
+        new ResourceCache(directory, Duration.ofDays(1)).put(KEY, "{\"features\":[]}", "\"v1\"", null);
+
+        var cached = new ResourceCache(directory, Duration.ofDays(1)).getFresh(KEY);
+        assertTrue(cached.isPresent());
+        assertEquals("{\"features\":[]}", cached.get().getBody());
+        assertEquals("\"v1\"", cached.get().getEtag().orElse(null));
+        assertFalse(cached.get().getLastModified().isPresent());
+        // Only the body and metadata are left in the directory
+        try (var files = Files.list(directory)) {
+            assertEquals(2, files.count());
+        }
+    }
+
+
+    @Test
+    public void expiredEntriesAreStale() {
+        var cache = new ResourceCache(folder.getRoot().toPath(), Duration.ZERO);
+        cache.put(KEY, "body", "\"v1\"", "Tue, 01 Dec 2020 00:00:00 GMT");
+        // A stale entry is still returned, with its validators, for revalidation
+        assertFalse(cache.getFresh(KEY).isPresent());
+        var stale = cache.get(KEY);
+        assertTrue(stale.isPresent());
+        assertFalse(cache.isFresh(stale.get()));
+        assertEquals("Tue, 01 Dec 2020 00:00:00 GMT", stale.get().getLastModified().orElse(null));
+    }
+
+
+    @Test
+    public void leastRecentlyUsedEntriesLeaveMemory() throws IOException {
+        var directory = folder.getRoot().toPath();
+        var cache = new ResourceCache(directory, Duration.ofDays(1), 1);
+        cache.put(KEY, "first", null, null);
+        cache.put(KEY + "?other", "second", null, null);
+        // Without the disk tier, only the last entry is left
+        try (var files = Files.list(directory)) {
+            for (var file : files.toArray(Path[]::new)) {
+                Files.delete(file);
+            }
+        }
+        assertFalse(cache.get(KEY).isPresent());
+        assertEquals("second", cache.get(KEY + "?other").get().getBody());
+    }
+
+
+    @Test
+    public void corruptedEntriesAreMisses() throws IOException {
+        var directory = folder.getRoot().toPath();
+        new ResourceCache(directory, Duration.ofDays(1)).put(KEY, "body", null, null);
+        Files.writeString(file(directory, "meta"), "fetched-at=not a number\n", StandardCharsets.UTF_8);
+        assertFalse(new ResourceCache(directory, Duration.ofDays(1)).get(KEY).isPresent());
+    }
+
+
+    @Test
+    public void bodyOfAnotherVersionIsAMiss() throws IOException {
+        var directory = folder.getRoot().toPath();
+        new ResourceCache(directory, Duration.ofDays(1)).put(KEY, "first version", "\"v1\"", null);
+        var oldMeta = Files.readAllBytes(file(directory, "meta"));
+        new ResourceCache(directory, Duration.ofDays(1)).put(KEY, "second version", "\"v2\"", null);
+        // As if the writer of the second version stopped before moving its metadata in place
+        Files.write(file(directory, "meta"), oldMeta);
+        assertFalse(new ResourceCache(directory, Duration.ofDays(1)).get(KEY).isPresent());
+    }
+
+
+    @Test
+    public void staleEntriesAreRevalidated() throws IOException, InterruptedException {
+        // A server answering 304 when the ETag of its only version is sent
+        var validators = Collections.synchronizedList(new ArrayList<String>());
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            var validator = exchange.getRequestHeaders().getFirst("If-None-Match");
+            validators.add(validator);
+            if ("\"v1\"".equals(validator)) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                var body = "{\"type\":\"FeatureCollection\",\"features\":[]}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+        var cache = new ResourceCache(folder.getRoot().toPath(), Duration.ZERO);
+        try {
+            Loader.setServer("http://localhost:" + server.getAddress().getPort());
+            Loader.setCache(cache);
+            var first = Loader.loadNoFlyZones();
+            var second = Loader.loadNoFlyZones();
+            assertEquals(first, second);
+        } finally {
+            Loader.setCache(new ResourceCache(ResourceCache.DEFAULT_DIRECTORY, ResourceCache.DEFAULT_TIME_TO_LIVE));
+            server.stop(0);
+        }
+        // The stale copy is revalidated with its ETag, and not downloaded again
+        assertEquals(Arrays.asList(null, "\"v1\""), validators);
+    }
+}
@@ -0,0 +1,103 @@
+package uk.ac.ed.inf.aqmaps;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class builds small maps for the tests, within the confinement area
+ */
+final class TestMaps {
+    /** Centre of the confinement area */
+    static final Point2D CENTRE = new Point2D.Double(-3.188396, 55.944425);
+
+    private TestMaps() {
+    }
+
+
+    /**
+     * Generates a square building
+     *
+     * @param x X of the centre of the square
+     * @param y Y of the centre of the square
+     * @param halfSide Half the side of the square
+     * @return Polygon The square, with its first corner repeated
+     */
+    static Polygon square(double x, double y, double halfSide) {
+        return Polygon.fromLngLats(List.of(List.of(
+                Point.fromLngLat(x - halfSide, y - halfSide), Point.fromLngLat(x + halfSide, y - halfSide),
+                Point.fromLngLat(x + halfSide, y + halfSide), Point.fromLngLat(x - halfSide, y + halfSide),
+                Point.fromLngLat(x - halfSide, y - halfSide))));
+    }
+
+
+    /**
+     * Generates the GeoJson of a set of buildings
+     *
+     * @param buildings The buildings
+     * @return String The GeoJson FeatureCollection
+     */
+    static String geoJson(Polygon... buildings) {
+        var features = new ArrayList<Feature>();
+        for (var building : buildings) {
+            features.add(Feature.fromGeometry(building));
+        }
+        return FeatureCollection.fromFeatures(features).toJson();
+    }
+
+
+    /**
+     * Generates a map with a set of buildings
+     *
+     * @param buildings The buildings
+     * @return NoFlyZonesManager The map
+     */
+    static NoFlyZonesManager map(Polygon... buildings) {
+        return new NoFlyZonesManager(geoJson(buildings));
+    }
+
+
+    /**
+     * Checks that every move of a path is a legal move of the drone
+     *
+     * @param map The map
+     * @param start The position before the first move
+     * @param positions The positions after every move
+     * @return boolean Whether every move is legal, of the length of a step, in a lattice direction
+     */
+    static boolean isLegalPath(NoFlyZonesManager map, Point2D start, List<Point2D> positions) {
+        var previous = start;
+        for (var position : positions) {
+            if (!isLegalStep(map, previous, position)) {
+                return false;
+            }
+            previous = position;
+        }
+        return true;
+    }
+
+
+    /**
+     * Checks that a move is a legal move of the drone
+     *
+     * @param map The map
+     * @param from The position before the move
+     * @param to The position after the move
+     * @return boolean Whether the move is legal, of the length of a step, in a lattice direction
+     */
+    static boolean isLegalStep(NoFlyZonesManager map, Point2D from, Point2D to) {
+        if (Math.abs(from.distance(to) - Drone.STEP_LENGTH) > 1e-12) {
+            return false;
+        }
+        var degrees = Math.toDegrees(Math.atan2(to.getY() - from.getY(), to.getX() - from.getX()));
+        if (Math.abs(degrees / Geometry.STEP_ANGLE - Math.round(degrees / Geometry.STEP_ANGLE)) > 1e-6) {
+            return false;
+        }
+        return map.isLegalMove(from.getX(), from.getY(), to.getX(), to.getY());
+    }
+}